@@ -0,0 +1,34 @@
+package me.jasoncampos.inject.persist.hibernate.benchmarks;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+/**
+ * Minimal entity read and written by the benchmarks.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+@Entity
+public class BenchmarkEntity {
+
+	@Id
+	private long id;
+
+	private String name;
+
+	public BenchmarkEntity() {
+	}
+
+	public BenchmarkEntity(final long id, final String name) {
+		this.id = id;
+		this.name = name;
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public String getName() {
+		return name;
+	}
+}
@@ -0,0 +1,88 @@
+package me.jasoncampos.inject.persist.hibernate.benchmarks;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.persist.PersistService;
+
+import me.jasoncampos.inject.persist.hibernate.HibernateEntityClassProvider;
+import me.jasoncampos.inject.persist.hibernate.HibernatePersistModule;
+import me.jasoncampos.inject.persist.hibernate.HibernatePropertyProvider;
+
+/**
+ * Creates injectors backed by a fresh in-memory H2 database holding a single {@link BenchmarkEntity}. Each database
+ * lives only as long as the {@code PersistService} of its injector, so injectors must be stopped with {@link #stop}.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+public final class BenchmarkFixture {
+
+	private static final AtomicInteger databases = new AtomicInteger();
+
+	private BenchmarkFixture() {
+	}
+
+	/**
+	 * @return An injector whose {@code PersistService} has not been started
+	 */
+	public static Injector create() {
+		// Each injector gets its own database
+		final int database = databases.incrementAndGet();
+		return Guice.createInjector(new HibernatePersistModule(), new AbstractModule() {
+			@Override
+			protected void configure() {
+				bind(HibernateEntityClassProvider.class).to(EntityProvider.class);
+				bind(HibernatePropertyProvider.class).toInstance(new H2PropertyProvider(database));
+			}
+		});
+	}
+
+	/**
+	 * @return An injector whose {@code PersistService} has been started and whose database has been populated
+	 */
+	public static Injector start() {
+		final Injector injector = create();
+		injector.getInstance(PersistService.class).start();
+		injector.getInstance(BenchmarkService.class).insert(new BenchmarkEntity(BenchmarkService.ENTITY_ID, "benchmark"));
+		return injector;
+	}
+
+	public static void stop(final Injector injector) {
+		injector.getInstance(PersistService.class).stop();
+	}
+
+	public static class EntityProvider implements HibernateEntityClassProvider {
+		@Override
+		public List<Class<? extends Object>> get() {
+			return Arrays.asList(BenchmarkEntity.class);
+		}
+	}
+
+	public static class H2PropertyProvider implements HibernatePropertyProvider {
+		private final int database;
+
+		public H2PropertyProvider(final int database) {
+			this.database = database;
+		}
+
+		@Override
+		public Map<String, String> get() {
+			final Map<String, String> properties = new HashMap<>();
+			properties.put("hibernate.connection.driver_class", "org.h2.Driver");
+			// Dropped once the connection pool closes, so that the databases of stopped injectors do not pile up
+			properties.put("hibernate.connection.url", "jdbc:h2:mem:benchmarks-" + database + ";DB_CLOSE_DELAY=0");
+			properties.put("hibernate.connection.username", "sa");
+			properties.put("hibernate.connection.password", "");
+			properties.put("hibernate.connection.pool_size", "64");
+			properties.put("hibernate.dialect", "org.hibernate.dialect.H2Dialect");
+			properties.put("hibernate.hbm2ddl.auto", "create-drop");
+			return properties;
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package me.jasoncampos.inject.persist.hibernate.benchmarks;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.hibernate.Session;
+
+import com.google.inject.persist.Transactional;
+
+import me.jasoncampos.inject.persist.hibernate.ReadOnly;
+
+/**
+ * Transactional service driven by the benchmarks. Instances must be obtained from the injector so that the
+ * {@code @Transactional} methods are intercepted.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+@Singleton
+public class BenchmarkService {
+
+	static final long ENTITY_ID = 1;
+
+	private final Provider<Session> sessionProvider;
+
+	// Self reference through the injector so that nested calls are intercepted too
+	@Inject
+	private Provider<BenchmarkService> self;
+
+	@Inject
+	public BenchmarkService(final Provider<Session> sessionProvider) {
+		this.sessionProvider = sessionProvider;
+	}
+
+	/**
+	 * A transactional method which never touches the database, i.e. pure interceptor overhead.
+	 */
+	@Transactional
+	public int noDatabase() {
+		return 1;
+	}
+
+	/**
+	 * Loads a single entity.
+	 */
+	@Transactional
+	public BenchmarkEntity load() {
+		return sessionProvider.get().get(BenchmarkEntity.class, ENTITY_ID);
+	}
+
+	/**
+	 * Loads a single entity in a read-only transaction.
+	 */
+	@Transactional
+	@ReadOnly
+	public BenchmarkEntity loadReadOnly() {
+		return sessionProvider.get().get(BenchmarkEntity.class, ENTITY_ID);
+	}
+
+	/**
+	 * Joins {@link #load()} to the transaction begun by this method.
+	 */
+	@Transactional
+	public BenchmarkEntity nested() {
+		return self.get().load();
+	}
+
+	@Transactional
+	public void insert(final BenchmarkEntity entity) {
+		sessionProvider.get().persist(entity);
+	}
+}
@@ -0,0 +1,44 @@
+package me.jasoncampos.inject.persist.hibernate.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import me.jasoncampos.inject.persist.hibernate.IndexedEntityClassProvider;
+import me.jasoncampos.inject.persist.hibernate.PackageScanEntityClassProvider;
+
+/**
+ * Cost of locating entity classes by scanning the classpath versus reading the compile time index.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EntityClassProviderBenchmark {
+
+	// Every class of the library and of these benchmarks, of which one is an entity
+	private static final String PACKAGE = "me.jasoncampos";
+
+	@Benchmark
+	public List<Class<? extends Object>> packageScan() {
+		return new PackageScanEntityClassProvider(PACKAGE).get();
+	}
+
+	@Benchmark
+	public List<Class<? extends Object>> index() {
+		return new IndexedEntityClassProvider(PACKAGE).get();
+	}
+}
@@ -0,0 +1,150 @@
+package me.jasoncampos.inject.persist.hibernate.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import com.google.inject.Injector;
+
+/**
+ * Macro benchmark which drives a {@link BenchmarkService} scenario from several threads for a fixed duration and
+ * reports throughput and latency percentiles. Unlike the JMH benchmarks, it measures every call individually, so tail
+ * latency caused by contention (e.g. on the connection pool) shows up.
+ *
+ * <pre>
+ * java -cp benchmarks.jar me.jasoncampos.inject.persist.hibernate.benchmarks.LoadDriver [scenario] [threads] [seconds]
+ * </pre>
+ *
+ * Scenarios are {@code load} (default), {@code nested}, {@code readOnly} and {@code noDatabase}.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+public final class LoadDriver {
+
+	private static final int WARMUP_SECONDS = 5;
+
+	private LoadDriver() {
+	}
+
+	public static void main(final String[] args) throws InterruptedException {
+		final String scenario = args.length > 0 ? args[0] : "load";
+		final int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		final int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+
+		final Injector injector = BenchmarkFixture.start();
+		try {
+			final Consumer<BenchmarkService> call = scenario(scenario);
+			final BenchmarkService service = injector.getInstance(BenchmarkService.class);
+
+			System.out.printf("Warming up %s for %ds%n", scenario, WARMUP_SECONDS);
+			run(service, call, threads, WARMUP_SECONDS);
+
+			System.out.printf("Running %s on %d threads for %ds%n", scenario, threads, seconds);
+			final long[] latencies = run(service, call, threads, seconds);
+			report(latencies, seconds);
+		} finally {
+			BenchmarkFixture.stop(injector);
+		}
+	}
+
+	private static Consumer<BenchmarkService> scenario(final String name) {
+		switch (name) {
+		case "load":
+			return BenchmarkService::load;
+		case "nested":
+			return BenchmarkService::nested;
+		case "readOnly":
+			return BenchmarkService::loadReadOnly;
+		case "noDatabase":
+			return BenchmarkService::noDatabase;
+		default:
+			throw new IllegalArgumentException("Unknown scenario " + name);
+		}
+	}
+
+	// Returns the latency of every call, in nanoseconds
+	private static long[] run(
+			final BenchmarkService service,
+			final Consumer<BenchmarkService> call,
+			final int threads,
+			final int seconds) throws InterruptedException {
+		final CountDownLatch start = new CountDownLatch(1);
+		final List<Recorder> recorders = new ArrayList<>(threads);
+		final List<Thread> workers = new ArrayList<>(threads);
+		final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+
+		for (int i = 0; i < threads; i++) {
+			final Recorder recorder = new Recorder();
+			recorders.add(recorder);
+			final Thread worker = new Thread(() -> {
+				try {
+					start.await();
+				} catch (final InterruptedException e) {
+					return;
+				}
+				long now;
+				while ((now = System.nanoTime()) < deadline) {
+					call.accept(service);
+					recorder.record(System.nanoTime() - now);
+				}
+			}, "load-driver-" + i);
+			workers.add(worker);
+			worker.start();
+		}
+
+		start.countDown();
+		for (final Thread worker : workers) {
+			worker.join();
+		}
+
+		int total = 0;
+		for (final Recorder recorder : recorders) {
+			total += recorder.size;
+		}
+		final long[] latencies = new long[total];
+		int offset = 0;
+		for (final Recorder recorder : recorders) {
+			System.arraycopy(recorder.samples, 0, latencies, offset, recorder.size);
+			offset += recorder.size;
+		}
+		return latencies;
+	}
+
+	private static void report(final long[] latencies, final int seconds) {
+		Arrays.sort(latencies);
+		System.out.printf("calls:      %d%n", latencies.length);
+		System.out.printf("throughput: %.1f calls/s%n", (double) latencies.length / seconds);
+		for (final double percentile : new double[] { 0.5, 0.9, 0.99, 0.999 }) {
+			System.out.printf("p%-9s %.1f us%n", percentile * 100 + ":", micros(percentile(latencies, percentile)));
+		}
+		System.out.printf("max:        %.1f us%n", micros(latencies.length == 0 ? 0 : latencies[latencies.length - 1]));
+	}
+
+	private static long percentile(final long[] sorted, final double percentile) {
+		if (sorted.length == 0) {
+			return 0;
+		}
+		final int index = (int) Math.ceil(sorted.length * percentile) - 1;
+		return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+	}
+
+	private static double micros(final long nanos) {
+		return nanos / 1000.0;
+	}
+
+	// Single-writer sample buffer owned by one worker thread
+	private static class Recorder {
+		private long[] samples = new long[1 << 16];
+		private int size;
+
+		void record(final long nanos) {
+			if (size == samples.length) {
+				samples = Arrays.copyOf(samples, size * 2);
+			}
+			samples[size++] = nanos;
+		}
+	}
+}
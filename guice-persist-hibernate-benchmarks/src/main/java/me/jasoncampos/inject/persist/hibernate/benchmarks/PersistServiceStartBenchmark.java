@@ -0,0 +1,54 @@
+package me.jasoncampos.inject.persist.hibernate.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.inject.Injector;
+
+import me.jasoncampos.inject.persist.hibernate.HibernatePersistService;
+
+/**
+ * Time for {@code HibernatePersistService.start} to build a {@code SessionFactory}, cold (first start in a fresh JVM)
+ * and warm.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(3)
+public class PersistServiceStartBenchmark {
+
+	private HibernatePersistService persistService;
+
+	@Setup(Level.Invocation)
+	public void setup() {
+		final Injector injector = BenchmarkFixture.create();
+		persistService = injector.getInstance(HibernatePersistService.class);
+	}
+
+	@TearDown(Level.Invocation)
+	public void tearDown() {
+		persistService.stop();
+	}
+
+	@Benchmark
+	public HibernatePersistService start() {
+		persistService.start();
+		return persistService;
+	}
+}
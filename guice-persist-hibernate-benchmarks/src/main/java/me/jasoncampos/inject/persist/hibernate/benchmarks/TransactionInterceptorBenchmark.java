@@ -0,0 +1,79 @@
+package me.jasoncampos.inject.persist.hibernate.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.inject.Injector;
+
+/**
+ * Cost of {@code HibernateTransactionInterceptor.invoke} for nested and non-nested calls, with and without database
+ * work, and under contention from several threads.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransactionInterceptorBenchmark {
+
+	private Injector injector;
+	private BenchmarkService service;
+
+	@Setup
+	public void setup() {
+		injector = BenchmarkFixture.start();
+		service = injector.getInstance(BenchmarkService.class);
+	}
+
+	@TearDown
+	public void tearDown() {
+		BenchmarkFixture.stop(injector);
+	}
+
+	@Benchmark
+	public int noDatabase() {
+		return service.noDatabase();
+	}
+
+	@Benchmark
+	public BenchmarkEntity nonNested() {
+		return service.load();
+	}
+
+	@Benchmark
+	public BenchmarkEntity nested() {
+		return service.nested();
+	}
+
+	@Benchmark
+	public BenchmarkEntity readOnly() {
+		return service.loadReadOnly();
+	}
+
+	@Benchmark
+	@Threads(8)
+	public int noDatabaseContended() {
+		return service.noDatabase();
+	}
+
+	@Benchmark
+	@Threads(8)
+	public BenchmarkEntity nonNestedContended() {
+		return service.load();
+	}
+}
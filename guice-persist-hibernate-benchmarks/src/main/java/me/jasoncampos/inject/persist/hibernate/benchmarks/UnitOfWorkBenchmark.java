@@ -0,0 +1,72 @@
+package me.jasoncampos.inject.persist.hibernate.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.Session;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.inject.Injector;
+
+import me.jasoncampos.inject.persist.hibernate.HibernateUnitOfWork;
+
+/**
+ * Cost of {@code HibernateUnitOfWork.begin/end}, both for units of work which never use their session and for units
+ * of work which open (and therefore close) one.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UnitOfWorkBenchmark {
+
+	private Injector injector;
+	private HibernateUnitOfWork unitOfWork;
+
+	@Setup
+	public void setup() {
+		injector = BenchmarkFixture.start();
+		unitOfWork = injector.getInstance(HibernateUnitOfWork.class);
+	}
+
+	@TearDown
+	public void tearDown() {
+		BenchmarkFixture.stop(injector);
+	}
+
+	@Benchmark
+	public void beginEnd() {
+		unitOfWork.begin();
+		unitOfWork.end();
+	}
+
+	@Benchmark
+	public Session beginGetEnd() {
+		unitOfWork.begin();
+		try {
+			return unitOfWork.get();
+		} finally {
+			unitOfWork.end();
+		}
+	}
+
+	@Benchmark
+	@Threads(8)
+	public Session beginGetEndContended() {
+		return beginGetEnd();
+	}
+}
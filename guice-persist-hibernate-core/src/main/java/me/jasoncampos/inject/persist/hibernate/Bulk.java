@@ -0,0 +1,27 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import com.google.inject.persist.Transactional;
+
+/**
+ * Marks a {@link Transactional} method (or every {@code @Transactional} method of a class) as a bulk operation. The
+ * {@link HibernateTransactionInterceptor} runs such methods in a {@link HibernateStatelessUnitOfWork} rather than the
+ * regular {@link HibernateUnitOfWork}; the method should do its work through an injected
+ * {@code Provider<StatelessSession>}. A {@code StatelessSession} has no persistence context, so memory use stays flat
+ * and no dirty checking takes place regardless of how many rows are written.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+@Documented
+@Inherited
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.METHOD, ElementType.TYPE })
+public @interface Bulk {
+	//
+}
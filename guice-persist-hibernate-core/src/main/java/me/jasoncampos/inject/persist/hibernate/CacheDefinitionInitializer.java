@@ -0,0 +1,45 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import java.util.Map;
+
+import org.hibernate.boot.CacheRegionDefinition;
+import org.hibernate.boot.CacheRegionDefinition.CacheRegionType;
+import org.hibernate.boot.MetadataBuilder;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.spi.MetadataBuilderInitializer;
+import org.hibernate.cache.spi.access.AccessType;
+import org.hibernate.engine.config.spi.ConfigurationService;
+
+/**
+ * {@link MetadataBuilderInitializer} which turns the {@link HibernateCacheConfiguration#ENTITY_PREFIX} and
+ * {@link HibernateCacheConfiguration#COLLECTION_PREFIX} properties into cache region definitions, exactly as though
+ * the entities and collections were annotated with {@code @Cache}. Hibernate discovers it through
+ * {@code META-INF/services} whenever mapping metadata is built.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+public class CacheDefinitionInitializer implements MetadataBuilderInitializer {
+
+	@Override
+	public void contribute(final MetadataBuilder metadataBuilder, final StandardServiceRegistry serviceRegistry) {
+		final Map<?, ?> settings = serviceRegistry.getService(ConfigurationService.class).getSettings();
+		settings.forEach((key, value) -> {
+			final String name = key.toString();
+			if (name.startsWith(HibernateCacheConfiguration.ENTITY_PREFIX)) {
+				metadataBuilder.applyCacheRegionDefinition(
+						definition(CacheRegionType.ENTITY, name.substring(HibernateCacheConfiguration.ENTITY_PREFIX.length()), value));
+			} else if (name.startsWith(HibernateCacheConfiguration.COLLECTION_PREFIX)) {
+				metadataBuilder.applyCacheRegionDefinition(
+						definition(CacheRegionType.COLLECTION, name.substring(HibernateCacheConfiguration.COLLECTION_PREFIX.length()), value));
+			}
+		});
+	}
+
+	private static CacheRegionDefinition definition(final CacheRegionType type, final String role, final Object value) {
+		// <strategy>[,<region>]
+		final String[] parts = value.toString().split(",", 2);
+		final AccessType accessType = AccessType.fromExternalName(parts[0].trim());
+		final String region = parts.length > 1 ? parts[1].trim() : null;
+		return new CacheRegionDefinition(type, role, accessType.getExternalName(), region, true);
+	}
+}
@@ -0,0 +1,36 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Caches the result of a method by its arguments in the {@link QueryResultCache}. The cached results of the method are
+ * invalidated whenever a transaction which inserted, updated or deleted an entity of one of the
+ * {@link #invalidatedBy()} types (or of a subclass) commits. <br />
+ * <br />
+ *
+ * The arguments of the method form the cache key, so they must implement {@code equals} and {@code hashCode}. The
+ * result is shared by every caller, so it should be immutable; prefer returning values or DTOs rather than entities,
+ * which would be shared detached between sessions. Changes made by bulk HQL/SQL statements, or by other JVMs, do not
+ * invalidate cached results.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface CachedQuery {
+
+	/**
+	 * @return The entity types whose changes invalidate the cached results of the method
+	 */
+	Class<?>[] invalidatedBy();
+
+	/**
+	 * @return The maximum number of results cached for the method. The least recently used results are evicted first.
+	 */
+	long maxEntries() default 1000;
+}
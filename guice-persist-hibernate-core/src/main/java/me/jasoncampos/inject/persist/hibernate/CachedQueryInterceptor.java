@@ -0,0 +1,45 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import java.lang.reflect.Method;
+
+import javax.inject.Inject;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+
+import me.jasoncampos.inject.persist.hibernate.QueryResultCache.Arguments;
+import me.jasoncampos.inject.persist.hibernate.QueryResultCache.MethodResults;
+
+/**
+ * Serves the results of {@link CachedQuery} methods from the {@link QueryResultCache}, invoking the method only when
+ * its arguments miss the cache. Bound ahead of the transaction interceptor, so a hit costs neither a unit of work nor a
+ * transaction.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+public class CachedQueryInterceptor implements MethodInterceptor {
+
+	@Inject
+	QueryResultCache cache = null;
+
+	@Override
+	public Object invoke(final MethodInvocation methodInvocation) throws Throwable {
+		final Method method = methodInvocation.getMethod();
+		final MethodResults results = cache.resultsOf(method, method.getAnnotation(CachedQuery.class));
+		if (!cache.isUsable()) {
+			return methodInvocation.proceed();
+		}
+
+		final Arguments arguments = new Arguments(methodInvocation.getArguments());
+		final Object cached = results.get(arguments);
+		if (cached != null) {
+			return QueryResultCache.unwrap(cached);
+		}
+
+		// Read before the query runs, so that a commit which invalidates the results meanwhile prevents caching
+		final long generation = results.generation();
+		final Object result = methodInvocation.proceed();
+		results.put(arguments, result, generation);
+		return result;
+	}
+}
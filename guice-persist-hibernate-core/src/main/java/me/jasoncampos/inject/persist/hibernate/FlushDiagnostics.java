@@ -0,0 +1,103 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import org.hibernate.BaseSessionEventListener;
+import org.hibernate.Session;
+
+/**
+ * Counts the flushes of each unit of work and the entities they dirty-checked, to find the {@code @Transactional}
+ * methods which spend their time flushing. Each flush dirty-checks every entity in the session, so a method which
+ * loads many entities and then queries repeatedly in {@code FlushMode.AUTO} pays for a full dirty check before each
+ * query (see {@link FlushStrategy}). <br />
+ * <br />
+ *
+ * The counts are reported to {@link HibernateMetrics#flushesCounted(String, int, int, long)} when the unit of work
+ * ends. Diagnostics are disabled by default. Enable them with {@link HibernatePersistModule#enableFlushDiagnostics()}.
+ * A disabled instance adds nothing to the session.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+public class FlushDiagnostics {
+	private static final FlushDiagnostics DISABLED = new FlushDiagnostics(false);
+
+	private final boolean enabled;
+
+	/**
+	 * @param enabled
+	 *            True to count the flushes of every unit of work
+	 */
+	public FlushDiagnostics(final boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	/**
+	 * @return Diagnostics which count nothing.
+	 */
+	public static FlushDiagnostics disabled() {
+		return DISABLED;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Starts counting the flushes of the argument session.
+	 *
+	 * @return The counter of the session, or null if diagnostics are disabled
+	 */
+	Counter track(final Session session) {
+		if (!enabled) {
+			return null;
+		}
+		final Counter counter = new Counter();
+		session.addEventListeners(counter);
+		return counter;
+	}
+
+	/**
+	 * Flushes of a single session. Only accessed by the thread using the session.
+	 */
+	static class Counter extends BaseSessionEventListener {
+		private static final long serialVersionUID = 1L;
+
+		private int flushes;
+		private int autoFlushes;
+		private long entities;
+
+		@Override
+		public void flushEnd(final int numberOfEntities, final int numberOfCollections) {
+			flushes++;
+			entities += numberOfEntities;
+		}
+
+		// Hibernate checks whether a query needs a flush even if the session holds no entity; only count actual checks
+		@Override
+		public void partialFlushEnd(final int numberOfEntities, final int numberOfCollections) {
+			if (numberOfEntities > 0) {
+				autoFlushes++;
+				entities += numberOfEntities;
+			}
+		}
+
+		/**
+		 * @return The number of explicit and commit flushes
+		 */
+		int getFlushes() {
+			return flushes;
+		}
+
+		/**
+		 * @return The number of flushes performed before queries
+		 */
+		int getAutoFlushes() {
+			return autoFlushes;
+		}
+
+		/**
+		 * @return The number of entities dirty-checked by all flushes
+		 */
+		long getEntities() {
+			return entities;
+		}
+	}
+}
@@ -0,0 +1,46 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import javax.transaction.Synchronization;
+
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+
+/**
+ * Switches a session to the flush mode of a {@link FlushStrategy} for the duration of a transaction and restores its
+ * previous flush mode once the transaction completes.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+class FlushModeSynchronization implements Synchronization {
+	private final Session session;
+	private final FlushMode flushMode;
+
+	private FlushModeSynchronization(final Session session, final FlushMode flushMode) {
+		this.session = session;
+		this.flushMode = flushMode;
+	}
+
+	/**
+	 * Applies the argument flush mode to the argument session for the duration of the argument (already begun)
+	 * transaction.
+	 */
+	static void apply(final Session session, final Transaction txn, final FlushMode flushMode) {
+		final FlushMode previous = session.getHibernateFlushMode();
+		if (previous == flushMode) {
+			return;
+		}
+		session.setHibernateFlushMode(flushMode);
+		txn.registerSynchronization(new FlushModeSynchronization(session, previous));
+	}
+
+	@Override
+	public void beforeCompletion() {
+		//
+	}
+
+	@Override
+	public void afterCompletion(final int status) {
+		session.setHibernateFlushMode(flushMode);
+	}
+}
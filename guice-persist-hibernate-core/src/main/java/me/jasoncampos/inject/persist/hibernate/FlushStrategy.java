@@ -0,0 +1,38 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import org.hibernate.FlushMode;
+
+import com.google.inject.persist.Transactional;
+
+/**
+ * Sets the flush mode of the {@code Session} for the duration of the transaction of a {@link Transactional} method (or
+ * every {@code @Transactional} method of a class). The session's own flush mode is restored once the transaction
+ * completes.
+ * <ul>
+ * <li>{@code FlushMode.AUTO} (Hibernate's default) flushes, and so dirty-checks every entity in the session, before
+ * each query which might read pending changes, and again on commit</li>
+ * <li>{@code FlushMode.COMMIT} flushes only on commit. Queries do not see the transaction's pending changes.</li>
+ * <li>{@code FlushMode.MANUAL} never flushes implicitly: changes reach the database only if the method calls
+ * {@code Session.flush()} itself, and are otherwise lost</li>
+ * </ul>
+ * The annotation has no effect on {@link ReadOnly} methods, which never flush, on {@link Bulk} methods, or on a method
+ * which joins a transaction begun by an enclosing {@code @Transactional} method; the enclosing transaction decides.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ * @see FlushDiagnostics
+ */
+@Documented
+@Inherited
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.METHOD, ElementType.TYPE })
+public @interface FlushStrategy {
+
+	FlushMode value();
+}
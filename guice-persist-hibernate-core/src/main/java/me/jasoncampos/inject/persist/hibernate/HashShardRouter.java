@@ -0,0 +1,23 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import java.util.List;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * Routes each shard key by consistent hashing of its {@code hashCode()}. Appending a persistence unit moves only the
+ * share of keys which the new unit takes over; removing or reordering units moves most keys.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+public class HashShardRouter implements ShardRouter {
+
+	// Spreads sequential keys (e.g. numeric ids) before they are bucketed
+	private static final HashFunction HASH = Hashing.murmur3_32();
+
+	@Override
+	public String route(final Object shardKey, final List<String> persistenceUnits) {
+		return persistenceUnits.get(Hashing.consistentHash(HASH.hashInt(shardKey.hashCode()), persistenceUnits.size()));
+	}
+}
@@ -0,0 +1,128 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Writes entities through the current unit of work's {@code Session} in JDBC batches. Every {@link #getBatchSize()}
+ * entities the session is flushed, sending the pending inserts/updates as one JDBC batch per statement, and then
+ * cleared so the persistence context never holds more than one batch worth of entities. <br />
+ * <br />
+ *
+ * Writers are obtained from {@link HibernateBatchWriterFactory} and must be closed (preferably with
+ * try-with-resources) to flush the final, partial batch. Since the session is cleared after each batch, entities
+ * loaded before or written through the writer are detached once their batch has been sent.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+public class HibernateBatchWriter implements AutoCloseable {
+	private static final Logger logger = LoggerFactory.getLogger(HibernateBatchWriter.class);
+
+	private final Session session;
+	private final int batchSize;
+	private final Integer previousBatchSize;
+
+	private int pending;
+	private long rowsWritten;
+	private long batchesSent;
+	private boolean closed;
+
+	HibernateBatchWriter(final Session session, final int batchSize) {
+		Preconditions.checkArgument(batchSize > 0, "batchSize must be positive");
+		this.session = session;
+		this.batchSize = batchSize;
+		this.previousBatchSize = session.getJdbcBatchSize();
+		session.setJdbcBatchSize(batchSize);
+	}
+
+	/**
+	 * Persists the argument entity, sending the current batch if it is full.
+	 *
+	 * @param entity
+	 *            A transient entity
+	 */
+	public void persist(final Object entity) {
+		checkOpen();
+		session.persist(entity);
+		written();
+	}
+
+	/**
+	 * Merges the argument entity, sending the current batch if it is full. Note that the returned instance is detached
+	 * once its batch has been sent.
+	 *
+	 * @param entity
+	 *            A detached or transient entity
+	 * @return The managed instance
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T merge(final T entity) {
+		checkOpen();
+		final T merged = (T) session.merge(entity);
+		written();
+		return merged;
+	}
+
+	/**
+	 * Sends the pending (possibly partial) batch and clears the session.
+	 */
+	public void flush() {
+		checkOpen();
+		if (pending > 0) {
+			session.flush();
+			session.clear();
+			rowsWritten += pending;
+			batchesSent++;
+			pending = 0;
+			logger.trace("Sent batch {}. rowsWritten={}", batchesSent, rowsWritten);
+		}
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * @return The number of entities flushed to the database so far. Entities in the pending batch are not counted.
+	 */
+	public long getRowsWritten() {
+		return rowsWritten;
+	}
+
+	/**
+	 * @return The number of batches sent so far. Each batch is sent as at most one JDBC batch per distinct statement.
+	 */
+	public long getBatchesSent() {
+		return batchesSent;
+	}
+
+	/**
+	 * Sends the final batch and restores the session's JDBC batch size.
+	 */
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+		try {
+			flush();
+		} finally {
+			closed = true;
+			session.setJdbcBatchSize(previousBatchSize);
+			logger.debug("Batch writer closed. rowsWritten={} batchesSent={}", rowsWritten, batchesSent);
+		}
+	}
+
+	private void written() {
+		if (++pending >= batchSize) {
+			flush();
+		}
+	}
+
+	private void checkOpen() {
+		Preconditions.checkState(!closed, "HibernateBatchWriter has been closed");
+	}
+}
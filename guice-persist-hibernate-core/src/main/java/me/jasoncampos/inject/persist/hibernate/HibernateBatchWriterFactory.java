@@ -0,0 +1,69 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.hibernate.Session;
+import org.hibernate.boot.spi.SessionFactoryOptions;
+import org.hibernate.cfg.AvailableSettings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Creates {@link HibernateBatchWriter HibernateBatchWriters} bound to the current {@link HibernateUnitOfWork}. Writers
+ * may only be created inside a unit of work (typically a {@code @Transactional} method). <br />
+ * <br />
+ *
+ * The JDBC batch size is applied to the session for the lifetime of each writer. Statement ordering, which allows
+ * Hibernate to batch inserts/updates of interleaved entity types, can only be enabled for the whole
+ * {@code SessionFactory}: set {@value AvailableSettings#ORDER_INSERTS} and {@value AvailableSettings#ORDER_UPDATES} to
+ * {@code true} via the {@link HibernatePropertyProvider}.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+@Singleton
+public class HibernateBatchWriterFactory {
+	private static final Logger logger = LoggerFactory.getLogger(HibernateBatchWriterFactory.class);
+
+	public static final int DEFAULT_BATCH_SIZE = 50;
+
+	private final HibernateUnitOfWork unitOfWork;
+	private final AtomicBoolean orderingChecked = new AtomicBoolean();
+
+	@Inject
+	public HibernateBatchWriterFactory(final HibernateUnitOfWork unitOfWork) {
+		this.unitOfWork = unitOfWork;
+	}
+
+	/**
+	 * @return A writer which sends batches of {@link #DEFAULT_BATCH_SIZE} entities
+	 */
+	public HibernateBatchWriter create() {
+		return create(DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * @param batchSize
+	 *            The number of entities per batch. Also applied as the session's JDBC batch size.
+	 */
+	public HibernateBatchWriter create(final int batchSize) {
+		Preconditions.checkState(unitOfWork.isWorking(), "HibernateBatchWriter requires an active UnitOfWork");
+		final Session session = unitOfWork.get();
+		checkStatementOrdering(session);
+		return new HibernateBatchWriter(session, batchSize);
+	}
+
+	private void checkStatementOrdering(final Session session) {
+		if (orderingChecked.compareAndSet(false, true)) {
+			final SessionFactoryOptions options = session.getSessionFactory().getSessionFactoryOptions();
+			if (!options.isOrderInsertsEnabled() || !options.isOrderUpdatesEnabled()) {
+				logger.warn("{} and/or {} are disabled. Batches of mixed entity types will be split into many small JDBC batches.",
+						AvailableSettings.ORDER_INSERTS, AvailableSettings.ORDER_UPDATES);
+			}
+		}
+	}
+}
@@ -0,0 +1,189 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.cache.spi.RegionFactory;
+import org.hibernate.cache.spi.access.AccessType;
+import org.hibernate.cfg.AvailableSettings;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Programmatic second-level cache configuration: which entities and collections are cached, with which concurrency
+ * strategy, in which region, and how large each region may grow and how long its entries live. Supplied by a
+ * {@link HibernateCacheConfigurationProvider} and applied when the {@code Configuration} is built, so neither
+ * {@code @Cache} annotations nor XML are required.
+ *
+ * <pre>
+ * HibernateCacheConfiguration.builder()
+ * 	.entity(Country.class, AccessType.READ_ONLY)
+ * 	.entity(Account.class, AccessType.READ_WRITE, "accounts")
+ * 	.collection(Account.class, "roles", AccessType.READ_WRITE)
+ * 	.region("accounts", 10_000, 10, TimeUnit.MINUTES)
+ * 	.build();
+ * </pre>
+ *
+ * The configuration is expressed as properties (see {@link #getProperties()}) which are applied <i>before</i> those of
+ * the {@link HibernatePropertyProvider}, so any of them can be overridden at runtime. Regions are stored in memory by
+ * {@link LocalRegionFactory} unless another {@link RegionFactory} is set.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+public class HibernateCacheConfiguration {
+
+	/**
+	 * Prefix of the properties declaring the concurrency strategy, and optionally the region, of a cached entity:
+	 * {@code guice.persist.cache.entity.<entity class>=<strategy>[,<region>]}
+	 */
+	public static final String ENTITY_PREFIX = "guice.persist.cache.entity.";
+
+	/**
+	 * Prefix of the properties declaring the concurrency strategy, and optionally the region, of a cached collection:
+	 * {@code guice.persist.cache.collection.<owner class>.<property>=<strategy>[,<region>]}
+	 */
+	public static final String COLLECTION_PREFIX = "guice.persist.cache.collection.";
+
+	/**
+	 * Prefix of the properties sizing a region: {@code guice.persist.cache.region.<region>.max_entries} and
+	 * {@code guice.persist.cache.region.<region>.ttl_millis}. Regions without their own properties use
+	 * {@value #DEFAULT_REGION}.
+	 */
+	public static final String REGION_PREFIX = "guice.persist.cache.region.";
+
+	/**
+	 * Region name whose settings apply to every region without settings of its own.
+	 */
+	public static final String DEFAULT_REGION = "default";
+
+	public static final String MAX_ENTRIES_SUFFIX = ".max_entries";
+	public static final String TTL_MILLIS_SUFFIX = ".ttl_millis";
+
+	private static final HibernateCacheConfiguration NONE = new HibernateCacheConfiguration(ImmutableMap.of());
+
+	private final ImmutableMap<String, String> properties;
+
+	private HibernateCacheConfiguration(final ImmutableMap<String, String> properties) {
+		this.properties = properties;
+	}
+
+	/**
+	 * @return A configuration which caches nothing and leaves the second-level cache settings untouched.
+	 */
+	public static HibernateCacheConfiguration none() {
+		return NONE;
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * @return The Hibernate and {@code guice.persist.cache} properties expressing this configuration
+	 */
+	public Map<String, String> getProperties() {
+		return properties;
+	}
+
+	public static class Builder {
+		private final Map<String, String> definitions = new LinkedHashMap<>();
+		private final Map<String, String> regions = new LinkedHashMap<>();
+		private Class<? extends RegionFactory> regionFactory = LocalRegionFactory.class;
+		private boolean queryCache = false;
+
+		private Builder() {
+		}
+
+		/**
+		 * Caches the argument entity in a region named after the entity class.
+		 */
+		public Builder entity(final Class<?> entityClass, final AccessType accessType) {
+			return entity(entityClass, accessType, null);
+		}
+
+		/**
+		 * Caches the argument entity in the argument region. Several entities may share a region.
+		 */
+		public Builder entity(final Class<?> entityClass, final AccessType accessType, final String region) {
+			definitions.put(ENTITY_PREFIX + entityClass.getName(), definition(accessType, region));
+			return this;
+		}
+
+		/**
+		 * Caches the argument collection property of the argument entity in a region named after the collection role.
+		 */
+		public Builder collection(final Class<?> ownerClass, final String property, final AccessType accessType) {
+			return collection(ownerClass, property, accessType, null);
+		}
+
+		/**
+		 * Caches the argument collection property of the argument entity in the argument region.
+		 */
+		public Builder collection(final Class<?> ownerClass, final String property, final AccessType accessType, final String region) {
+			definitions.put(COLLECTION_PREFIX + ownerClass.getName() + "." + property, definition(accessType, region));
+			return this;
+		}
+
+		/**
+		 * Bounds the argument region. Once full, the least recently used entries are evicted.
+		 *
+		 * @param maxEntries
+		 *            Maximum number of entries held by the region
+		 * @param timeToLive
+		 *            How long an entry is held after it is written. Zero to hold entries until they are evicted.
+		 * @param unit
+		 *            Unit of {@code timeToLive}
+		 */
+		public Builder region(final String region, final long maxEntries, final long timeToLive, final TimeUnit unit) {
+			Preconditions.checkArgument(maxEntries > 0, "maxEntries must be positive");
+			Preconditions.checkArgument(timeToLive >= 0, "timeToLive must not be negative");
+			regions.put(REGION_PREFIX + region + MAX_ENTRIES_SUFFIX, Long.toString(maxEntries));
+			regions.put(REGION_PREFIX + region + TTL_MILLIS_SUFFIX, Long.toString(unit.toMillis(timeToLive)));
+			return this;
+		}
+
+		/**
+		 * Bounds every region which is not bounded by {@link #region(String, long, long, TimeUnit)}.
+		 */
+		public Builder defaultRegion(final long maxEntries, final long timeToLive, final TimeUnit unit) {
+			return region(DEFAULT_REGION, maxEntries, timeToLive, unit);
+		}
+
+		/**
+		 * Also enables the query cache, for queries marked cacheable.
+		 */
+		public Builder queryCache() {
+			this.queryCache = true;
+			return this;
+		}
+
+		/**
+		 * Stores regions with the argument {@code RegionFactory} rather than {@link LocalRegionFactory}. The
+		 * {@code guice.persist.cache.region} settings are only honoured by {@link LocalRegionFactory}.
+		 */
+		public Builder regionFactory(final Class<? extends RegionFactory> regionFactory) {
+			this.regionFactory = regionFactory;
+			return this;
+		}
+
+		public HibernateCacheConfiguration build() {
+			if (definitions.isEmpty() && !queryCache) {
+				return NONE;
+			}
+
+			final ImmutableMap.Builder<String, String> properties = ImmutableMap.builder();
+			properties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, "true");
+			properties.put(AvailableSettings.USE_QUERY_CACHE, Boolean.toString(queryCache));
+			properties.put(AvailableSettings.CACHE_REGION_FACTORY, regionFactory.getName());
+			properties.putAll(definitions);
+			properties.putAll(regions);
+			return new HibernateCacheConfiguration(properties.build());
+		}
+
+		private static String definition(final AccessType accessType, final String region) {
+			return region == null ? accessType.getExternalName() : accessType.getExternalName() + "," + region;
+		}
+	}
+}
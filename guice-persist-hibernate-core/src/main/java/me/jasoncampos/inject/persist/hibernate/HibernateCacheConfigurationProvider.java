@@ -0,0 +1,12 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import javax.inject.Provider;
+
+/**
+ * Provides the {@link HibernateCacheConfiguration} applied to the primary and every replica {@code SessionFactory}.
+ * Unless one is set with {@link HibernatePersistModule#setCacheConfiguration(Class)}, nothing is cached.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+public interface HibernateCacheConfigurationProvider extends Provider<HibernateCacheConfiguration> {
+}
@@ -0,0 +1,86 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+/**
+ * Instrumentation SPI invoked by {@link HibernateTransactionInterceptor} and {@link HibernateUnitOfWork}. Every
+ * measurement is tagged with the {@code @Transactional} method which started the unit of work (formatted as
+ * {@code DeclaringClass.method}), or {@link #UNTAGGED} for units of work begun outside of a transactional method. <br />
+ * <br />
+ *
+ * The default implementation is {@link JmxHibernateMetrics}. Bind another via
+ * {@code OptionalBinder.newOptionalBinder(binder(), HibernateMetrics.class).setBinding()}. Implementations are invoked
+ * on the hot path of every transaction: they must be thread safe and must not block.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+public interface HibernateMetrics {
+
+	/**
+	 * Metrics implementation which records nothing.
+	 */
+	HibernateMetrics NONE = new HibernateMetrics() {
+	};
+
+	/**
+	 * Tag of units of work which were not begun by a {@code @Transactional} method.
+	 */
+	String UNTAGGED = "none";
+
+	/**
+	 * Timed operations performed on a unit of work's {@code Session}.
+	 */
+	enum Operation {
+		BEGIN, FLUSH, CLOSE
+	}
+
+	/**
+	 * Invoked when a transaction which took place (i.e. whose method used the session) commits or rolls back.
+	 *
+	 * @param method
+	 *            The transactional method
+	 * @param committed
+	 *            False if the transaction was rolled back or the commit failed
+	 * @param elapsedNanos
+	 *            Time from the start of the method to the completion of the transaction
+	 */
+	default void transactionCompleted(final String method, final boolean committed, final long elapsedNanos) {
+	}
+
+	/**
+	 * Invoked when a {@link Retry} method is about to run again after its transaction failed.
+	 *
+	 * @param attempt
+	 *            The attempt which failed, starting at 1
+	 * @param failure
+	 *            The failure of the attempt
+	 */
+	default void transactionRetried(final String method, final int attempt, final Throwable failure) {
+	}
+
+	/**
+	 * Invoked each time an operation on a unit of work's session completes.
+	 */
+	default void operationCompleted(final String method, final Operation operation, final long elapsedNanos) {
+	}
+
+	/**
+	 * Invoked when a unit of work's session is closed.
+	 *
+	 * @param openNanos
+	 *            Time the session (and its connection) stayed open
+	 */
+	default void sessionClosed(final String method, final long openNanos) {
+	}
+
+	/**
+	 * Invoked when a unit of work whose session was opened ends, if {@link FlushDiagnostics} are enabled.
+	 *
+	 * @param flushes
+	 *            Explicit and commit flushes of the session
+	 * @param autoFlushes
+	 *            Flushes the session performed before queries
+	 * @param entities
+	 *            Entities dirty-checked by all of the flushes
+	 */
+	default void flushesCounted(final String method, final int flushes, final int autoFlushes, final long entities) {
+	}
+}
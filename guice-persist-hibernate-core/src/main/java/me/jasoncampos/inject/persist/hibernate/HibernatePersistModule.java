@@ -1,7 +1,12 @@
 package me.jasoncampos.inject.persist.hibernate;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -10,19 +15,30 @@ import javax.persistence.EntityManager;
 import org.aopalliance.intercept.MethodInterceptor;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
 import org.hibernate.boot.registry.BootstrapServiceRegistry;
 import org.hibernate.boot.registry.BootstrapServiceRegistryBuilder;
 import org.hibernate.cfg.Configuration;
 import org.hibernate.integrator.spi.Integrator;
 
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.inject.Key;
+import com.google.inject.Provider;
 import com.google.inject.Provides;
 import com.google.inject.TypeLiteral;
+import com.google.inject.matcher.Matchers;
+import com.google.inject.multibindings.MapBinder;
+import com.google.inject.multibindings.Multibinder;
 import com.google.inject.multibindings.OptionalBinder;
 import com.google.inject.persist.PersistModule;
 import com.google.inject.persist.PersistService;
 import com.google.inject.persist.UnitOfWork;
 
+import me.jasoncampos.inject.persist.hibernate.integrator.AutoRegisteringListenerIntegrator;
+
 /**
  * Adaptation of the {@link PersistModule} specific to using Hibernate via a {@code SessionFactory} as opposed to the
  * JPA {@code EntityManagerFactory}. This allows for runtime binding of configuration properties (using a
@@ -34,6 +50,20 @@ import com.google.inject.persist.UnitOfWork;
  * constructor<br />
  * OR<br/>
  * b) Provider bindings for those classes via an installed Guice module
+ * <br />
+ * <br />
+ * Read replicas of the primary database may be registered with {@link #addReplica(Class)} (or by adding
+ * {@link Replica} qualified {@link HibernatePropertyProvider} bindings to a {@code Multibinder}). Each replica's
+ * properties are applied on top of the primary properties, so a replica provider need only supply the properties which
+ * differ (typically the connection url and credentials). Units of work begun for {@link ReadOnly} transactions are
+ * routed to a replica chosen by the bound {@link ReplicaLoadBalancer}.
+ * <br />
+ * <br />
+ * Additional named persistence units (e.g. the shards of a horizontally partitioned database) may be registered with
+ * {@link #addPersistenceUnit(String, Class, Class)}. Each one gets its own {@link HibernatePersistService} and
+ * {@code SessionFactory}, bound under {@link PersistenceUnits#named(String)} along with a {@code UnitOfWork} and
+ * {@code Session} which open their session on the unit. Units of work are routed to them by {@link ShardKey}. The
+ * unqualified bindings remain those of the default persistence unit.
  *
  * @author Jason Campos <jcampos8782@gmail.com>
  */
@@ -41,6 +71,16 @@ public class HibernatePersistModule extends PersistModule {
 
 	private final Class<? extends HibernateEntityClassProvider> entityClassProvider;
 	private final Class<? extends HibernatePropertyProvider> hibernatePropertyProvider;
+	private final List<Class<? extends HibernatePropertyProvider>> replicaPropertyProviders = new ArrayList<>();
+	private final Map<String, PersistenceUnitProviders> persistenceUnits = new LinkedHashMap<>();
+	private final List<Class<? extends HibernateStartupListener>> startupListeners = new ArrayList<>();
+	private Class<? extends HibernateCacheConfigurationProvider> cacheConfigurationProvider;
+	private UnitOfWorkWatchdog watchdog = UnitOfWorkWatchdog.disabled();
+	private TransactionTimeout transactionTimeout = TransactionTimeout.NONE;
+	private boolean recordSessionAllocationStacks = false;
+	private boolean flushDiagnostics = false;
+	private Class<? extends OutboxSink> outboxSink;
+	private OutboxConfiguration outboxConfiguration = OutboxConfiguration.DEFAULT;
 
 	/**
 	 * Instantiates module without specifying the {@link #hibernatePropertyProvider} or {@link #entityClassProvider}.
@@ -66,6 +106,134 @@ public class HibernatePersistModule extends PersistModule {
 		this.hibernatePropertyProvider = hibernatePropertyProvider;
 	}
 
+	/**
+	 * Registers a read replica whose properties are supplied by the argument provider class.
+	 *
+	 * @param replicaPropertyProvider
+	 * @return This module
+	 */
+	public HibernatePersistModule addReplica(final Class<? extends HibernatePropertyProvider> replicaPropertyProvider) {
+		replicaPropertyProviders.add(replicaPropertyProvider);
+		return this;
+	}
+
+	/**
+	 * Registers a named persistence unit with its own entity classes and properties. Its {@link HibernatePersistService}
+	 * and {@code SessionFactory} are bound under {@link PersistenceUnits#named(String)}, and it starts and stops along
+	 * with the default persistence unit. Shard keys are routed among the units in the order they are added.
+	 *
+	 * @param name
+	 * @param entityClassProvider
+	 * @param hibernatePropertyProvider
+	 * @return This module
+	 */
+	public HibernatePersistModule addPersistenceUnit(
+			final String name,
+			final Class<? extends HibernateEntityClassProvider> entityClassProvider,
+			final Class<? extends HibernatePropertyProvider> hibernatePropertyProvider) {
+		Preconditions.checkArgument(!Strings.isNullOrEmpty(name), "Persistence unit name must not be empty");
+		Preconditions.checkArgument(!persistenceUnits.containsKey(name), "Persistence unit %s is already registered", name);
+		persistenceUnits.put(name, new PersistenceUnitProviders(entityClassProvider, hibernatePropertyProvider));
+		return this;
+	}
+
+	/**
+	 * Registers a listener which is notified as the {@link HibernatePersistService} starts, and as each named
+	 * persistence unit (see {@link #addPersistenceUnit(String, Class, Class)}) starts.
+	 *
+	 * @param startupListener
+	 * @return This module
+	 */
+	public HibernatePersistModule addStartupListener(final Class<? extends HibernateStartupListener> startupListener) {
+		startupListeners.add(startupListener);
+		return this;
+	}
+
+	/**
+	 * Enables the {@link UnitOfWorkWatchdog}, which warns about units of work holding their session for longer than
+	 * {@code warnAfter} and cancels their running statement after {@code cancelAfter}.
+	 *
+	 * @param warnAfter
+	 * @param cancelAfter
+	 *            Zero to never cancel
+	 * @param unit
+	 * @return This module
+	 */
+	public HibernatePersistModule setWatchdog(final long warnAfter, final long cancelAfter, final TimeUnit unit) {
+		this.watchdog = new UnitOfWorkWatchdog(warnAfter, cancelAfter, unit);
+		return this;
+	}
+
+	/**
+	 * Limits the time the transaction of each {@code @Transactional} method may run, unless the method declares its own
+	 * {@link Timeout}.
+	 *
+	 * @param timeout
+	 *            Zero for none
+	 * @param unit
+	 * @return This module
+	 */
+	public HibernatePersistModule setTransactionTimeout(final long timeout, final TimeUnit unit) {
+		this.transactionTimeout = new TransactionTimeout(timeout, unit);
+		return this;
+	}
+
+	/**
+	 * Records the stack which opened each session outside of a unit of work so that the {@link SessionLeakDetector} can
+	 * report where leaked sessions came from. Intended for debugging.
+	 *
+	 * @return This module
+	 */
+	public HibernatePersistModule recordSessionAllocationStacks() {
+		this.recordSessionAllocationStacks = true;
+		return this;
+	}
+
+	/**
+	 * Enables {@link FlushDiagnostics}, which count the flushes of each unit of work and the entities they dirty-checked.
+	 *
+	 * @return This module
+	 */
+	public HibernatePersistModule enableFlushDiagnostics() {
+		this.flushDiagnostics = true;
+		return this;
+	}
+
+	/**
+	 * Configures the second-level cache of the primary and every replica {@code SessionFactory} with the
+	 * {@link HibernateCacheConfiguration} supplied by the argument provider class.
+	 *
+	 * @param cacheConfigurationProvider
+	 * @return This module
+	 */
+	public HibernatePersistModule setCacheConfiguration(final Class<? extends HibernateCacheConfigurationProvider> cacheConfigurationProvider) {
+		this.cacheConfigurationProvider = cacheConfigurationProvider;
+		return this;
+	}
+
+	/**
+	 * Starts an {@link OutboxRelay} which publishes the messages of the {@link Outbox} to the argument sink.
+	 *
+	 * @param outboxSink
+	 * @return This module
+	 */
+	public HibernatePersistModule enableOutbox(final Class<? extends OutboxSink> outboxSink) {
+		return enableOutbox(outboxSink, OutboxConfiguration.DEFAULT);
+	}
+
+	/**
+	 * Starts an {@link OutboxRelay} which publishes the messages of the {@link Outbox} to the argument sink.
+	 *
+	 * @param outboxSink
+	 * @param outboxConfiguration
+	 * @return This module
+	 */
+	public HibernatePersistModule enableOutbox(final Class<? extends OutboxSink> outboxSink, final OutboxConfiguration outboxConfiguration) {
+		this.outboxSink = outboxSink;
+		this.outboxConfiguration = outboxConfiguration;
+		return this;
+	}
+
 	@Override
 	protected void configurePersistence() {
 		requireBinding(HibernateEntityClassProvider.class);
@@ -91,6 +259,108 @@ public class HibernatePersistModule extends PersistModule {
 		bind(UnitOfWork.class).to(HibernateUnitOfWork.class);
 		bind(Session.class).toProvider(HibernateUnitOfWork.class);
 
+		// Stateless sessions for @Bulk transactions are managed by a separate unit of work
+		bind(HibernateStatelessUnitOfWork.class).in(Singleton.class);
+		bind(StatelessSession.class).toProvider(HibernateStatelessUnitOfWork.class);
+
+		// Replicas are optional; default to round-robin selection among them
+		final Multibinder<HibernatePropertyProvider> replicas = Multibinder.newSetBinder(binder(), HibernatePropertyProvider.class, Replica.class);
+		replicaPropertyProviders.forEach(provider -> replicas.addBinding().to(provider));
+		OptionalBinder.newOptionalBinder(binder(), ReplicaLoadBalancer.class)
+			.setDefault()
+			.to(RoundRobinReplicaLoadBalancer.class);
+
+		// Deadlocks, serialization failures and optimistic lock failures of @Retry methods are retried
+		OptionalBinder.newOptionalBinder(binder(), RetryClassifier.class)
+			.setDefault()
+			.to(SqlStateRetryClassifier.class);
+
+		// Transactions are measured and exposed via JMX by default
+		OptionalBinder.newOptionalBinder(binder(), HibernateMetrics.class)
+			.setDefault()
+			.to(JmxHibernateMetrics.class);
+
+		OptionalBinder.newOptionalBinder(binder(), TransactionTimeout.class)
+			.setDefault()
+			.toInstance(transactionTimeout);
+
+		OptionalBinder.newOptionalBinder(binder(), UnitOfWorkWatchdog.class)
+			.setDefault()
+			.toInstance(watchdog);
+
+		OptionalBinder.newOptionalBinder(binder(), SessionLeakDetector.class)
+			.setDefault()
+			.toInstance(new SessionLeakDetector(recordSessionAllocationStacks));
+
+		OptionalBinder.newOptionalBinder(binder(), FlushDiagnostics.class)
+			.setDefault()
+			.toInstance(new FlushDiagnostics(flushDiagnostics));
+
+		// Nothing is cached unless a cache configuration is provided
+		final OptionalBinder<HibernateCacheConfigurationProvider> cacheConfiguration = OptionalBinder.newOptionalBinder(binder(), HibernateCacheConfigurationProvider.class);
+		if (cacheConfigurationProvider != null) {
+			cacheConfiguration.setDefault().to(cacheConfigurationProvider);
+		} else {
+			cacheConfiguration.setDefault().toInstance(HibernateCacheConfiguration::none);
+		}
+
+		// Results of @CachedQuery methods. Bound ahead of the transaction interceptor so that hits skip the transaction.
+		bind(QueryResultCache.class).in(Singleton.class);
+		final CachedQueryInterceptor cachedQueryInterceptor = new CachedQueryInterceptor();
+		requestInjection(cachedQueryInterceptor);
+		bindInterceptor(Matchers.any(), Matchers.annotatedWith(CachedQuery.class), cachedQueryInterceptor);
+
+		final Multibinder<HibernateStartupListener> listeners = Multibinder.newSetBinder(binder(), HibernateStartupListener.class);
+		startupListeners.forEach(listener -> listeners.addBinding().to(listener));
+		// Rebuilds the SessionFactories when a property provider reports a change
+		listeners.addBinding().to(PropertyChangeReloader.class);
+		// Lets the bound metrics release their resources (e.g. MBeans) as the service stops
+		listeners.addBinding().toProvider(MetricsListenerProvider.class);
+
+		// Named persistence units, started and stopped by HibernateShards along with the default unit
+		final MapBinder<String, HibernatePersistService> units = MapBinder.newMapBinder(binder(), String.class, HibernatePersistService.class);
+		final List<Provider<? extends HibernateStartupListener>> listenerProviders = new ArrayList<>();
+		startupListeners.forEach(listener -> listenerProviders.add(getProvider(listener)));
+		persistenceUnits.forEach((name, providers) -> {
+			final PersistenceUnit unit = PersistenceUnits.named(name);
+			bind(HibernateEntityClassProvider.class).annotatedWith(unit).to(providers.entityClassProvider);
+			bind(HibernatePropertyProvider.class).annotatedWith(unit).to(providers.hibernatePropertyProvider);
+			bind(HibernatePersistService.class).annotatedWith(unit).toProvider(new PersistenceUnitProvider(
+					name,
+					getProvider(BootstrapServiceRegistry.class),
+					getProvider(Key.get(HibernateEntityClassProvider.class, unit)),
+					getProvider(Key.get(HibernatePropertyProvider.class, unit)),
+					getProvider(HibernateCacheConfigurationProvider.class),
+					listenerProviders)).in(Singleton.class);
+			bind(SessionFactory.class).annotatedWith(unit).toProvider(Key.get(HibernatePersistService.class, unit));
+			// Views of the one HibernateUnitOfWork which open their session on this unit
+			final PersistenceUnitWork work = new PersistenceUnitWork(
+					getProvider(HibernateUnitOfWork.class),
+					getProvider(Key.get(HibernatePersistService.class, unit)));
+			bind(UnitOfWork.class).annotatedWith(unit).toInstance(work);
+			bind(Session.class).annotatedWith(unit).toProvider(work);
+			units.addBinding(name).to(Key.get(HibernatePersistService.class, unit));
+		});
+		OptionalBinder.newOptionalBinder(binder(), ShardRouter.class)
+			.setDefault()
+			.to(HashShardRouter.class);
+		bind(HibernateShards.class).in(Singleton.class);
+		listeners.addBinding().to(HibernateShards.class);
+
+		// Messages may be enqueued without a relay (e.g. when another process relays them)
+		bind(Outbox.class).in(Singleton.class);
+		OptionalBinder.newOptionalBinder(binder(), OutboxConfiguration.class)
+			.setDefault()
+			.toInstance(outboxConfiguration);
+		OptionalBinder.newOptionalBinder(binder(), OutboxSerializer.class)
+			.setDefault()
+			.toInstance(String::valueOf);
+		if (outboxSink != null) {
+			bind(OutboxSink.class).to(outboxSink);
+			bind(OutboxRelay.class).in(Singleton.class);
+			listeners.addBinding().to(OutboxRelay.class);
+		}
+
 		// Default to an empty set of integrators
 		// @formatter:off
 		final List<Integrator> integrators = Collections.emptyList();
@@ -117,18 +387,49 @@ public class HibernatePersistModule extends PersistModule {
 	@Provides
 	private Configuration getHibernateConfiguration(
 			final HibernateEntityClassProvider entityClassProvider,
-			final HibernatePropertyProvider hibernatePropertyProvider) {
-		final Configuration configuration = new Configuration();
-		hibernatePropertyProvider.get().forEach((key, value) -> configuration.setProperty(key, value));
-		entityClassProvider.get().forEach(entityClass -> configuration.addAnnotatedClass(entityClass));
-		return configuration;
+			final HibernatePropertyProvider hibernatePropertyProvider,
+			final HibernateCacheConfigurationProvider cacheConfigurationProvider) {
+		return newConfiguration(entityClassProvider, hibernatePropertyProvider, cacheConfigurationProvider);
+	}
+
+	@Inject
+	@Provides
+	@Replica
+	private ImmutableList<Configuration> getReplicaConfigurations(
+			final HibernateEntityClassProvider entityClassProvider,
+			final HibernatePropertyProvider hibernatePropertyProvider,
+			final HibernateCacheConfigurationProvider cacheConfigurationProvider,
+			@Replica final Set<HibernatePropertyProvider> replicaPropertyProviders) {
+		if (replicaPropertyProviders.isEmpty()) {
+			return ImmutableList.of();
+		}
+
+		final Map<String, String> cacheProperties = cacheConfigurationProvider.get().getProperties();
+		final Map<String, String> primaryProperties = hibernatePropertyProvider.get();
+		final List<Class<? extends Object>> entityClasses = entityClassProvider.get();
+		final ImmutableList.Builder<Configuration> configurations = ImmutableList.builder();
+		for (final HibernatePropertyProvider replicaPropertyProvider : replicaPropertyProviders) {
+			final Configuration configuration = new Configuration();
+			cacheProperties.forEach((key, value) -> configuration.setProperty(key, value));
+			primaryProperties.forEach((key, value) -> configuration.setProperty(key, value));
+			replicaPropertyProvider.get().forEach((key, value) -> configuration.setProperty(key, value));
+			entityClasses.forEach(entityClass -> configuration.addAnnotatedClass(entityClass));
+			configurations.add(configuration);
+		}
+		return configurations.build();
 	}
 
 	@Provides
 	@Singleton
 	@Inject
-	private BootstrapServiceRegistry getBootstrapServiceRegistry(final ImmutableSet<? extends Integrator> integrators) {
+	private BootstrapServiceRegistry getBootstrapServiceRegistry(
+			final ImmutableSet<? extends Integrator> integrators,
+			final QueryResultCache queryResultCache) {
 		final BootstrapServiceRegistryBuilder builder = new BootstrapServiceRegistryBuilder();
+		// Times the metadata phase of each SessionFactory build
+		builder.applyIntegrator(new StartupPhaseIntegrator());
+		// Invalidates @CachedQuery results as changes commit
+		builder.applyIntegrator(new AutoRegisteringListenerIntegrator(queryResultCache.getListeners()));
 
 		for (final Integrator integrator : integrators) {
 			builder.applyIntegrator(integrator);
@@ -136,4 +437,96 @@ public class HibernatePersistModule extends PersistModule {
 
 		return builder.build();
 	}
+
+	private static Configuration newConfiguration(
+			final HibernateEntityClassProvider entityClassProvider,
+			final HibernatePropertyProvider hibernatePropertyProvider,
+			final HibernateCacheConfigurationProvider cacheConfigurationProvider) {
+		final Configuration configuration = new Configuration();
+		// Cache properties first, so that the property provider may override them
+		cacheConfigurationProvider.get().getProperties().forEach((key, value) -> configuration.setProperty(key, value));
+		hibernatePropertyProvider.get().forEach((key, value) -> configuration.setProperty(key, value));
+		entityClassProvider.get().forEach(entityClass -> configuration.addAnnotatedClass(entityClass));
+		return configuration;
+	}
+
+	private static class PersistenceUnitProviders {
+		private final Class<? extends HibernateEntityClassProvider> entityClassProvider;
+		private final Class<? extends HibernatePropertyProvider> hibernatePropertyProvider;
+
+		private PersistenceUnitProviders(
+				final Class<? extends HibernateEntityClassProvider> entityClassProvider,
+				final Class<? extends HibernatePropertyProvider> hibernatePropertyProvider) {
+			this.entityClassProvider = entityClassProvider;
+			this.hibernatePropertyProvider = hibernatePropertyProvider;
+		}
+	}
+
+	/**
+	 * Supplies the bound {@link HibernateMetrics} as a startup listener if it is one, or a listener which does nothing.
+	 */
+	private static class MetricsListenerProvider implements Provider<HibernateStartupListener> {
+		private final HibernateMetrics metrics;
+
+		@Inject
+		MetricsListenerProvider(final HibernateMetrics metrics) {
+			this.metrics = metrics;
+		}
+
+		@Override
+		public HibernateStartupListener get() {
+			return metrics instanceof HibernateStartupListener ? (HibernateStartupListener) metrics : new HibernateStartupListener() {
+			};
+		}
+	}
+
+	/**
+	 * Builds the {@link HibernatePersistService} of a named persistence unit. Persistence units have no replicas and
+	 * share the integrators, second-level cache configuration and registered startup listeners of the default unit. A
+	 * unit whose property provider reports a change reloads on its own.
+	 */
+	private static class PersistenceUnitProvider implements Provider<HibernatePersistService> {
+		private final String name;
+		private final Provider<BootstrapServiceRegistry> bootstrapServiceRegistry;
+		private final Provider<HibernateEntityClassProvider> entityClassProvider;
+		private final Provider<HibernatePropertyProvider> hibernatePropertyProvider;
+		private final Provider<HibernateCacheConfigurationProvider> cacheConfigurationProvider;
+		private final List<Provider<? extends HibernateStartupListener>> startupListeners;
+
+		private PersistenceUnitProvider(
+				final String name,
+				final Provider<BootstrapServiceRegistry> bootstrapServiceRegistry,
+				final Provider<HibernateEntityClassProvider> entityClassProvider,
+				final Provider<HibernatePropertyProvider> hibernatePropertyProvider,
+				final Provider<HibernateCacheConfigurationProvider> cacheConfigurationProvider,
+				final List<Provider<? extends HibernateStartupListener>> startupListeners) {
+			this.name = name;
+			this.bootstrapServiceRegistry = bootstrapServiceRegistry;
+			this.entityClassProvider = entityClassProvider;
+			this.hibernatePropertyProvider = hibernatePropertyProvider;
+			this.cacheConfigurationProvider = cacheConfigurationProvider;
+			this.startupListeners = startupListeners;
+		}
+
+		@Override
+		public HibernatePersistService get() {
+			final HibernateEntityClassProvider entityClasses = entityClassProvider.get();
+			final HibernatePropertyProvider properties = hibernatePropertyProvider.get();
+			final HibernateCacheConfigurationProvider cacheConfiguration = cacheConfigurationProvider.get();
+			return new HibernatePersistService(
+					name,
+					bootstrapServiceRegistry.get(),
+					() -> newConfiguration(entityClasses, properties, cacheConfiguration),
+					ImmutableList::of,
+					listeners(new PropertyChangeReloader(properties, ImmutableSet.of())));
+		}
+
+		// The listeners registered with addStartupListener, which are told about every persistence unit
+		private ImmutableSet<HibernateStartupListener> listeners(final PropertyChangeReloader reloader) {
+			final ImmutableSet.Builder<HibernateStartupListener> listeners = ImmutableSet.builder();
+			listeners.add(reloader);
+			startupListeners.forEach(listener -> listeners.add(listener.get()));
+			return listeners.build();
+		}
+	}
 }
@@ -1,21 +1,57 @@
 package me.jasoncampos.inject.persist.hibernate;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
 import javax.inject.Inject;
 import javax.inject.Provider;
 import javax.inject.Singleton;
 
 import org.hibernate.SessionFactory;
 import org.hibernate.boot.registry.BootstrapServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistry;
 import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
 import org.hibernate.cfg.Configuration;
-import org.hibernate.service.ServiceRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.persist.PersistService;
 
+import me.jasoncampos.inject.persist.hibernate.HibernateStartupListener.Phase;
+
 /**
- * Hibernate {@link PersistService} implementation which manages a singleton {@code SessionFactory}.
+ * Hibernate {@link PersistService} implementation which manages a singleton {@code SessionFactory}. If any
+ * {@link Replica} configurations are supplied, one additional {@code SessionFactory} is managed per replica. <br />
+ * <br />
+ *
+ * {@link #start()} builds every {@code SessionFactory} on the calling thread. {@link #startAsync()} instead reads the
+ * configurations and builds the factories in parallel on background threads and returns immediately, letting the rest of the application initialize in the
+ * meantime. Until the returned future completes, {@link #get()} blocks for at most the number of seconds given by the
+ * {@value #START_TIMEOUT_PROPERTY} property (default {@value #DEFAULT_START_TIMEOUT_SECONDS}). Phase timings are logged
+ * and reported to any bound {@link HibernateStartupListener HibernateStartupListeners}. <br />
+ * <br />
+ *
+ * {@link #reload()} builds new {@code SessionFactory SessionFactories} from the current configuration in the
+ * background and swaps them in atomically; it is invoked automatically when a {@link HibernatePropertyProvider} reports
+ * a change. Units of work begun after the swap use the new factories, while those in flight keep their session on the
+ * old ones, which are closed once their last unit of work ends. Sessions opened outside of a unit of work are not
+ * tracked and must not outlive the factory they were opened on.
  *
  * @author Jason Campos <jcampos8782@gmail.com>
  */
@@ -23,41 +59,417 @@ import com.google.inject.persist.PersistService;
 public class HibernatePersistService implements Provider<SessionFactory>, PersistService {
 	private static final Logger logger = LoggerFactory.getLogger(HibernatePersistService.class);
 
-	private volatile SessionFactory sessionFactory;
+	/**
+	 * Configuration property holding the number of seconds {@link #get()} waits for an asynchronous start to complete.
+	 */
+	public static final String START_TIMEOUT_PROPERTY = "guice.persist.start_timeout";
+	public static final long DEFAULT_START_TIMEOUT_SECONDS = 60;
+
+	private static final String PRIMARY = "primary";
+
+	private final String name;
+	private volatile SessionFactoryGeneration primary;
+	private volatile List<HibernateReplica> replicas = Collections.emptyList();
 	private volatile boolean started;
-	private final Configuration configuration;
+	private volatile CompletableFuture<HibernatePersistService> startup;
+	// The configuration of the factories currently in use
+	private volatile Configuration configuration;
+	private final Provider<Configuration> configurations;
+	private final Provider<ImmutableList<Configuration>> replicaConfigurations;
 	private final BootstrapServiceRegistry bootstrapServiceRegistry;
+	private final Set<HibernateStartupListener> listeners;
+
+	// Factories replaced by a reload which may still be draining
+	private final Set<SessionFactoryGeneration> retired = ConcurrentHashMap.newKeySet();
+	private ExecutorService reloadExecutor;
+	private CompletableFuture<HibernatePersistService> queuedReload;
 
-	@Inject
 	public HibernatePersistService(final BootstrapServiceRegistry bootstrapServiceRegistry, final Configuration configuration) {
-		this.configuration = configuration;
+		this(bootstrapServiceRegistry, configuration, ImmutableList.of(), ImmutableSet.of());
+	}
+
+	public HibernatePersistService(
+			final BootstrapServiceRegistry bootstrapServiceRegistry,
+			final Configuration configuration,
+			final ImmutableList<Configuration> replicaConfigurations,
+			final Set<HibernateStartupListener> listeners) {
+		this(bootstrapServiceRegistry, () -> configuration, () -> replicaConfigurations, listeners);
+	}
+
+	/**
+	 * @param configurations
+	 *            Supplies the configuration of the primary {@code SessionFactory} each time the service starts or
+	 *            reloads
+	 * @param replicaConfigurations
+	 *            Supplies the configurations of the replicas each time the service starts or reloads
+	 */
+	@Inject
+	public HibernatePersistService(
+			final BootstrapServiceRegistry bootstrapServiceRegistry,
+			final Provider<Configuration> configurations,
+			@Replica final Provider<ImmutableList<Configuration>> replicaConfigurations,
+			final Set<HibernateStartupListener> listeners) {
+		this(PRIMARY, bootstrapServiceRegistry, configurations, replicaConfigurations, listeners);
+	}
+
+	/**
+	 * @param name
+	 *            Name of the service in logs and {@link HibernateStartupListener} notifications, e.g. the name of a
+	 *            {@link PersistenceUnit}
+	 */
+	public HibernatePersistService(
+			final String name,
+			final BootstrapServiceRegistry bootstrapServiceRegistry,
+			final Provider<Configuration> configurations,
+			final Provider<ImmutableList<Configuration>> replicaConfigurations,
+			final Set<HibernateStartupListener> listeners) {
+		this.name = name;
+		this.configurations = configurations;
+		this.replicaConfigurations = replicaConfigurations;
 		this.bootstrapServiceRegistry = bootstrapServiceRegistry;
+		this.listeners = listeners;
 	}
 
 	@Override
 	public SessionFactory get() {
+		awaitStartup();
 		if (!started) {
 			throw new IllegalStateException("HibernatePersistService has not been started or has been stopped.");
 		}
-		return sessionFactory;
+		return primary.getSessionFactory();
+	}
+
+	/**
+	 * Like {@link #get()}, but keeps the returned generation's {@code SessionFactory} open until
+	 * {@link SessionFactoryGeneration#release()} is invoked, even if a reload replaces it in the meantime.
+	 */
+	SessionFactoryGeneration acquire() {
+		get();
+		while (true) {
+			final SessionFactoryGeneration current = primary;
+			// Fails only if a reload retired the generation since it was read
+			if (current.acquire()) {
+				return current;
+			}
+		}
+	}
+
+	/**
+	 * @return The replicas available for read-only units of work. Empty if no replicas are configured.
+	 */
+	public List<HibernateReplica> getReplicas() {
+		awaitStartup();
+		if (!started) {
+			throw new IllegalStateException("HibernatePersistService has not been started or has been stopped.");
+		}
+		return replicas;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return True once every {@code SessionFactory} has been built.
+	 */
+	public boolean isStarted() {
+		return started;
 	}
 
 	@Override
 	public void start() {
-		logger.info("Starting HibernatePersistService");
-		final ServiceRegistry registry = new StandardServiceRegistryBuilder(bootstrapServiceRegistry)
-				.applySettings(configuration.getProperties())
-				.build();
+		logger.info("Starting HibernatePersistService {}", name);
+		// Run every build on this thread and surface failures as they would have been thrown by the build itself
+		try {
+			startup = bootstrap(Runnable::run);
+			startup.join();
+		} catch (final CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Starts the service without blocking. The configurations are read (which scans for entity classes and fetches the
+	 * properties) and the primary and replica {@code SessionFactory SessionFactories} are built in parallel on daemon
+	 * threads owned by this service.
+	 *
+	 * @return A future which completes with this service once it is ready, or exceptionally if any
+	 *         {@code SessionFactory} fails to build
+	 */
+	public CompletableFuture<HibernatePersistService> startAsync() {
+		logger.info("Starting HibernatePersistService {} asynchronously", name);
+		// The number of replicas is only known once their configurations have been read
+		final ExecutorService executor = Executors.newCachedThreadPool(
+				new ThreadFactoryBuilder().setDaemon(true).setNameFormat("hibernate-bootstrap-%d").build());
+		final CompletableFuture<HibernatePersistService> future = bootstrap(executor);
+		future.whenComplete((service, failure) -> executor.shutdown());
+		startup = future;
+		return future;
+	}
 
-		this.sessionFactory = configuration.buildSessionFactory(registry);
-		logger.info("HibernatePersistServiceStarted");
-		started = true;
+	/**
+	 * Builds new {@code SessionFactory SessionFactories} from the current configuration on a background thread and,
+	 * once they are all built, swaps them in for new units of work. The factories they replace are closed once the units
+	 * of work using them end. If a reload is requested while another one is waiting to begin, both are served by the one
+	 * waiting, which reads the configuration as it begins.
+	 *
+	 * @return A future which completes once the new factories are in use, or exceptionally if any of them fails to
+	 *         build, in which case the current factories remain in use
+	 */
+	public synchronized CompletableFuture<HibernatePersistService> reload() {
+		if (!started) {
+			throw new IllegalStateException("HibernatePersistService has not been started or has been stopped.");
+		}
+		if (queuedReload != null) {
+			return queuedReload;
+		}
+
+		if (reloadExecutor == null) {
+			reloadExecutor = Executors.newSingleThreadExecutor(
+					new ThreadFactoryBuilder().setDaemon(true).setNameFormat("hibernate-reload").build());
+		}
+		final CompletableFuture<HibernatePersistService> reload = new CompletableFuture<>();
+		queuedReload = reload;
+		reloadExecutor.execute(() -> {
+			synchronized (this) {
+				queuedReload = null;
+			}
+			try {
+				reload.complete(swap());
+			} catch (final Throwable t) {
+				final Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+				logger.error("HibernatePersistService failed to reload. The current SessionFactories remain in use.", cause);
+				reload.completeExceptionally(cause);
+			}
+		});
+		return reload;
 	}
 
 	@Override
 	public void stop() {
-		logger.info("Stopping HibernatePersistService");
-		sessionFactory.close();
-		logger.info("HibernatePersistService stopped");
+		logger.info("Stopping HibernatePersistService {}", name);
+		final CompletableFuture<HibernatePersistService> pending = startup;
+		if (pending != null && !pending.isDone()) {
+			// Let an asynchronous start finish so that its SessionFactories are not leaked
+			try {
+				pending.join();
+			} catch (final CompletionException e) {
+				// Already reported; nothing was left open
+			}
+		}
+
+		if (started) {
+			notifyListeners(listener -> listener.stopping(this));
+		}
+		final ExecutorService reloads;
+		synchronized (this) {
+			started = false;
+			startup = null;
+			reloads = reloadExecutor;
+			reloadExecutor = null;
+		}
+		if (reloads != null) {
+			// A reload in progress closes what it built once it sees the service has stopped
+			reloads.shutdown();
+		}
+
+		if (primary != null) {
+			primary.close();
+		}
+		for (final HibernateReplica replica : replicas) {
+			replica.getGeneration().close();
+		}
+		retired.forEach(SessionFactoryGeneration::close);
+		retired.clear();
+		logger.info("HibernatePersistService {} stopped", name);
+	}
+
+	private CompletableFuture<HibernatePersistService> bootstrap(final Executor executor) {
+		final long begin = System.nanoTime();
+		final CompletableFuture<Configuration> primaryConfiguration = CompletableFuture.supplyAsync(configurations::get, executor);
+		final CompletableFuture<ImmutableList<Configuration>> replicaConfiguration = CompletableFuture.supplyAsync(
+				replicaConfigurations::get,
+				executor);
+		return primaryConfiguration.thenCombine(replicaConfiguration, (primary, replicas) -> {
+			configuration = primary;
+			return build(executor, primary, replicas);
+		}).thenCompose(Function.identity()).handle((built, failure) -> {
+			if (failure != null) {
+				final Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+						? failure.getCause()
+						: failure;
+				logger.error("HibernatePersistService {} failed to start", name, cause);
+				notifyListeners(listener -> listener.failed(cause));
+				throw new CompletionException(cause);
+			}
+
+			this.primary = built.primary;
+			this.replicas = built.replicas;
+			started = true;
+			logger.info("HibernatePersistService {} started in {}ms", name, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin));
+			notifyListeners(listener -> listener.started(this));
+			return this;
+		});
+	}
+
+	// Runs on the reload thread
+	private HibernatePersistService swap() {
+		final long begin = System.nanoTime();
+		logger.info("Reloading HibernatePersistService {}", name);
+		final Configuration primaryConfiguration = configurations.get();
+		final Factories built = build(Runnable::run, primaryConfiguration, replicaConfigurations.get()).join();
+
+		final SessionFactoryGeneration previous;
+		final List<HibernateReplica> previousReplicas;
+		synchronized (this) {
+			if (!started) {
+				built.close();
+				throw new IllegalStateException("HibernatePersistService was stopped during a reload.");
+			}
+			previous = primary;
+			previousReplicas = replicas;
+			configuration = primaryConfiguration;
+			primary = built.primary;
+			replicas = built.replicas;
+		}
+
+		retired.removeIf(SessionFactoryGeneration::isClosed);
+		retire(previous);
+		previousReplicas.forEach(replica -> retire(replica.getGeneration()));
+		logger.info("HibernatePersistService {} reloaded in {}ms", name, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin));
+		notifyListeners(listener -> listener.reloaded(this));
+		return this;
+	}
+
+	private void retire(final SessionFactoryGeneration generation) {
+		retired.add(generation);
+		generation.retire();
+	}
+
+	private CompletableFuture<Factories> build(
+			final Executor executor,
+			final Configuration primaryConfiguration,
+			final List<Configuration> replicaConfigurations) {
+		final CompletableFuture<SessionFactory> primary = CompletableFuture.supplyAsync(
+				() -> buildSessionFactory(name, primaryConfiguration),
+				executor);
+
+		final List<CompletableFuture<HibernateReplica>> pendingReplicas = new ArrayList<>(replicaConfigurations.size());
+		for (int i = 0; i < replicaConfigurations.size(); i++) {
+			final String replicaName = PRIMARY.equals(name) ? "replica-" + i : name + "-replica-" + i;
+			final Configuration replicaConfiguration = replicaConfigurations.get(i);
+			pendingReplicas.add(CompletableFuture.supplyAsync(
+					() -> new HibernateReplica(replicaName, buildSessionFactory(replicaName, replicaConfiguration)),
+					executor));
+		}
+
+		final List<CompletableFuture<?>> all = new ArrayList<>(pendingReplicas);
+		all.add(primary);
+		return CompletableFuture.allOf(all.toArray(new CompletableFuture<?>[all.size()])).handle((ignored, failure) -> {
+			if (failure != null) {
+				final Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+						? failure.getCause()
+						: failure;
+				// Close whatever did get built
+				if (!primary.isCompletedExceptionally()) {
+					primary.join().close();
+				}
+				pendingReplicas.stream()
+					.filter(replica -> !replica.isCompletedExceptionally())
+					.forEach(replica -> replica.join().getSessionFactory().close());
+				throw new CompletionException(cause);
+			}
+
+			final List<HibernateReplica> replicas = new ArrayList<>(pendingReplicas.size());
+			pendingReplicas.forEach(replica -> replicas.add(replica.join()));
+			return new Factories(new SessionFactoryGeneration(name, primary.join()), Collections.unmodifiableList(replicas));
+		});
+	}
+
+	private SessionFactory buildSessionFactory(final String name, final Configuration configuration) {
+		final long registryStarted = System.nanoTime();
+		final StandardServiceRegistry registry = new StandardServiceRegistryBuilder(bootstrapServiceRegistry)
+				.applySettings(configuration.getProperties())
+				.build();
+		final long metadataStarted = System.nanoTime();
+		phaseCompleted(name, Phase.SERVICE_REGISTRY, metadataStarted - registryStarted);
+
+		final SessionFactory sessionFactory;
+		final Long metadataBuilt;
+		StartupPhaseIntegrator.begin();
+		try {
+			sessionFactory = configuration.buildSessionFactory(registry);
+		} catch (final RuntimeException e) {
+			StandardServiceRegistryBuilder.destroy(registry);
+			throw e;
+		} finally {
+			metadataBuilt = StartupPhaseIntegrator.end();
+		}
+
+		final long built = System.nanoTime();
+		if (metadataBuilt != null) {
+			phaseCompleted(name, Phase.METADATA, metadataBuilt - metadataStarted);
+			phaseCompleted(name, Phase.SESSION_FACTORY, built - metadataBuilt);
+		} else {
+			phaseCompleted(name, Phase.SESSION_FACTORY, built - metadataStarted);
+		}
+		return sessionFactory;
+	}
+
+	private void phaseCompleted(final String name, final Phase phase, final long elapsedNanos) {
+		final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+		logger.info("{} {} built in {}ms", name, phase, elapsedMillis);
+		notifyListeners(listener -> listener.phaseCompleted(name, phase, elapsedMillis));
+	}
+
+	// A misbehaving listener must not break startup
+	private void notifyListeners(final Consumer<HibernateStartupListener> notification) {
+		for (final HibernateStartupListener listener : listeners) {
+			try {
+				notification.accept(listener);
+			} catch (final RuntimeException e) {
+				logger.warn("HibernateStartupListener {} failed", listener, e);
+			}
+		}
+	}
+
+	private void awaitStartup() {
+		final CompletableFuture<HibernatePersistService> pending = startup;
+		if (pending == null || pending.isDone()) {
+			return;
+		}
+
+		// Null until an asynchronous start has read the configuration
+		final Configuration current = configuration;
+		final String timeoutProperty = current != null ? current.getProperty(START_TIMEOUT_PROPERTY) : null;
+		final long timeout = timeoutProperty != null ? Long.parseLong(timeoutProperty) : DEFAULT_START_TIMEOUT_SECONDS;
+		try {
+			pending.get(timeout, TimeUnit.SECONDS);
+		} catch (final TimeoutException e) {
+			throw new IllegalStateException("HibernatePersistService did not start within " + timeout + " seconds.", e);
+		} catch (final ExecutionException e) {
+			throw new IllegalStateException("HibernatePersistService failed to start.", e.getCause());
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for HibernatePersistService to start.", e);
+		}
+	}
+
+	private static class Factories {
+		private final SessionFactoryGeneration primary;
+		private final List<HibernateReplica> replicas;
+
+		private Factories(final SessionFactoryGeneration primary, final List<HibernateReplica> replicas) {
+			this.primary = primary;
+			this.replicas = replicas;
+		}
+
+		private void close() {
+			primary.close();
+			replicas.forEach(replica -> replica.getGeneration().close());
+		}
 	}
 }
@@ -5,9 +5,26 @@ import java.util.Map;
 import javax.inject.Provider;
 
 /**
- * Provides a {@code Map} of properties used to initialize Hibernate.
+ * Provides a {@code Map} of properties used to initialize Hibernate. Providers whose properties may change at runtime
+ * should implement {@link #addChangeListener(Runnable)} so that the {@link HibernatePersistService} is reloaded with
+ * the new properties, and {@link #stop()} to release whatever watches them.
  *
  * @author Jason Campos <jcampos8782@gmail.com>
  */
 public interface HibernatePropertyProvider extends Provider<Map<String, String>> {
+
+	/**
+	 * Registers a callback to invoke, on any thread, whenever the provided properties change. The default
+	 * implementation never invokes it.
+	 */
+	default void addChangeListener(final Runnable listener) {
+	}
+
+	/**
+	 * Invoked as the {@link HibernatePersistService} using the properties stops. Providers which watch their source
+	 * for changes should stop watching until their properties are next requested. The default implementation does
+	 * nothing.
+	 */
+	default void stop() {
+	}
 }
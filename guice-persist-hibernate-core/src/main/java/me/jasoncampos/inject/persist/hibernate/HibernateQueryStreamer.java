@@ -0,0 +1,125 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.engine.spi.PersistenceContext;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.query.Query;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Streams query results through a forward-only JDBC cursor so that result sets larger than the heap can be processed
+ * with flat memory. Each entity in a row is evicted from the session once the row has been handed to the stream's
+ * consumer, so the persistence context never holds more than one row. <br />
+ * <br />
+ *
+ * Streams may only be opened inside a unit of work (typically a {@code @Transactional} method) and should be closed
+ * (preferably with try-with-resources) when no longer needed. Any stream still open when the
+ * {@link HibernateUnitOfWork} ends is closed with it. Rows with a single column are streamed as that column's value;
+ * rows with several columns are streamed as {@code Object[]}. <br />
+ * <br />
+ *
+ * Note that some drivers only stream when the fetch size is set to a driver specific value (for example,
+ * {@code Integer.MIN_VALUE} for MySQL Connector/J); other drivers buffer the whole result set regardless of fetch size
+ * unless the connection is not in auto-commit mode.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+@Singleton
+public class HibernateQueryStreamer {
+
+	public static final int DEFAULT_FETCH_SIZE = 500;
+
+	private final HibernateUnitOfWork unitOfWork;
+
+	@Inject
+	public HibernateQueryStreamer(final HibernateUnitOfWork unitOfWork) {
+		this.unitOfWork = unitOfWork;
+	}
+
+	/**
+	 * Streams the query results using a fetch size of {@link #DEFAULT_FETCH_SIZE}.
+	 *
+	 * @param query
+	 *            A query created from the current unit of work's session
+	 */
+	public <T> Stream<T> stream(final Query<T> query) {
+		return stream(query, DEFAULT_FETCH_SIZE);
+	}
+
+	/**
+	 * @param query
+	 *            A query created from the current unit of work's session
+	 * @param fetchSize
+	 *            The JDBC fetch size, i.e. the number of rows fetched per database round trip
+	 */
+	public <T> Stream<T> stream(final Query<T> query, final int fetchSize) {
+		Preconditions.checkState(unitOfWork.isWorking(), "Streaming queries require an active UnitOfWork");
+		final Session session = unitOfWork.get();
+		final ScrollableResults results = query.setFetchSize(fetchSize).scroll(ScrollMode.FORWARD_ONLY);
+		final EvictingSpliterator<T> spliterator = new EvictingSpliterator<>(session, results);
+		unitOfWork.closeOnEnd(spliterator::close);
+		return StreamSupport.stream(spliterator, false).onClose(spliterator::close);
+	}
+
+	private static class EvictingSpliterator<T> extends Spliterators.AbstractSpliterator<T> {
+		private final Session session;
+		private final PersistenceContext persistenceContext;
+		private final ScrollableResults results;
+		private boolean closed;
+
+		EvictingSpliterator(final Session session, final ScrollableResults results) {
+			super(Long.MAX_VALUE, Spliterator.ORDERED);
+			this.session = session;
+			this.persistenceContext = session.unwrap(SessionImplementor.class).getPersistenceContext();
+			this.results = results;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public boolean tryAdvance(final Consumer<? super T> action) {
+			if (closed) {
+				return false;
+			}
+			if (!results.next()) {
+				close();
+				return false;
+			}
+
+			final Object[] row = results.get();
+			try {
+				action.accept((T) (row.length == 1 ? row[0] : row));
+			} finally {
+				evict(row);
+			}
+			return true;
+		}
+
+		private void evict(final Object[] row) {
+			for (final Object value : row) {
+				// Scalars and already detached values have no persistence context entry
+				if (value != null && persistenceContext.isEntryFor(value)) {
+					session.evict(value);
+				}
+			}
+		}
+
+		void close() {
+			if (!closed) {
+				closed = true;
+				results.close();
+			}
+		}
+	}
+}
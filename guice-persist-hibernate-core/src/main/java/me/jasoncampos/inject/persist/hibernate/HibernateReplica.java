@@ -0,0 +1,57 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import org.hibernate.SessionFactory;
+
+/**
+ * A read replica {@code SessionFactory} managed by {@link HibernatePersistService}. Tracks the number of units of
+ * work currently holding a session from this replica so that {@link ReplicaLoadBalancer} implementations may take the
+ * load of each replica into account. Replicas replaced by a {@link HibernatePersistService#reload()} are closed once
+ * their last unit of work ends.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+public class HibernateReplica {
+
+	private final String name;
+	private final SessionFactoryGeneration generation;
+
+	public HibernateReplica(final String name, final SessionFactory sessionFactory) {
+		this.name = name;
+		this.generation = new SessionFactoryGeneration(name, sessionFactory);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public SessionFactory getSessionFactory() {
+		return generation.getSessionFactory();
+	}
+
+	/**
+	 * @return The number of units of work currently holding a session from this replica.
+	 */
+	public int getInFlight() {
+		return generation.getInFlight();
+	}
+
+	/**
+	 * @return False if the replica has been replaced by a reload and must not be used
+	 */
+	boolean acquire() {
+		return generation.acquire();
+	}
+
+	void release() {
+		generation.release();
+	}
+
+	SessionFactoryGeneration getGeneration() {
+		return generation;
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
@@ -0,0 +1,147 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.inject.persist.Transactional;
+
+/**
+ * The named persistence units registered with {@link HibernatePersistModule#addPersistenceUnit(String, Class, Class)}
+ * and the routing of shard keys to them. Each unit is a {@link HibernatePersistService} of its own, with its own
+ * {@code SessionFactory} and connection pool, which starts and stops along with the default
+ * {@code HibernatePersistService}. <br />
+ * <br />
+ *
+ * A shard key may be passed to a {@link Transactional} method through a {@link ShardKey} parameter, or set for the
+ * current thread with {@link #run(Object, Runnable)} or {@link #call(Object, Callable)} (e.g. by a request filter which
+ * knows the tenant). Either way the {@link ShardRouter} maps it to a unit and the {@link HibernateUnitOfWork} opens its
+ * session there.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+@Singleton
+public class HibernateShards implements HibernateStartupListener {
+	static final HibernateShards NONE = new HibernateShards(ImmutableMap.of(), new HashShardRouter());
+
+	private final ImmutableMap<String, HibernatePersistService> persistenceUnits;
+	private final ImmutableList<String> names;
+	private final ShardRouter router;
+	private final ThreadLocal<Object> shardKeys = new ThreadLocal<>();
+
+	@Inject
+	public HibernateShards(final Map<String, HibernatePersistService> persistenceUnits, final ShardRouter router) {
+		this.persistenceUnits = ImmutableMap.copyOf(persistenceUnits);
+		this.names = this.persistenceUnits.keySet().asList();
+		this.router = router;
+	}
+
+	/**
+	 * @return The names of the persistence units, in the order they were added to the module
+	 */
+	public List<String> getPersistenceUnits() {
+		return names;
+	}
+
+	/**
+	 * @return The named persistence unit
+	 * @throws IllegalArgumentException
+	 *             If there is no such unit
+	 */
+	public HibernatePersistService getPersistenceUnit(final String name) {
+		final HibernatePersistService persistenceUnit = persistenceUnits.get(name);
+		Preconditions.checkArgument(persistenceUnit != null, "No persistence unit named %s", name);
+		return persistenceUnit;
+	}
+
+	/**
+	 * @return The persistence unit holding the data of the argument shard key
+	 */
+	public HibernatePersistService route(final Object shardKey) {
+		Preconditions.checkNotNull(shardKey, "Shard key must not be null");
+		Preconditions.checkState(!names.isEmpty(), "No persistence units are configured");
+		final String name = router.route(shardKey, names);
+		final HibernatePersistService persistenceUnit = persistenceUnits.get(name);
+		Preconditions.checkState(persistenceUnit != null, "%s routed %s to unknown persistence unit %s", router, shardKey, name);
+		return persistenceUnit;
+	}
+
+	/**
+	 * @return The shard key set for the current thread, or null if there is none
+	 */
+	public Object getShardKey() {
+		return shardKeys.get();
+	}
+
+	/**
+	 * Runs the argument task with the argument shard key set for the current thread. {@code Transactional} methods
+	 * which begin a unit of work within the task run on the persistence unit of the key.
+	 */
+	public void run(final Object shardKey, final Runnable task) {
+		final Object previous = setShardKey(shardKey);
+		try {
+			task.run();
+		} finally {
+			setShardKey(previous);
+		}
+	}
+
+	/**
+	 * Calls the argument task with the argument shard key set for the current thread.
+	 *
+	 * @see #run(Object, Runnable)
+	 */
+	public <V> V call(final Object shardKey, final Callable<V> task) throws Exception {
+		final Object previous = setShardKey(shardKey);
+		try {
+			return task.call();
+		} finally {
+			setShardKey(previous);
+		}
+	}
+
+	// Builds the persistence units in parallel, so that startup takes as long as the slowest unit
+	@Override
+	public void started(final HibernatePersistService persistService) {
+		if (persistenceUnits.isEmpty()) {
+			return;
+		}
+
+		final ImmutableMap.Builder<String, CompletableFuture<HibernatePersistService>> startups = ImmutableMap.builder();
+		persistenceUnits.forEach((name, persistenceUnit) -> {
+			if (!persistenceUnit.isStarted()) {
+				startups.put(name, persistenceUnit.startAsync());
+			}
+		});
+		startups.build().values().forEach(startup -> {
+			try {
+				startup.join();
+			} catch (final CompletionException e) {
+				// Already reported by the unit. Units of work routed to it fail until it is started again.
+			}
+		});
+	}
+
+	@Override
+	public void stopping(final HibernatePersistService persistService) {
+		persistenceUnits.values().forEach(HibernatePersistService::stop);
+	}
+
+	private Object setShardKey(final Object shardKey) {
+		final Object previous = shardKeys.get();
+		if (shardKey != null) {
+			shardKeys.set(shardKey);
+		} else {
+			shardKeys.remove();
+		}
+		return previous;
+	}
+}
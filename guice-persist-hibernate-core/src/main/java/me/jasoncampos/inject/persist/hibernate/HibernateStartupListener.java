@@ -0,0 +1,67 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+/**
+ * Receives progress notifications from {@link HibernatePersistService} as its {@code SessionFactory SessionFactories}
+ * are built. Listeners are registered with {@link HibernatePersistModule#addStartupListener(Class)} (or by adding
+ * bindings to a {@code Multibinder}). <br />
+ * <br />
+ *
+ * Notifications may arrive on bootstrap threads and, when replicas are configured, from several threads at once.
+ * Implementations must be thread safe and should return quickly.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+public interface HibernateStartupListener {
+
+	/**
+	 * The timed phases of building a single {@code SessionFactory}.
+	 */
+	enum Phase {
+		/** Building the {@code StandardServiceRegistry} from the configuration properties */
+		SERVICE_REGISTRY,
+		/** Binding the annotated entity classes into Hibernate's mapping metadata */
+		METADATA,
+		/** Building the {@code SessionFactory} (persisters, named queries, etc.) from the metadata */
+		SESSION_FACTORY
+	}
+
+	/**
+	 * Invoked each time a phase of building a {@code SessionFactory} completes. If the metadata phase cannot be told
+	 * apart from the session factory phase, no {@link Phase#METADATA} notification is sent and the
+	 * {@link Phase#SESSION_FACTORY} notification covers both.
+	 *
+	 * @param factoryName
+	 *            "primary" or the name of a {@link HibernateReplica}
+	 * @param phase
+	 *            The completed phase
+	 * @param elapsedMillis
+	 *            Time spent in the phase
+	 */
+	default void phaseCompleted(final String factoryName, final Phase phase, final long elapsedMillis) {
+	}
+
+	/**
+	 * Invoked once every {@code SessionFactory} has been built and the service is ready for use.
+	 */
+	default void started(final HibernatePersistService persistService) {
+	}
+
+	/**
+	 * Invoked once {@link HibernatePersistService#reload()} has swapped in new {@code SessionFactory SessionFactories}.
+	 * The replaced factories close once the units of work still using them end.
+	 */
+	default void reloaded(final HibernatePersistService persistService) {
+	}
+
+	/**
+	 * Invoked if the service fails to start. Any {@code SessionFactory} which was built has already been closed.
+	 */
+	default void failed(final Throwable cause) {
+	}
+
+	/**
+	 * Invoked as the service begins to stop, while every {@code SessionFactory} is still open.
+	 */
+	default void stopping(final HibernatePersistService persistService) {
+	}
+}
@@ -0,0 +1,107 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.hibernate.StatelessSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.inject.persist.UnitOfWork;
+
+/**
+ * {@code UnitOfWork} implementation which manages a ThreadLocal {@code StatelessSession} instance, running in parallel
+ * to (and independently of) the {@link HibernateUnitOfWork}. Invoking {@link #begin()} will open a new
+ * {@code StatelessSession} if one is not already open. Subsequent invocations of {@link #get()} will return the same
+ * instance until {@link #end()} is invoked. <br />
+ * <br />
+ *
+ * {@link #begin(HibernatePersistService)} opens the session on the argument persistence unit rather than the default
+ * one. As with {@link HibernateUnitOfWork}, any stateless session obtained from {@link #get()} without a current unit of work
+ * *must* be manually closed.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ * @see Bulk
+ */
+@Singleton
+public class HibernateStatelessUnitOfWork implements Provider<StatelessSession>, UnitOfWork {
+	private static final Logger logger = LoggerFactory.getLogger(HibernateStatelessUnitOfWork.class);
+
+	private final ThreadLocal<StatelessSession> sessions = new ThreadLocal<>();
+	// Keeps the SessionFactory of each session open until its unit of work ends, even if a reload replaces it
+	private final ThreadLocal<SessionFactoryGeneration> generations = new ThreadLocal<>();
+	private final ThreadLocal<HibernatePersistService> persistenceUnits = new ThreadLocal<>();
+	private final HibernatePersistService sessionFactory;
+
+	@Inject
+	public HibernateStatelessUnitOfWork(final HibernatePersistService sessionFactory) {
+		this.sessionFactory = sessionFactory;
+	}
+
+	@Override
+	public StatelessSession get() {
+		if (isWorking()) {
+			return sessions.get();
+		} else {
+			logger.warn("Opening hibernate StatelessSession with no current UnitOfWork. This session must be manually closed.");
+			return sessionFactory.get().openStatelessSession();
+		}
+	}
+
+	public boolean isWorking() {
+		return sessions.get() != null;
+	}
+
+	@Override
+	public void begin() {
+		begin(sessionFactory);
+	}
+
+	/**
+	 * Begins a unit of work whose session will be opened on the argument persistence unit.
+	 *
+	 * @throws IllegalStateException
+	 *             If a unit of work is already in progress on another persistence unit
+	 */
+	public void begin(final HibernatePersistService persistenceUnit) {
+		if (isWorking()) {
+			Preconditions.checkState(
+					persistenceUnits.get() == persistenceUnit,
+					"Stateless UnitOfWork in progress on persistence unit %s cannot switch to %s",
+					persistenceUnits.get().getName(),
+					persistenceUnit.getName());
+		} else {
+			final SessionFactoryGeneration generation = persistenceUnit.acquire();
+			final StatelessSession session;
+			try {
+				session = generation.getSessionFactory().openStatelessSession();
+			} catch (final RuntimeException e) {
+				generation.release();
+				throw e;
+			}
+			sessions.set(session);
+			generations.set(generation);
+			persistenceUnits.set(persistenceUnit);
+			logger.debug("Stateless UnitOfWork started. session={}", session);
+		}
+	}
+
+	@Override
+	public void end() {
+		Preconditions.checkState(isWorking(), "UnitOfWork.end() invoked with no corresponding UnitOfWork.begin()");
+		final StatelessSession session = sessions.get();
+		try {
+			if (session.isOpen()) {
+				session.close();
+			}
+		} finally {
+			sessions.remove();
+			generations.get().release();
+			generations.remove();
+			persistenceUnits.remove();
+			logger.debug("Stateless UnitOfWork complete. session={}", session);
+		}
+	}
+}
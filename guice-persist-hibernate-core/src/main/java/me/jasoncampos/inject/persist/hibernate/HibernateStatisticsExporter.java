@@ -0,0 +1,101 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.inject.Singleton;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link HibernateStartupListener} which turns on Hibernate {@link Statistics} for the primary and every replica
+ * {@code SessionFactory} once the {@link HibernatePersistService} has started, and exposes them with JMX as
+ * {@value JmxHibernateMetrics#DOMAIN}:type=Statistics,sessionFactory=&lt;name&gt;. The primary factory of a named
+ * persistence unit is exported under the name of the unit. The statistics are exported again for the new factories
+ * after each reload, and unregistered when the service stops, so that closed factories are not kept reachable.
+ * Statistics collection has a cost on every session, so it is opt-in:
+ *
+ * <pre>
+ * new HibernatePersistModule(...).addStartupListener(HibernateStatisticsExporter.class)
+ * </pre>
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+@Singleton
+public class HibernateStatisticsExporter implements HibernateStartupListener {
+	private static final Logger logger = LoggerFactory.getLogger(HibernateStatisticsExporter.class);
+
+	private final MBeanServer mBeanServer;
+	// The MBeans registered for each service, by service name
+	private final ConcurrentMap<String, List<ObjectName>> exported = new ConcurrentHashMap<>();
+
+	public HibernateStatisticsExporter() {
+		this(ManagementFactory.getPlatformMBeanServer());
+	}
+
+	public HibernateStatisticsExporter(final MBeanServer mBeanServer) {
+		this.mBeanServer = mBeanServer;
+	}
+
+	@Override
+	public void started(final HibernatePersistService persistService) {
+		export(persistService);
+	}
+
+	@Override
+	public void reloaded(final HibernatePersistService persistService) {
+		export(persistService);
+	}
+
+	@Override
+	public synchronized void stopping(final HibernatePersistService persistService) {
+		final List<ObjectName> names = exported.remove(persistService.getName());
+		if (names != null) {
+			names.forEach(this::unregister);
+		}
+	}
+
+	private synchronized void export(final HibernatePersistService persistService) {
+		stopping(persistService);
+		final List<ObjectName> names = new ArrayList<>();
+		export(persistService.getName(), persistService.get(), names);
+		for (final HibernateReplica replica : persistService.getReplicas()) {
+			export(replica.getName(), replica.getSessionFactory(), names);
+		}
+		exported.put(persistService.getName(), names);
+	}
+
+	private void export(final String name, final SessionFactory sessionFactory, final List<ObjectName> names) {
+		final Statistics statistics = sessionFactory.getStatistics();
+		statistics.setStatisticsEnabled(true);
+		try {
+			final ObjectName objectName = new ObjectName(JmxHibernateMetrics.DOMAIN + ":type=Statistics,sessionFactory=" + ObjectName.quote(name));
+			// Registered by another exporter, e.g. of a previous injector
+			unregister(objectName);
+			mBeanServer.registerMBean(new StandardMBean(statistics, Statistics.class), objectName);
+			names.add(objectName);
+		} catch (final JMException e) {
+			logger.warn("Failed to register statistics of {} with JMX", name, e);
+		}
+	}
+
+	private void unregister(final ObjectName objectName) {
+		try {
+			if (mBeanServer.isRegistered(objectName)) {
+				mBeanServer.unregisterMBean(objectName);
+			}
+		} catch (final JMException e) {
+			logger.warn("Failed to unregister {} from JMX", objectName, e);
+		}
+	}
+}
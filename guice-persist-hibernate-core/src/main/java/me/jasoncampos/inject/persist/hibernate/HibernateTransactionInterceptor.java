@@ -1,88 +1,209 @@
 package me.jasoncampos.inject.persist.hibernate;
 
 import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.inject.Inject;
-import javax.persistence.EntityManager;
-import javax.persistence.EntityTransaction;
 
 import org.aopalliance.intercept.MethodInterceptor;
 import org.aopalliance.intercept.MethodInvocation;
-
-import com.google.inject.persist.Transactional;
+import org.hibernate.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * THIS IS A COPY/PASTE ADAPTATION OF THE JPA TX INTERCEPTOR PACKAGED WITH GUICE-PERSIST.
  * Minor changes were made to use Hibernate's UnitOfWork implementation (literally a one line change).
  * Note: Would be nice to interface this to work with any UnitOfWork implementation or some adapter interface
- * which provides the isWorking() method.
+ * which provides the isWorking() method. <br />
+ * <br />
+ *
+ * Transactions are begun lazily: the transaction of a {@code @Transactional} method begins when the method first uses
+ * the unit of work's {@code Session}. A method which never touches the database therefore never opens a session,
+ * acquires a connection or issues BEGIN/COMMIT. <br />
+ * <br />
+ *
+ * A method with a {@link ShardKey} parameter, or invoked while {@link HibernateShards} holds a shard key for the
+ * thread, runs on the persistence unit the key is routed to. A {@link Retry} method which begins a unit of work and
+ * fails transiently is run again in a fresh one. A transaction with a {@link Timeout} is bounded by a deadline counted
+ * from the invocation of its method. The {@link Propagation} of a method decides whether it joins, nests within or
+ * suspends an enclosing transaction.
  *
  * @author Dhanji R. Prasanna (dhanji@gmail.com)
  * @author Jason Campos (jcampos8782@gmail.com)
  */
 public class HibernateTransactionInterceptor implements MethodInterceptor {
+	private static final Logger logger = LoggerFactory.getLogger(HibernateTransactionInterceptor.class);
 
 	@Inject
 	HibernateUnitOfWork unitOfWork = null;
 
-	@Transactional
-	private static class Internal {
-	}
+	@Inject
+	HibernateStatelessUnitOfWork statelessUnitOfWork = null;
+
+	@Inject
+	HibernateMetrics metrics = HibernateMetrics.NONE;
+
+	@Inject
+	HibernateShards shards = HibernateShards.NONE;
+
+	@Inject
+	RetryClassifier retryClassifier = new SqlStateRetryClassifier();
+
+	@Inject
+	TransactionTimeout defaultTimeout = TransactionTimeout.NONE;
 
-	// Tracks if the unit of work was begun implicitly by this transaction.
-	private final ThreadLocal<Boolean> didWeStartWork = new ThreadLocal<>();
+	// Resolved transaction policies keyed by target class and then by method.
+	private final ConcurrentMap<Class<?>, ConcurrentMap<Method, TransactionPolicy>> policies = new ConcurrentHashMap<>();
 
 	@Override
 	public Object invoke(final MethodInvocation methodInvocation) throws Throwable {
+		final TransactionPolicy policy = readTransactionMetadata(methodInvocation);
+		if (policy.getPropagation() == Propagation.Mode.REQUIRES_NEW && unitOfWork.isWorking()) {
+			// The method begins a unit of work of its own in place of the enclosing one, which resumes afterwards
+			final HibernateUnitOfWork.Context suspended = unitOfWork.attach(null);
+			try {
+				return invokeRetrying(methodInvocation, policy);
+			} finally {
+				unitOfWork.attach(suspended);
+			}
+		}
+		return invokeRetrying(methodInvocation, policy);
+	}
 
-		// Should we start a unit of work?
-		if (!unitOfWork.isWorking()) {
-			unitOfWork.begin();
-			didWeStartWork.set(true);
+	private Object invokeRetrying(final MethodInvocation methodInvocation, final TransactionPolicy policy) throws Throwable {
+		// Shared by every attempt, and ignored if the method joins an enclosing transaction
+		final long deadline = policy.deadline(System.nanoTime());
+
+		if (!policy.isRetried()) {
+			return invoke(methodInvocation, policy, deadline);
+		}
+
+		// Only the method which begins the transaction can roll it back and run again
+		final boolean working = policy.isBulk() ? statelessUnitOfWork.isWorking() : unitOfWork.isWorking();
+		final boolean joins = policy.isBulk()
+				? working && statelessUnitOfWork.get().getTransaction().isActive()
+				: working && unitOfWork.current().isTransactionActive();
+		if (joins) {
+			logger.debug("Not retrying {}, which joins an enclosing transaction", policy.getName());
+			return invoke(methodInvocation, policy, deadline);
+		}
+
+		for (int attempt = 1;; attempt++) {
+			try {
+				return invoke(methodInvocation, policy, deadline);
+			} catch (final Throwable t) {
+				if (!policy.retries(t, attempt, retryClassifier)) {
+					throw t;
+				}
+				final long backoff = policy.backoffMillis(attempt);
+				logger.debug("Retrying {} in {}ms after attempt {} failed", policy.getName(), backoff, attempt, t);
+				metrics.transactionRetried(policy.getName(), attempt, t);
+				if (working && !policy.isBulk()) {
+					// The enclosing unit of work keeps its session, which may hold state left behind by the failed attempt
+					unitOfWork.current().clearSession();
+				}
+				try {
+					Thread.sleep(backoff);
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw t;
+				}
+			}
+		}
+	}
+
+	private Object invoke(final MethodInvocation methodInvocation, final TransactionPolicy policy, final long deadline) throws Throwable {
+		final HibernatePersistService persistenceUnit = route(methodInvocation, policy);
+		if (policy.isBulk()) {
+			return invokeBulk(methodInvocation, policy, persistenceUnit, deadline);
+		}
+
+		if (persistenceUnit != null && unitOfWork.isWorking()) {
+			// Runs on the routed unit within the enclosing unit of work, which then carries on with its own unit
+			final HibernateUnitOfWork.Context enclosing = unitOfWork.enter(persistenceUnit);
+			try {
+				return invoke(methodInvocation, policy, null, deadline);
+			} finally {
+				unitOfWork.attach(enclosing);
+			}
 		}
+		return invoke(methodInvocation, policy, persistenceUnit, deadline);
+	}
 
-		final Transactional transactional = readTransactionMetadata(methodInvocation);
-		final EntityManager em = unitOfWork.get();
+	private Object invoke(
+			final MethodInvocation methodInvocation,
+			final TransactionPolicy policy,
+			final HibernatePersistService persistenceUnit,
+			final long deadline) throws Throwable {
+		// Should we start a unit of work? Read-only work may be routed to a replica.
+		// Tracked in a local rather than a ThreadLocal so that the state survives hand-offs between threads.
+		final boolean startedWork = !unitOfWork.isWorking();
+		if (persistenceUnit != null) {
+			unitOfWork.begin(persistenceUnit);
+		} else if (startedWork) {
+			if (policy.isReadOnly()) {
+				unitOfWork.beginReadOnly();
+			} else {
+				unitOfWork.begin();
+			}
+		}
+		final HibernateUnitOfWork.Context context = unitOfWork.current();
 
 		// Allow 'joining' of transactions if there is an enclosing
 		// @Transactional method.
-		if (em.getTransaction().isActive()) {
+		if (context.isTransactionActive()) {
+			if (policy.getPropagation() == Propagation.Mode.NESTED) {
+				return invokeNested(methodInvocation, policy, context);
+			}
 			return methodInvocation.proceed();
 		}
 
-		final EntityTransaction txn = em.getTransaction();
-		txn.begin();
+		// The transaction of an async method completes on the stage's thread, while the thread which owns the unit of work
+		// may go on to use, end or close the same session
+		if (policy.isAsync() && !startedWork) {
+			throw new IllegalStateException(policy.getName() + " returns a CompletionStage and so must begin its own unit of work, "
+					+ "or join a transaction in progress, rather than begin a transaction in a unit of work begun elsewhere");
+		}
+
+		final long started = System.nanoTime();
+		context.beginTransaction(policy, deadline);
+
+		if (policy.isAsync()) {
+			return invokeAsync(methodInvocation, policy, context, startedWork, started, deadline);
+		}
 
 		Object result;
 		try {
 			result = methodInvocation.proceed();
 
-		} catch (final Exception e) {
-			// commit transaction only if rollback didnt occur
-			if (rollbackIfNecessary(transactional, e, txn)) {
-				txn.commit();
+		} catch (final Throwable e) {
+			try {
+				// commit transaction only if rollback is not necessary
+				complete(context, policy, e, started, deadline);
+			} finally {
+				// Close the em if necessary
+				if (startedWork) {
+					unitOfWork.end();
+				}
 			}
 
 			// propagate whatever exception is thrown anyway
 			throw e;
-		} finally {
-			// Close the em if necessary (guarded so this code doesn't run
-			// unless catch fired).
-			if (null != didWeStartWork.get() && !txn.isActive()) {
-				didWeStartWork.remove();
-				unitOfWork.end();
-			}
 		}
 
 		// everything was normal so commit the txn (do not move into try block
 		// above as it
 		// interferes with the advised method's throwing semantics)
 		try {
-			txn.commit();
+			complete(context, policy, null, started, deadline);
 		} finally {
 			// close the em if necessary
-			if (null != didWeStartWork.get()) {
-				didWeStartWork.remove();
+			if (startedWork) {
 				unitOfWork.end();
 			}
 		}
@@ -91,67 +212,242 @@ public class HibernateTransactionInterceptor implements MethodInterceptor {
 		return result;
 	}
 
-	// TODO(dhanji): Cache this method's results.
-	private Transactional readTransactionMetadata(final MethodInvocation methodInvocation) {
-		Transactional transactional;
-		final Method method = methodInvocation.getMethod();
-		final Class<?> targetClass = methodInvocation.getThis().getClass();
+	/**
+	 * Handles methods returning a {@code CompletionStage}. The transaction is completed, and the unit of work ended if
+	 * this invocation started it, when the returned stage completes rather than when the method returns. A unit of work
+	 * started here is detached from the calling thread as soon as the method returns; work running on other threads
+	 * should obtain it through a {@link UnitOfWorkPropagatingExecutor}. An async method may not begin a transaction in a
+	 * unit of work which it did not start (e.g. one begun by a {@code PersistFilter}), since the thread which started
+	 * that unit of work would keep using its session while the transaction completes elsewhere. <br />
+	 * <br />
+	 *
+	 * The returned future completes once the transaction has been committed or rolled back. If the commit fails, it
+	 * completes exceptionally with the commit failure.
+	 */
+	private Object invokeAsync(
+			final MethodInvocation methodInvocation,
+			final TransactionPolicy policy,
+			final HibernateUnitOfWork.Context context,
+			final boolean startedWork,
+			final long started,
+			final long deadline) throws Throwable {
+		final CompletionStage<?> stage;
+		try {
+			stage = (CompletionStage<?>) methodInvocation.proceed();
+		} catch (final Throwable e) {
+			try {
+				complete(context, policy, e, started, deadline);
+			} finally {
+				if (startedWork) {
+					unitOfWork.end();
+				}
+			}
+			throw e;
+		}
 
-		transactional = method.getAnnotation(Transactional.class);
-		if (null == transactional) {
-			// If none on method, try the class.
-			transactional = targetClass.getAnnotation(Transactional.class);
+		if (stage == null) {
+			try {
+				complete(context, policy, null, started, deadline);
+			} finally {
+				if (startedWork) {
+					unitOfWork.end();
+				}
+			}
+			return null;
 		}
-		if (null == transactional) {
-			// If there is no transactional annotation present, use the default
-			transactional = Internal.class.getAnnotation(Transactional.class);
+
+		// From here on the unit of work belongs to the stage rather than to this thread
+		if (startedWork) {
+			unitOfWork.attach(null);
 		}
 
-		return transactional;
+		final CompletableFuture<Object> completion = new CompletableFuture<>();
+		stage.whenComplete((value, failure) -> {
+			try {
+				try {
+					final Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+							? failure.getCause()
+							: failure;
+					complete(context, policy, cause, started, deadline);
+				} finally {
+					if (startedWork) {
+						unitOfWork.end(context);
+					}
+				}
+			} catch (final Throwable t) {
+				completion.completeExceptionally(t);
+				return;
+			}
+
+			if (failure == null) {
+				completion.complete(value);
+			} else {
+				completion.completeExceptionally(failure);
+			}
+		});
+		return completion;
 	}
 
 	/**
-	 * Returns True if rollback DID NOT HAPPEN (i.e. if commit should continue).
-	 *
-	 * @param transactional
-	 *            The metadata annotaiton of the method
-	 * @param e
-	 *            The exception to test for rollback
-	 * @param txn
-	 *            A JPA Transaction to issue rollbacks on
+	 * Runs a {@link Propagation.Mode#NESTED} method behind a savepoint in the enclosing transaction. If the method fails
+	 * with an exception which calls for a rollback, only the changes made since the savepoint are rolled back before the
+	 * exception propagates.
 	 */
-	private boolean rollbackIfNecessary(final Transactional transactional, final Exception e,
-			final EntityTransaction txn) {
-		boolean commit = true;
-
-		// check rollback clauses
-		for (final Class<? extends Exception> rollBackOn : transactional.rollbackOn()) {
-
-			// if one matched, try to perform a rollback
-			if (rollBackOn.isInstance(e)) {
-				commit = false;
-
-				// check ignore clauses (supercedes rollback clause)
-				for (final Class<? extends Exception> exceptOn : transactional.ignore()) {
-					// An exception to the rollback clause was found, DON'T
-					// rollback
-					// (i.e. commit and throw anyway)
-					if (exceptOn.isInstance(e)) {
-						commit = true;
-						break;
-					}
-				}
+	private Object invokeNested(
+			final MethodInvocation methodInvocation,
+			final TransactionPolicy policy,
+			final HibernateUnitOfWork.Context context) throws Throwable {
+		final long started = System.nanoTime();
+		// Opens the session, which begins a deferred enclosing transaction, so that the savepoint can be set
+		final NestedTransaction nested = NestedTransaction.begin(unitOfWork.get(), context);
+
+		Object result;
+		try {
+			result = methodInvocation.proceed();
+		} catch (final Throwable e) {
+			try {
+				complete(nested, policy, e, started);
+			} catch (final RuntimeException completion) {
+				e.addSuppressed(completion);
+			}
+			throw e;
+		}
+
+		complete(nested, policy, null, started);
+		return result;
+	}
+
+	/**
+	 * Same semantics as {@link #invoke(MethodInvocation)}, but the transaction runs on the {@code StatelessSession} of
+	 * the {@link HibernateStatelessUnitOfWork}.
+	 */
+	private Object invokeBulk(
+			final MethodInvocation methodInvocation,
+			final TransactionPolicy policy,
+			final HibernatePersistService persistenceUnit,
+			final long deadline) throws Throwable {
+		final boolean startedWork = !statelessUnitOfWork.isWorking();
+		if (persistenceUnit != null) {
+			statelessUnitOfWork.begin(persistenceUnit);
+		} else if (startedWork) {
+			statelessUnitOfWork.begin();
+		}
 
-				// rollback only if nothing matched the ignore check
-				if (!commit) {
-					txn.rollback();
+		final Transaction txn = statelessUnitOfWork.get().getTransaction();
+
+		// Join an enclosing @Bulk transaction
+		if (txn.isActive()) {
+			return methodInvocation.proceed();
+		}
+
+		final long started = System.nanoTime();
+		policy.begin(txn, deadline);
+
+		Object result;
+		try {
+			result = methodInvocation.proceed();
+		} catch (final Throwable e) {
+			try {
+				complete(txn, policy, e, started, deadline);
+			} finally {
+				if (startedWork) {
+					statelessUnitOfWork.end();
 				}
-				// otherwise continue to commit
+			}
+			throw e;
+		}
 
-				break;
+		try {
+			complete(txn, policy, null, started, deadline);
+		} finally {
+			if (startedWork) {
+				statelessUnitOfWork.end();
 			}
 		}
+		return result;
+	}
 
-		return commit;
+	/**
+	 * Commits or rolls back the transaction of the argument unit of work. Nothing happens if the transaction never began
+	 * because the method did not use the session.
+	 */
+	private void complete(
+			final HibernateUnitOfWork.Context context,
+			final TransactionPolicy policy,
+			final Throwable failure,
+			final long started,
+			final long deadline) {
+		final Transaction txn = context.takeTransaction();
+		if (txn != null) {
+			complete(txn, policy, failure, started, deadline);
+		}
+	}
+
+	private void complete(
+			final Transaction txn,
+			final TransactionPolicy policy,
+			final Throwable failure,
+			final long started,
+			final long deadline) {
+		boolean committed = false;
+		try {
+			committed = policy.complete(txn, failure, deadline);
+		} finally {
+			metrics.transactionCompleted(policy.getName(), committed, System.nanoTime() - started);
+		}
+	}
+
+	/**
+	 * @return The persistence unit the method's shard key is routed to, or null if there is no shard key and the method
+	 *         runs on the default persistence unit (or joins the enclosing unit of work)
+	 */
+	private HibernatePersistService route(final MethodInvocation methodInvocation, final TransactionPolicy policy) {
+		final int index = policy.getShardKeyIndex();
+		if (index >= 0) {
+			final Object shardKey = methodInvocation.getArguments()[index];
+			if (shardKey == null) {
+				throw new IllegalArgumentException("Null @ShardKey argument passed to " + policy.getName());
+			}
+			return shards.route(shardKey);
+		}
+
+		final Object shardKey = shards.getShardKey();
+		return shardKey != null ? shards.route(shardKey) : null;
+	}
+
+	private void complete(final NestedTransaction nested, final TransactionPolicy policy, final Throwable failure, final long started) {
+		boolean committed = false;
+		try {
+			if (failure == null || (failure instanceof Exception && !policy.rollsBackOn(failure))) {
+				try {
+					nested.commit();
+				} catch (final RuntimeException e) {
+					nested.rollbackQuietly(e);
+					throw e;
+				}
+				committed = true;
+			} else {
+				nested.rollback();
+			}
+		} finally {
+			metrics.transactionCompleted(policy.getName(), committed, System.nanoTime() - started);
+		}
+	}
+
+	private TransactionPolicy readTransactionMetadata(final MethodInvocation methodInvocation) {
+		final Method method = methodInvocation.getMethod();
+		final Class<?> targetClass = methodInvocation.getThis().getClass();
+
+		// Plain get() first: it never locks or allocates, unlike computeIfAbsent.
+		ConcurrentMap<Method, TransactionPolicy> classPolicies = policies.get(targetClass);
+		if (classPolicies == null) {
+			classPolicies = policies.computeIfAbsent(targetClass, c -> new ConcurrentHashMap<>());
+		}
+
+		TransactionPolicy policy = classPolicies.get(method);
+		if (policy == null) {
+			policy = classPolicies.computeIfAbsent(method, m -> TransactionPolicy.resolve(m, targetClass, defaultTimeout));
+		}
+		return policy;
 	}
 }
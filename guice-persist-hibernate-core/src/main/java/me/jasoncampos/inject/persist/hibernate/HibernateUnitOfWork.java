@@ -1,10 +1,22 @@
 package me.jasoncampos.inject.persist.hibernate;
 
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
 import javax.inject.Inject;
 import javax.inject.Provider;
 import javax.inject.Singleton;
 
+import org.hibernate.FlushMode;
+import org.hibernate.HibernateException;
 import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.hibernate.event.spi.EventSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -13,13 +25,30 @@ import com.google.inject.persist.UnitOfWork;
 
 /**
  * Hibernate {@code UnitOfWork} implementation which manages a ThreadLocal {@code Session} instance. Invoking
- * {@link #begin()} will open a new {@code Session} if one is not already open. Subsequent invocations of {@link #get()}
- * will return the same {@code Session} instance until {@link #end()} is invoked. <br />
+ * {@link #begin()} starts a unit of work whose {@code Session} is opened lazily by the first invocation of
+ * {@link #get()}. Subsequent invocations of {@link #get()} will return the same {@code Session} instance until
+ * {@link #end()} is invoked. A unit of work which never uses its session costs neither a session nor a pooled
+ * connection. <br />
  * <br />
  *
  * This class may also be used as a {@code Provider<Session>} without the {@code UnitOfWork} context. Note that any
  * session not created during a {@link #begin()} invocation *must* be manually closed. Invoking {@link #get()} and then
- * {@link #end()} will *not* close the session created from {@link #get()}.
+ * {@link #end()} will *not* close the session created from {@link #get()}. Such sessions are watched by the
+ * {@link SessionLeakDetector}, which closes them if they are garbage collected while still open. <br />
+ * <br />
+ *
+ * Units of work begun with {@link #beginReadOnly()} open their session on a replica chosen by the
+ * {@link ReplicaLoadBalancer}, falling back to the primary if no replica is configured or the chosen replica cannot
+ * supply a connection. Units of work begun with {@link #begin(HibernatePersistService)}
+ * open their session on the argument persistence unit instead of the default one (see {@link HibernateShards}). A unit
+ * of work keeps a separate session for each further persistence unit used within it, via
+ * {@link #get(HibernatePersistService)} or {@link #enter(HibernatePersistService)}; all of them end with it. <br />
+ * <br />
+ *
+ * A unit of work may be handed to other threads: {@link #propagate(Runnable)} (or a
+ * {@link UnitOfWorkPropagatingExecutor}) binds the unit of work current at submission time to the thread running the
+ * task. A {@code Session} is not thread safe, so the submitting thread must not use the session while such a task is
+ * running.
  *
  * @author Jason Campos <jcampos8782@gmail.com>
  */
@@ -27,53 +56,500 @@ import com.google.inject.persist.UnitOfWork;
 public class HibernateUnitOfWork implements Provider<Session>, UnitOfWork {
 	private static final Logger logger = LoggerFactory.getLogger(HibernateUnitOfWork.class);
 
-	private final ThreadLocal<Session> sessions = new ThreadLocal<>();
+	private final ThreadLocal<Context> contexts = new ThreadLocal<>();
 	private final HibernatePersistService sessionFactory;
+	private final ReplicaLoadBalancer loadBalancer;
+	private final HibernateMetrics metrics;
+	private final UnitOfWorkWatchdog watchdog;
+	private final SessionLeakDetector leakDetector;
+	private final FlushDiagnostics flushDiagnostics;
 
 	@Inject
-	public HibernateUnitOfWork(final HibernatePersistService sessionFactory) {
+	public HibernateUnitOfWork(
+			final HibernatePersistService sessionFactory,
+			final ReplicaLoadBalancer loadBalancer,
+			final HibernateMetrics metrics,
+			final UnitOfWorkWatchdog watchdog,
+			final SessionLeakDetector leakDetector,
+			final FlushDiagnostics flushDiagnostics) {
 		this.sessionFactory = sessionFactory;
+		this.loadBalancer = loadBalancer;
+		this.metrics = metrics;
+		this.watchdog = watchdog;
+		this.leakDetector = leakDetector;
+		this.flushDiagnostics = flushDiagnostics;
 	}
 
 	@Override
 	public Session get() {
 		// If a unit of work has begun, return that session.
 		// Otherwise, assume the session will be manually managed.
-		if (isWorking()) {
-			return sessions.get();
+		final Context context = contexts.get();
+		if (context != null) {
+			return context.session();
 		} else {
 			logger.warn("Opening hibernate Session with no current UnitOfWork. This session must be manually closed.");
-			return sessionFactory.get().openSession();
+			return leakDetector.track(sessionFactory.get().openSession());
+		}
+	}
+
+	/**
+	 * Same as {@link #get()}, but the session is opened on the argument persistence unit. Within a unit of work on
+	 * another persistence unit, this is the session the unit of work keeps for the argument unit; the current unit of
+	 * work is left as it is.
+	 */
+	public Session get(final HibernatePersistService persistenceUnit) {
+		final Context context = contexts.get();
+		if (context != null) {
+			return context.on(persistenceUnit).session();
+		} else {
+			logger.warn("Opening hibernate Session on persistence unit {} with no current UnitOfWork. This session must be manually closed.", persistenceUnit.getName());
+			return leakDetector.track(persistenceUnit.get().openSession());
 		}
 	}
 
 	public boolean isWorking() {
-		return sessions.get() != null;
+		return contexts.get() != null;
 	}
 
 	@Override
 	public void begin() {
 		if (!isWorking()) {
-			final Session session = sessionFactory.get().openSession();
-			sessions.set(session);
-			logger.debug("UnitOfWork started. session={}", session);
+			contexts.set(new Context(false, sessionFactory));
+			logger.debug("UnitOfWork started");
+		}
+	}
+
+	/**
+	 * Begins a unit of work whose session will be opened on the argument persistence unit. Does nothing if a unit of
+	 * work is already in progress; use {@link #enter(HibernatePersistService)} to work on another persistence unit
+	 * within it.
+	 */
+	public void begin(final HibernatePersistService persistenceUnit) {
+		if (!isWorking()) {
+			contexts.set(new Context(false, persistenceUnit));
+			logger.debug("UnitOfWork started. persistenceUnit={}", persistenceUnit.getName());
+		}
+	}
+
+	/**
+	 * Binds to the current thread the part of the current unit of work which works on the argument persistence unit,
+	 * e.g. for the duration of a method routed to a shard within a unit of work begun by a {@code PersistFilter}. The
+	 * returned unit of work must be restored with {@link #attach(Context)} afterwards, so that work which is not routed
+	 * keeps using the default persistence unit.
+	 *
+	 * @return The unit of work which was bound to the current thread
+	 * @throws IllegalStateException
+	 *             If no unit of work is in progress, or if it has a transaction in progress on another persistence unit
+	 */
+	public Context enter(final HibernatePersistService persistenceUnit) {
+		final Context context = contexts.get();
+		Preconditions.checkState(context != null, "No UnitOfWork in progress");
+		if (context.persistenceUnit != persistenceUnit) {
+			// The transaction could not commit or roll back along with the other unit's transaction
+			Preconditions.checkState(
+					!context.isTransactionActive(),
+					"UnitOfWork with a transaction in progress on persistence unit %s cannot switch to %s",
+					context.persistenceUnit.getName(),
+					persistenceUnit.getName());
+			contexts.set(context.on(persistenceUnit));
+			logger.debug("UnitOfWork entered persistenceUnit={}", persistenceUnit.getName());
+		}
+		return context;
+	}
+
+	/**
+	 * Begins a unit of work whose session will be opened on a replica. Behaves like {@link #begin()} if no replicas are
+	 * configured or a unit of work is already in progress.
+	 */
+	public void beginReadOnly() {
+		if (!isWorking()) {
+			contexts.set(new Context(true, sessionFactory));
+			logger.debug("Read-only UnitOfWork started");
 		}
 	}
 
+	/**
+	 * Registers a resource (e.g. an open cursor) whose lifetime is bound to the current unit of work. Resources still
+	 * open when {@link #end()} is invoked are closed, in reverse order of registration, before the session is flushed
+	 * and closed.
+	 *
+	 * @param resource
+	 *            The resource to close. Closing it more than once must be harmless.
+	 */
+	void closeOnEnd(final AutoCloseable resource) {
+		final Context context = contexts.get();
+		Preconditions.checkState(context != null, "No UnitOfWork in progress");
+		context.resources.push(resource);
+	}
+
 	@Override
 	public void end() {
-		Preconditions.checkState(isWorking(), "UnitOfWork.end() invoked with no corresponding UnitOfWork.begin()");
-		final Session session = sessions.get();
+		final Context context = contexts.get();
+		Preconditions.checkState(context != null, "UnitOfWork.end() invoked with no corresponding UnitOfWork.begin()");
 		try {
-			if (session.isOpen() && session.isJoinedToTransaction()) {
+			end(context.root);
+		} finally {
+			contexts.remove();
+		}
+	}
+
+	/**
+	 * @return The unit of work bound to the current thread, or null if there is none.
+	 */
+	public Context current() {
+		return contexts.get();
+	}
+
+	/**
+	 * Binds the argument unit of work to the current thread, replacing whichever unit of work was bound before.
+	 *
+	 * @param context
+	 *            The unit of work to bind, or null to leave the current thread without a unit of work
+	 * @return The previously bound unit of work (possibly null) which should be restored with another call to this
+	 *         method once the current thread is done with the argument unit of work.
+	 */
+	public Context attach(final Context context) {
+		final Context previous = contexts.get();
+		if (context != null) {
+			contexts.set(context);
+		} else {
+			contexts.remove();
+		}
+		return previous;
+	}
+
+	/**
+	 * Wraps the argument task so that it runs within the unit of work which is current at the time of this call.
+	 */
+	public Runnable propagate(final Runnable task) {
+		final Context context = contexts.get();
+		if (context == null) {
+			return task;
+		}
+		return () -> {
+			final Context previous = attach(context);
+			try {
+				task.run();
+			} finally {
+				attach(previous);
+			}
+		};
+	}
+
+	/**
+	 * Wraps the argument task so that it runs within the unit of work which is current at the time of this call.
+	 */
+	public <V> Callable<V> propagate(final Callable<V> task) {
+		final Context context = contexts.get();
+		if (context == null) {
+			return task;
+		}
+		return () -> {
+			final Context previous = attach(context);
+			try {
+				return task.call();
+			} finally {
+				attach(previous);
+			}
+		};
+	}
+
+	/**
+	 * Ends the argument unit of work regardless of which thread, if any, it is bound to. Used to complete units of work
+	 * which outlive the thread that began them (e.g. asynchronous {@code @Transactional} methods).
+	 */
+	void end(final Context context) {
+		try {
+			endUnits(context.root.units.values().iterator());
+		} finally {
+			endSession(context.root);
+		}
+	}
+
+	// Ends every session kept for another persistence unit, even if one of them fails to end
+	private void endUnits(final Iterator<Context> units) {
+		if (units.hasNext()) {
+			final Context unit = units.next();
+			try {
+				endSession(unit);
+			} finally {
+				endUnits(units);
+			}
+		}
+	}
+
+	private void endSession(final Context context) {
+		final Session session = context.session;
+		if (session == null) {
+			// The session was never used
+			context.closeResources();
+			logger.debug("UnitOfWork complete. No session was opened");
+			return;
+		}
+
+		try {
+			context.closeResources();
+			// Sessions in MANUAL flush mode (e.g. @ReadOnly transactions) are never flushed implicitly
+			if (session.isOpen() && session.isJoinedToTransaction() && session.getHibernateFlushMode() != FlushMode.MANUAL) {
+				final long flushStarted = System.nanoTime();
 				session.flush();
+				metrics.operationCompleted(context.tag, HibernateMetrics.Operation.FLUSH, System.nanoTime() - flushStarted);
 			}
 		} finally {
-			if (session.isOpen()) {
+			try {
+				if (session.isOpen()) {
+					final long closeStarted = System.nanoTime();
+					session.close();
+					final long closed = System.nanoTime();
+					metrics.operationCompleted(context.tag, HibernateMetrics.Operation.CLOSE, closed - closeStarted);
+					metrics.sessionClosed(context.tag, closed - context.opened);
+				}
+				if (context.flushes != null) {
+					final FlushDiagnostics.Counter flushes = context.flushes;
+					metrics.flushesCounted(context.tag, flushes.getFlushes(), flushes.getAutoFlushes(), flushes.getEntities());
+				}
+			} finally {
+				// Even if the session failed to close, so that a replaced SessionFactory can still close
+				if (context.replica != null) {
+					context.replica.release();
+				}
+				if (context.generation != null) {
+					context.generation.release();
+				}
+				watchdog.untrack(context);
+				logger.debug("UnitOfWork complete. session={}", session);
+			}
+		}
+	}
+
+	private Session openSession(final Context context) {
+		if (context.readOnly) {
+			final List<HibernateReplica> available = context.persistenceUnit.getReplicas();
+			if (!available.isEmpty()) {
+				final HibernateReplica replica = loadBalancer.select(available);
+				final Session session = openReplicaSession(replica);
+				if (session != null) {
+					context.replica = replica;
+					logger.debug("UnitOfWork session opened. replica={} session={}", replica, session);
+					return session;
+				}
+			}
+		}
+
+		// Keeps the SessionFactory open until this unit of work ends, even if a reload replaces it
+		final SessionFactoryGeneration generation = context.persistenceUnit.acquire();
+		final Session session;
+		try {
+			session = generation.getSessionFactory().openSession();
+		} catch (final RuntimeException e) {
+			generation.release();
+			throw e;
+		}
+		context.generation = generation;
+		logger.debug("UnitOfWork session opened. session={}", session);
+		return session;
+	}
+
+	// Returns null if the replica cannot supply a connection
+	private Session openReplicaSession(final HibernateReplica replica) {
+		if (!replica.acquire()) {
+			// Replaced by a reload since it was selected
+			return null;
+		}
+		Session session = null;
+		try {
+			session = replica.getSessionFactory().openSession();
+			// Acquire the connection now so that an unreachable replica fails over here rather than mid-transaction
+			session.doWork(connection -> {
+			});
+			return session;
+		} catch (final HibernateException e) {
+			replica.release();
+			if (session != null && session.isOpen()) {
 				session.close();
 			}
-			sessions.remove();
-			logger.debug("UnitOfWork complete. session={}", session);
+			logger.warn("Failed to open session on {}. Falling back to primary.", replica, e);
+			return null;
+		}
+	}
+
+	/**
+	 * Opaque handle to a unit of work, used to carry it across threads.
+	 *
+	 * @see HibernateUnitOfWork#current()
+	 * @see HibernateUnitOfWork#attach(Context)
+	 */
+	public final class Context {
+		private final boolean readOnly;
+		private final HibernatePersistService persistenceUnit;
+		// The unit of work begun by begin(), whose units hold the parts working on other persistence units
+		private final Context root;
+		private final Map<HibernatePersistService, Context> units = new LinkedHashMap<>();
+		private final Deque<AutoCloseable> resources = new ConcurrentLinkedDeque<>();
+		private Session session;
+		private long opened;
+		private HibernateReplica replica;
+		private SessionFactoryGeneration generation;
+		private FlushDiagnostics.Counter flushes;
+
+		// The @Transactional method which began the first transaction of this unit of work
+		private String tag = HibernateMetrics.UNTAGGED;
+
+		// Policy of a transaction which begins once the session is first used, and the transaction once it has begun
+		private TransactionPolicy pendingTransaction;
+		private long deadline = TransactionPolicy.NO_DEADLINE;
+		private Transaction transaction;
+		// True once the transaction has flushed an insert, update or delete
+		private boolean written;
+		// Messages enqueued on the Outbox by the transaction in progress
+		private Outbox.Pending outboxMessages;
+
+		private Context(final boolean readOnly, final HibernatePersistService persistenceUnit) {
+			this.readOnly = readOnly;
+			this.persistenceUnit = persistenceUnit;
+			this.root = this;
+		}
+
+		private Context(final Context root, final HibernatePersistService persistenceUnit) {
+			this.readOnly = root.readOnly;
+			this.persistenceUnit = persistenceUnit;
+			this.root = root;
+		}
+
+		// The part of this unit of work which works on the argument persistence unit
+		private Context on(final HibernatePersistService unit) {
+			if (persistenceUnit == unit) {
+				return this;
+			} else if (root.persistenceUnit == unit) {
+				return root;
+			}
+			return root.units.computeIfAbsent(unit, u -> new Context(root, u));
+		}
+
+		private Session session() {
+			if (session == null) {
+				opened = System.nanoTime();
+				session = openSession(this);
+				flushes = flushDiagnostics.track(session);
+				watchdog.track(this, session, tag);
+				if (pendingTransaction != null) {
+					transaction = begin(pendingTransaction);
+					pendingTransaction = null;
+				}
+			}
+			return session;
+		}
+
+		/**
+		 * @return True if a transaction has begun, or will begin once the session is first used.
+		 */
+		boolean isTransactionActive() {
+			if (pendingTransaction != null) {
+				return true;
+			}
+			return session != null && session.getTransaction().isActive();
+		}
+
+		/**
+		 * Begins a transaction according to the argument policy. If the session has not been opened yet, the
+		 * transaction is deferred until the session is first used.
+		 *
+		 * @param deadline
+		 *            The deadline of the transaction, or {@link TransactionPolicy#NO_DEADLINE}
+		 */
+		void beginTransaction(final TransactionPolicy policy, final long deadline) {
+			if (HibernateMetrics.UNTAGGED.equals(tag)) {
+				tag = policy.getName();
+			}
+			this.deadline = deadline;
+			if (session != null) {
+				transaction = begin(policy);
+			} else {
+				pendingTransaction = policy;
+			}
+		}
+
+		/**
+		 * @return The transaction begun by {@link #beginTransaction(TransactionPolicy, long)}, or null if the session was
+		 *         never used and no transaction took place. Either way the context no longer tracks a transaction.
+		 */
+		Transaction takeTransaction() {
+			final Transaction txn = transaction;
+			transaction = null;
+			pendingTransaction = null;
+			deadline = TransactionPolicy.NO_DEADLINE;
+			written = false;
+			return txn;
+		}
+
+		/**
+		 * Detaches every entity from the session, if it has been opened, so that a retried transaction reads them
+		 * from the database again.
+		 */
+		void clearSession() {
+			if (session != null && session.isOpen()) {
+				session.clear();
+			}
+		}
+
+		/**
+		 * Records that the transaction in progress has flushed an insert, update or delete.
+		 */
+		void markWritten() {
+			written = true;
+		}
+
+		/**
+		 * @return True if the transaction in progress has inserted, updated or deleted entities, whether flushed or not.
+		 *         Queries within it may see changes which other units of work cannot.
+		 */
+		boolean hasUncommittedChanges() {
+			if (written) {
+				return true;
+			}
+			if (session == null || !session.isOpen() || !session.getTransaction().isActive()) {
+				return false;
+			}
+			// Entities persisted or removed but not flushed yet, which a query would flush first
+			if (session instanceof EventSource && ((EventSource) session).getActionQueue().hasAnyQueuedActions()) {
+				return true;
+			}
+			// Managed entities modified since they were loaded
+			return session.isDirty();
+		}
+
+		/**
+		 * @return The persistence unit on which the session of this unit of work is opened
+		 */
+		HibernatePersistService getPersistenceUnit() {
+			return persistenceUnit;
+		}
+
+		Outbox.Pending getOutboxMessages() {
+			return outboxMessages;
+		}
+
+		void setOutboxMessages(final Outbox.Pending outboxMessages) {
+			this.outboxMessages = outboxMessages;
+		}
+
+		private Transaction begin(final TransactionPolicy policy) {
+			final long started = System.nanoTime();
+			final Transaction txn = policy.begin(session, deadline);
+			metrics.operationCompleted(tag, HibernateMetrics.Operation.BEGIN, System.nanoTime() - started);
+			return txn;
+		}
+
+		private void closeResources() {
+			AutoCloseable resource;
+			while ((resource = resources.poll()) != null) {
+				try {
+					resource.close();
+				} catch (final Exception e) {
+					logger.warn("Failed to close resource {} at end of UnitOfWork", resource, e);
+				}
+			}
 		}
 	}
 }
@@ -0,0 +1,34 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.inject.Singleton;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * {@link OutboxSink} which keeps every published message in memory. Intended for tests.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+@Singleton
+public class InMemoryOutboxSink implements OutboxSink {
+	private final List<OutboxMessage> published = new CopyOnWriteArrayList<>();
+
+	@Override
+	public void publish(final List<OutboxMessage> messages) {
+		published.addAll(messages);
+	}
+
+	/**
+	 * @return Every message published so far, in the order it was published
+	 */
+	public ImmutableList<OutboxMessage> getPublished() {
+		return ImmutableList.copyOf(published);
+	}
+
+	public void clear() {
+		published.clear();
+	}
+}
@@ -0,0 +1,242 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.inject.Singleton;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Default {@link HibernateMetrics} implementation. Measurements are accumulated in striped counters and
+ * {@link LatencyHistogram LatencyHistograms}, so recording never takes a lock. The metrics of each method are exposed
+ * through a {@link TransactionMetricsMXBean} registered with the platform {@code MBeanServer} as
+ * {@value #DOMAIN}:type=Transactions,instance=&lt;instance&gt;,method=&lt;method&gt; the first time the method is
+ * measured. The instance key numbers the {@code JmxHibernateMetrics} of each injector in the JVM, so that injectors
+ * never replace each other's MBeans. The MBeans are unregistered as the {@link HibernatePersistService} stops.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+@Singleton
+public class JmxHibernateMetrics implements HibernateMetrics, HibernateStartupListener {
+	private static final Logger logger = LoggerFactory.getLogger(JmxHibernateMetrics.class);
+
+	public static final String DOMAIN = "me.jasoncampos.inject.persist.hibernate";
+
+	private static final AtomicInteger instances = new AtomicInteger();
+
+	private final ConcurrentMap<String, MethodMetrics> methods = new ConcurrentHashMap<>();
+	private final MBeanServer mBeanServer;
+	private final int instance = instances.incrementAndGet();
+
+	public JmxHibernateMetrics() {
+		this(ManagementFactory.getPlatformMBeanServer());
+	}
+
+	public JmxHibernateMetrics(final MBeanServer mBeanServer) {
+		this.mBeanServer = mBeanServer;
+	}
+
+	@Override
+	public void transactionCompleted(final String method, final boolean committed, final long elapsedNanos) {
+		final MethodMetrics metrics = metricsOf(method);
+		if (committed) {
+			metrics.commits.increment();
+		} else {
+			metrics.rollbacks.increment();
+		}
+		metrics.transactions.record(elapsedNanos);
+	}
+
+	@Override
+	public void transactionRetried(final String method, final int attempt, final Throwable failure) {
+		metricsOf(method).retries.increment();
+	}
+
+	@Override
+	public void operationCompleted(final String method, final Operation operation, final long elapsedNanos) {
+		final MethodMetrics metrics = metricsOf(method);
+		switch (operation) {
+		case BEGIN:
+			metrics.begins.record(elapsedNanos);
+			break;
+		case FLUSH:
+			metrics.flushes.record(elapsedNanos);
+			break;
+		case CLOSE:
+			metrics.closes.record(elapsedNanos);
+			break;
+		}
+	}
+
+	@Override
+	public void sessionClosed(final String method, final long openNanos) {
+		metricsOf(method).sessions.record(openNanos);
+	}
+
+	@Override
+	public void flushesCounted(final String method, final int flushes, final int autoFlushes, final long entities) {
+		final MethodMetrics metrics = metricsOf(method);
+		metrics.diagnosed.increment();
+		metrics.flushCount.add(flushes);
+		metrics.autoFlushCount.add(autoFlushes);
+		metrics.dirtyChecks.add(entities);
+	}
+
+	/**
+	 * Unregisters the MBeans of every measured method. Methods measured afterwards are registered again from zero.
+	 */
+	@Override
+	public void stopping(final HibernatePersistService persistService) {
+		for (final String method : methods.keySet()) {
+			methods.remove(method);
+			try {
+				final ObjectName name = nameOf(method);
+				if (mBeanServer.isRegistered(name)) {
+					mBeanServer.unregisterMBean(name);
+				}
+			} catch (final JMException e) {
+				logger.warn("Failed to unregister transaction metrics of {} from JMX", method, e);
+			}
+		}
+	}
+
+	/**
+	 * @return The name of the MBean holding the metrics of the argument method
+	 */
+	public ObjectName nameOf(final String method) throws JMException {
+		return new ObjectName(DOMAIN + ":type=Transactions,instance=" + instance + ",method=" + ObjectName.quote(method));
+	}
+
+	/**
+	 * @return The metrics of the argument method, or null if the method has not been measured.
+	 */
+	public TransactionMetricsMXBean getMetrics(final String method) {
+		return methods.get(method);
+	}
+
+	private MethodMetrics metricsOf(final String method) {
+		// Plain get() first: it never locks or allocates, unlike computeIfAbsent.
+		final MethodMetrics metrics = methods.get(method);
+		return metrics != null ? metrics : methods.computeIfAbsent(method, this::register);
+	}
+
+	private MethodMetrics register(final String method) {
+		final MethodMetrics metrics = new MethodMetrics();
+		try {
+			mBeanServer.registerMBean(metrics, nameOf(method));
+		} catch (final JMException e) {
+			logger.warn("Failed to register transaction metrics of {} with JMX", method, e);
+		}
+		return metrics;
+	}
+
+	private static class MethodMetrics implements TransactionMetricsMXBean {
+		private final LongAdder commits = new LongAdder();
+		private final LongAdder rollbacks = new LongAdder();
+		private final LongAdder retries = new LongAdder();
+		private final LatencyHistogram transactions = new LatencyHistogram();
+		private final LatencyHistogram sessions = new LatencyHistogram();
+		private final LatencyHistogram begins = new LatencyHistogram();
+		private final LatencyHistogram flushes = new LatencyHistogram();
+		private final LatencyHistogram closes = new LatencyHistogram();
+		// Counted by FlushDiagnostics
+		private final LongAdder diagnosed = new LongAdder();
+		private final LongAdder flushCount = new LongAdder();
+		private final LongAdder autoFlushCount = new LongAdder();
+		private final LongAdder dirtyChecks = new LongAdder();
+
+		@Override
+		public long getCommits() {
+			return commits.sum();
+		}
+
+		@Override
+		public long getRollbacks() {
+			return rollbacks.sum();
+		}
+
+		@Override
+		public long getRetries() {
+			return retries.sum();
+		}
+
+		@Override
+		public double getTransactionMeanMillis() {
+			return transactions.getMeanMillis();
+		}
+
+		@Override
+		public double getTransaction99thPercentileMillis() {
+			return transactions.getPercentileMillis(0.99);
+		}
+
+		@Override
+		public double getTransactionMaxMillis() {
+			return transactions.getMaxMillis();
+		}
+
+		@Override
+		public long getSessionsClosed() {
+			return sessions.getCount();
+		}
+
+		@Override
+		public double getSessionOpenMeanMillis() {
+			return sessions.getMeanMillis();
+		}
+
+		@Override
+		public double getSessionOpenMaxMillis() {
+			return sessions.getMaxMillis();
+		}
+
+		@Override
+		public double getBeginMeanMillis() {
+			return begins.getMeanMillis();
+		}
+
+		@Override
+		public double getFlushMeanMillis() {
+			return flushes.getMeanMillis();
+		}
+
+		@Override
+		public double getFlush99thPercentileMillis() {
+			return flushes.getPercentileMillis(0.99);
+		}
+
+		@Override
+		public double getCloseMeanMillis() {
+			return closes.getMeanMillis();
+		}
+
+		@Override
+		public long getFlushes() {
+			return flushCount.sum();
+		}
+
+		@Override
+		public long getAutoFlushes() {
+			return autoFlushCount.sum();
+		}
+
+		@Override
+		public long getDirtyCheckedEntities() {
+			return dirtyChecks.sum();
+		}
+
+		@Override
+		public double getDirtyCheckedEntitiesPerUnitOfWork() {
+			final long units = diagnosed.sum();
+			return units > 0 ? (double) dirtyChecks.sum() / units : 0;
+		}
+	}
+}
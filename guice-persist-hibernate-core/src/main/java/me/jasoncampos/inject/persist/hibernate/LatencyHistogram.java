@@ -0,0 +1,74 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of durations. Samples are counted in power-of-two nanosecond buckets using striped counters, so
+ * recording a sample never contends and percentiles are accurate to within a factor of two.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+class LatencyHistogram {
+
+	private final LongAdder[] buckets = new LongAdder[Long.SIZE];
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	LatencyHistogram() {
+		for (int i = 0; i < buckets.length; i++) {
+			buckets[i] = new LongAdder();
+		}
+	}
+
+	void record(final long nanos) {
+		final long value = Math.max(nanos, 0);
+		// Bucket i holds values in [2^(i-1), 2^i)
+		buckets[Long.SIZE - Long.numberOfLeadingZeros(value)].increment();
+		count.increment();
+		sum.add(value);
+		max.accumulate(value);
+	}
+
+	long getCount() {
+		return count.sum();
+	}
+
+	double getMeanMillis() {
+		final long samples = count.sum();
+		return samples == 0 ? 0 : toMillis(sum.sum()) / samples;
+	}
+
+	double getMaxMillis() {
+		return toMillis(max.get());
+	}
+
+	/**
+	 * @param percentile
+	 *            A value between 0 and 1 exclusive
+	 * @return The upper bound of the bucket holding the argument percentile
+	 */
+	double getPercentileMillis(final double percentile) {
+		final long samples = count.sum();
+		if (samples == 0) {
+			return 0;
+		}
+
+		final long rank = (long) Math.ceil(samples * percentile);
+		long seen = 0;
+		for (int i = 0; i < buckets.length; i++) {
+			seen += buckets[i].sum();
+			if (seen >= rank) {
+				final long upperBound = i == 0 ? 0 : i == Long.SIZE - 1 ? Long.MAX_VALUE : 1L << i;
+				return Math.min(toMillis(upperBound), getMaxMillis());
+			}
+		}
+		return getMaxMillis();
+	}
+
+	private static double toMillis(final long nanos) {
+		return (double) nanos / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+}
@@ -0,0 +1,26 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import java.util.List;
+
+/**
+ * Chooses the replica with the fewest units of work currently holding a session. Ties go to the replica listed first.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+public class LeastInFlightReplicaLoadBalancer implements ReplicaLoadBalancer {
+
+	@Override
+	public HibernateReplica select(final List<HibernateReplica> replicas) {
+		HibernateReplica selected = replicas.get(0);
+		int least = selected.getInFlight();
+		for (int i = 1; i < replicas.size(); i++) {
+			final HibernateReplica replica = replicas.get(i);
+			final int inFlight = replica.getInFlight();
+			if (inFlight < least) {
+				selected = replica;
+				least = inFlight;
+			}
+		}
+		return selected;
+	}
+}
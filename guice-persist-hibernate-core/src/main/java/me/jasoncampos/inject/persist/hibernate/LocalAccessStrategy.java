@@ -0,0 +1,234 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import org.hibernate.cache.internal.DefaultCacheKeysFactory;
+import org.hibernate.cache.spi.access.AccessType;
+import org.hibernate.cache.spi.access.CollectionRegionAccessStrategy;
+import org.hibernate.cache.spi.access.EntityRegionAccessStrategy;
+import org.hibernate.cache.spi.access.NaturalIdRegionAccessStrategy;
+import org.hibernate.cache.spi.access.SoftLock;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.persister.collection.CollectionPersister;
+import org.hibernate.persister.entity.EntityPersister;
+
+/**
+ * Access strategy of a {@link LocalRegion}, for any of the concurrency strategies supported by
+ * {@link LocalRegionFactory}:
+ * <ul>
+ * <li>{@code READ_ONLY}: entries are put when loaded or inserted; updates are refused.</li>
+ * <li>{@code NONSTRICT_READ_WRITE}: entries are put when loaded and evicted when updated or removed, without locking.
+ * A load racing an update may cache stale state until it is evicted or expires.</li>
+ * <li>{@code READ_WRITE}: a key is locked for the duration of each update, during which it is neither read nor
+ * loaded, and the new state is put once the update completes.</li>
+ * </ul>
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+class LocalAccessStrategy implements EntityRegionAccessStrategy, CollectionRegionAccessStrategy, NaturalIdRegionAccessStrategy {
+
+	private static final SoftLock LOCK = new SoftLock() {
+	};
+
+	private final LocalRegion region;
+	private final AccessType accessType;
+
+	LocalAccessStrategy(final LocalRegion region, final AccessType accessType) {
+		this.region = region;
+		this.accessType = accessType;
+	}
+
+	@Override
+	public LocalRegion getRegion() {
+		return region;
+	}
+
+	@Override
+	public Object generateCacheKey(
+			final Object id,
+			final EntityPersister persister,
+			final SessionFactoryImplementor factory,
+			final String tenantIdentifier) {
+		return DefaultCacheKeysFactory.createEntityKey(id, persister, factory, tenantIdentifier);
+	}
+
+	@Override
+	public Object generateCacheKey(
+			final Object id,
+			final CollectionPersister persister,
+			final SessionFactoryImplementor factory,
+			final String tenantIdentifier) {
+		return DefaultCacheKeysFactory.createCollectionKey(id, persister, factory, tenantIdentifier);
+	}
+
+	@Override
+	public Object generateCacheKey(
+			final Object[] naturalIdValues,
+			final EntityPersister persister,
+			final SharedSessionContractImplementor session) {
+		return DefaultCacheKeysFactory.createNaturalIdKey(naturalIdValues, persister, session);
+	}
+
+	@Override
+	public Object getCacheKeyId(final Object cacheKey) {
+		// Entity and collection keys share an implementation
+		return DefaultCacheKeysFactory.getEntityId(cacheKey);
+	}
+
+	@Override
+	public Object[] getNaturalIdValues(final Object cacheKey) {
+		return DefaultCacheKeysFactory.getNaturalIdValues(cacheKey);
+	}
+
+	@Override
+	public Object get(final SharedSessionContractImplementor session, final Object key, final long txTimestamp) {
+		return region.read(key);
+	}
+
+	@Override
+	public boolean putFromLoad(
+			final SharedSessionContractImplementor session,
+			final Object key,
+			final Object value,
+			final long txTimestamp,
+			final Object version) {
+		return region.putFromLoad(key, value, txTimestamp);
+	}
+
+	@Override
+	public boolean putFromLoad(
+			final SharedSessionContractImplementor session,
+			final Object key,
+			final Object value,
+			final long txTimestamp,
+			final Object version,
+			final boolean minimalPutOverride) {
+		return region.putFromLoad(key, value, txTimestamp);
+	}
+
+	@Override
+	public SoftLock lockItem(final SharedSessionContractImplementor session, final Object key, final Object version) {
+		if (accessType != AccessType.READ_WRITE) {
+			return null;
+		}
+		region.lock(key);
+		return LOCK;
+	}
+
+	@Override
+	public void unlockItem(final SharedSessionContractImplementor session, final Object key, final SoftLock lock) {
+		if (accessType == AccessType.READ_WRITE) {
+			region.unlock(key, null);
+		} else {
+			region.evict(key);
+		}
+	}
+
+	@Override
+	public SoftLock lockRegion() {
+		region.lockRegion();
+		return LOCK;
+	}
+
+	@Override
+	public void unlockRegion(final SoftLock lock) {
+		region.unlockRegion();
+	}
+
+	@Override
+	public void remove(final SharedSessionContractImplementor session, final Object key) {
+		region.evict(key);
+	}
+
+	@Override
+	public void removeAll() {
+		region.evictAll();
+	}
+
+	@Override
+	public void evict(final Object key) {
+		region.evict(key);
+	}
+
+	@Override
+	public void evictAll() {
+		region.evictAll();
+	}
+
+	// Entities
+
+	@Override
+	public boolean insert(final SharedSessionContractImplementor session, final Object key, final Object value, final Object version) {
+		return false;
+	}
+
+	@Override
+	public boolean afterInsert(final SharedSessionContractImplementor session, final Object key, final Object value, final Object version) {
+		return afterInsert(key, value);
+	}
+
+	@Override
+	public boolean update(
+			final SharedSessionContractImplementor session,
+			final Object key,
+			final Object value,
+			final Object currentVersion,
+			final Object previousVersion) {
+		return update(key);
+	}
+
+	@Override
+	public boolean afterUpdate(
+			final SharedSessionContractImplementor session,
+			final Object key,
+			final Object value,
+			final Object currentVersion,
+			final Object previousVersion,
+			final SoftLock lock) {
+		return afterUpdate(key, value);
+	}
+
+	// Natural ids
+
+	@Override
+	public boolean insert(final SharedSessionContractImplementor session, final Object key, final Object value) {
+		return false;
+	}
+
+	@Override
+	public boolean afterInsert(final SharedSessionContractImplementor session, final Object key, final Object value) {
+		return afterInsert(key, value);
+	}
+
+	@Override
+	public boolean update(final SharedSessionContractImplementor session, final Object key, final Object value) {
+		return update(key);
+	}
+
+	@Override
+	public boolean afterUpdate(final SharedSessionContractImplementor session, final Object key, final Object value, final SoftLock lock) {
+		return afterUpdate(key, value);
+	}
+
+	private boolean afterInsert(final Object key, final Object value) {
+		// An entry which may be evicted by any update gains little from being cached before it is read
+		return accessType != AccessType.NONSTRICT_READ_WRITE && region.putIfUnlocked(key, value);
+	}
+
+	private boolean update(final Object key) {
+		if (accessType == AccessType.READ_ONLY) {
+			throw new UnsupportedOperationException("Can't update read-only entries of region " + region.getName());
+		}
+		if (accessType == AccessType.NONSTRICT_READ_WRITE) {
+			region.evict(key);
+		}
+		return false;
+	}
+
+	private boolean afterUpdate(final Object key, final Object value) {
+		if (accessType == AccessType.READ_WRITE) {
+			return region.unlock(key, value);
+		}
+		region.evict(key);
+		return false;
+	}
+}
@@ -0,0 +1,241 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hibernate.cache.CacheException;
+import org.hibernate.cache.spi.CacheDataDescription;
+import org.hibernate.cache.spi.CollectionRegion;
+import org.hibernate.cache.spi.EntityRegion;
+import org.hibernate.cache.spi.NaturalIdRegion;
+import org.hibernate.cache.spi.QueryResultsRegion;
+import org.hibernate.cache.spi.TimestampsRegion;
+import org.hibernate.cache.spi.access.AccessType;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * A region of {@link LocalRegionFactory}. One type serves every kind of region; entity, collection and natural id
+ * regions hand out a {@link LocalAccessStrategy}, while query results and timestamps regions are read and written
+ * directly. <br />
+ * <br />
+ *
+ * Besides the entries, the region tracks the keys locked by {@code READ_WRITE} updates in flight, and when each was
+ * last unlocked. A load may only put an entry if the key is not locked, and has not been unlocked since the loading
+ * session began; otherwise the loaded state may predate the update.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+class LocalRegion implements EntityRegion, CollectionRegion, NaturalIdRegion, QueryResultsRegion, TimestampsRegion {
+	private static final long serialVersionUID = 1L;
+
+	private final String name;
+	private final CacheDataDescription metadata;
+	private final LocalRegionFactory regionFactory;
+	private final Cache<Object, Object> entries;
+	private final ConcurrentMap<Object, Integer> locks = new ConcurrentHashMap<>();
+	// Keys unlocked within the last TIMEOUT, with the timestamp at which they were unlocked
+	private final Cache<Object, Long> unlocked;
+	private final AtomicInteger regionLocks = new AtomicInteger();
+	private volatile long regionUnlocked;
+
+	/**
+	 * @param maxEntries
+	 *            Zero for no bound
+	 * @param ttlMillis
+	 *            Zero for no expiry
+	 */
+	LocalRegion(
+			final String name,
+			final CacheDataDescription metadata,
+			final LocalRegionFactory regionFactory,
+			final long maxEntries,
+			final long ttlMillis) {
+		this.name = name;
+		this.metadata = metadata;
+		this.regionFactory = regionFactory;
+
+		final CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder();
+		if (maxEntries > 0) {
+			builder.maximumSize(maxEntries);
+		}
+		if (ttlMillis > 0) {
+			builder.expireAfterWrite(ttlMillis, TimeUnit.MILLISECONDS);
+		}
+		this.entries = builder.build();
+		this.unlocked = CacheBuilder.newBuilder()
+				.expireAfterWrite(LocalRegionFactory.TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)
+				.build();
+	}
+
+	@Override
+	public LocalAccessStrategy buildAccessStrategy(final AccessType accessType) {
+		if (accessType == AccessType.TRANSACTIONAL) {
+			throw new CacheException("LocalRegionFactory does not support the transactional concurrency strategy (region " + name + ")");
+		}
+		return new LocalAccessStrategy(this, accessType);
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public void destroy() {
+		entries.invalidateAll();
+	}
+
+	@Override
+	public boolean contains(final Object key) {
+		return entries.getIfPresent(key) != null;
+	}
+
+	@Override
+	public long getSizeInMemory() {
+		return -1;
+	}
+
+	@Override
+	public long getElementCountInMemory() {
+		return entries.size();
+	}
+
+	@Override
+	public long getElementCountOnDisk() {
+		return 0;
+	}
+
+	@Override
+	public Map<Object, Object> toMap() {
+		return new HashMap<>(entries.asMap());
+	}
+
+	@Override
+	public long nextTimestamp() {
+		return regionFactory.nextTimestamp();
+	}
+
+	@Override
+	public int getTimeout() {
+		return LocalRegionFactory.TIMEOUT;
+	}
+
+	@Override
+	public boolean isTransactionAware() {
+		return false;
+	}
+
+	@Override
+	public CacheDataDescription getCacheDataDescription() {
+		return metadata;
+	}
+
+	// Query results and timestamps regions
+
+	@Override
+	public Object get(final SharedSessionContractImplementor session, final Object key) {
+		return entries.getIfPresent(key);
+	}
+
+	@Override
+	public void put(final SharedSessionContractImplementor session, final Object key, final Object value) {
+		entries.put(key, value);
+	}
+
+	@Override
+	public void evict(final Object key) {
+		entries.invalidate(key);
+	}
+
+	@Override
+	public void evictAll() {
+		entries.invalidateAll();
+	}
+
+	// Used by LocalAccessStrategy
+
+	/**
+	 * @return The entry of the argument key, or null if there is none or the key is locked
+	 */
+	Object read(final Object key) {
+		return locks.containsKey(key) ? null : entries.getIfPresent(key);
+	}
+
+	/**
+	 * Puts state loaded by a session which began at {@code txTimestamp}, unless it may be stale. Never replaces an
+	 * entry.
+	 *
+	 * @return True if the state was put
+	 */
+	boolean putFromLoad(final Object key, final Object value, final long txTimestamp) {
+		if (regionLocks.get() > 0 || regionUnlocked >= txTimestamp || locks.containsKey(key)) {
+			return false;
+		}
+		final Long keyUnlocked = unlocked.getIfPresent(key);
+		if (keyUnlocked != null && keyUnlocked >= txTimestamp) {
+			return false;
+		}
+		return entries.asMap().putIfAbsent(key, value) == null;
+	}
+
+	/**
+	 * Puts state written by the current session, unless the key is locked by another update.
+	 *
+	 * @return True if the state was put
+	 */
+	boolean putIfUnlocked(final Object key, final Object value) {
+		if (locks.containsKey(key)) {
+			return false;
+		}
+		entries.put(key, value);
+		return true;
+	}
+
+	void lock(final Object key) {
+		locks.merge(key, 1, Integer::sum);
+		entries.invalidate(key);
+	}
+
+	/**
+	 * Releases a lock taken by {@link #lock(Object)}. If it was the last lock of the key and {@code value} is not
+	 * null, {@code value} becomes the entry of the key.
+	 *
+	 * @return True if {@code value} was put
+	 */
+	boolean unlock(final Object key, final Object value) {
+		final boolean[] put = { false };
+		final Integer holders = locks.computeIfPresent(key, (k, count) -> {
+			unlocked.put(k, regionFactory.nextTimestamp());
+			if (count > 1) {
+				return count - 1;
+			}
+			if (value != null) {
+				entries.put(k, value);
+				put[0] = true;
+			}
+			return null;
+		});
+		if (holders == null && !put[0]) {
+			entries.invalidate(key);
+		}
+		return put[0];
+	}
+
+	void lockRegion() {
+		regionLocks.incrementAndGet();
+		entries.invalidateAll();
+	}
+
+	void unlockRegion() {
+		regionUnlocked = regionFactory.nextTimestamp();
+		regionLocks.decrementAndGet();
+		entries.invalidateAll();
+	}
+}
@@ -0,0 +1,127 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hibernate.boot.spi.SessionFactoryOptions;
+import org.hibernate.cache.spi.CacheDataDescription;
+import org.hibernate.cache.spi.CollectionRegion;
+import org.hibernate.cache.spi.EntityRegion;
+import org.hibernate.cache.spi.NaturalIdRegion;
+import org.hibernate.cache.spi.QueryResultsRegion;
+import org.hibernate.cache.spi.RegionFactory;
+import org.hibernate.cache.spi.TimestampsRegion;
+import org.hibernate.cache.spi.access.AccessType;
+import org.hibernate.cfg.AvailableSettings;
+
+/**
+ * {@link RegionFactory} which keeps every region in the memory of the current JVM, in a Guava {@code Cache} bounded by
+ * the {@code guice.persist.cache.region} settings of {@link HibernateCacheConfiguration}. Entries are evicted least
+ * recently used first once a region is full, and expire once their time to live has elapsed. Regions without settings
+ * of their own hold at most {@value #DEFAULT_MAX_ENTRIES} entries, which never expire. <br />
+ * <br />
+ *
+ * Supports the {@code READ_ONLY}, {@code NONSTRICT_READ_WRITE} and {@code READ_WRITE} concurrency strategies. Since
+ * nothing is shared between JVMs, it is only suitable for data which is never modified by another JVM, or which may be
+ * stale for as long as its time to live.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+// Hibernate 5.2 deprecates the Properties variants of start and build*Region, yet they remain the abstract methods of
+// RegionFactory which every implementation must override
+@SuppressWarnings("deprecation")
+public class LocalRegionFactory implements RegionFactory {
+	private static final long serialVersionUID = 1L;
+
+	public static final long DEFAULT_MAX_ENTRIES = 10_000;
+
+	// Timestamps are milliseconds shifted left to make room for a counter, so that they are unique and increasing
+	private static final int COUNTER_BITS = 12;
+	// How long a lock may be held, and how long loads which began before it was released are refused
+	static final int TIMEOUT_MILLIS = 60_000;
+	static final int TIMEOUT = TIMEOUT_MILLIS << COUNTER_BITS;
+	private static final AtomicLong lastTimestamp = new AtomicLong();
+
+	private Properties settings = new Properties();
+
+	@Override
+	public void start(final SessionFactoryOptions options, final Properties properties) {
+		this.settings = properties;
+	}
+
+	@Override
+	public void stop() {
+	}
+
+	@Override
+	public boolean isMinimalPutsEnabledByDefault() {
+		// Puts from loads never replace an entry anyway
+		return false;
+	}
+
+	@Override
+	public AccessType getDefaultAccessType() {
+		return AccessType.READ_WRITE;
+	}
+
+	@Override
+	public long nextTimestamp() {
+		final long now = System.currentTimeMillis() << COUNTER_BITS;
+		return lastTimestamp.updateAndGet(last -> Math.max(last + 1, now));
+	}
+
+	@Override
+	public EntityRegion buildEntityRegion(final String regionName, final Properties properties, final CacheDataDescription metadata) {
+		return boundedRegion(regionName, metadata);
+	}
+
+	@Override
+	public NaturalIdRegion buildNaturalIdRegion(final String regionName, final Properties properties, final CacheDataDescription metadata) {
+		return boundedRegion(regionName, metadata);
+	}
+
+	@Override
+	public CollectionRegion buildCollectionRegion(final String regionName, final Properties properties, final CacheDataDescription metadata) {
+		return boundedRegion(regionName, metadata);
+	}
+
+	@Override
+	public QueryResultsRegion buildQueryResultsRegion(final String regionName, final Properties properties) {
+		return boundedRegion(regionName, null);
+	}
+
+	@Override
+	public TimestampsRegion buildTimestampsRegion(final String regionName, final Properties properties) {
+		// An evicted table timestamp would make stale query results look current
+		return new LocalRegion(regionName, null, this, 0, 0);
+	}
+
+	private LocalRegion boundedRegion(final String regionName, final CacheDataDescription metadata) {
+		final String settingsName = settingsName(regionName);
+		return new LocalRegion(
+				regionName,
+				metadata,
+				this,
+				regionSetting(settingsName, HibernateCacheConfiguration.MAX_ENTRIES_SUFFIX, DEFAULT_MAX_ENTRIES),
+				regionSetting(settingsName, HibernateCacheConfiguration.TTL_MILLIS_SUFFIX, 0));
+	}
+
+	/**
+	 * @return The name under which the settings of the argument region are found: the region name, without any
+	 *         {@code hibernate.cache.region_prefix}, or {@value HibernateCacheConfiguration#DEFAULT_REGION}
+	 */
+	private String settingsName(final String regionName) {
+		final String prefix = settings.getProperty(AvailableSettings.CACHE_REGION_PREFIX);
+		final String name = prefix != null && regionName.startsWith(prefix + ".")
+				? regionName.substring(prefix.length() + 1)
+				: regionName;
+		return settings.getProperty(HibernateCacheConfiguration.REGION_PREFIX + name + HibernateCacheConfiguration.MAX_ENTRIES_SUFFIX) != null
+				? name
+				: HibernateCacheConfiguration.DEFAULT_REGION;
+	}
+
+	private long regionSetting(final String settingsName, final String suffix, final long defaultValue) {
+		final String value = settings.getProperty(HibernateCacheConfiguration.REGION_PREFIX + settingsName + suffix);
+		return value == null ? defaultValue : Long.parseLong(value.trim());
+	}
+}
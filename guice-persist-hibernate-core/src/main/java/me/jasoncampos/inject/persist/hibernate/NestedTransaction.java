@@ -0,0 +1,118 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Savepoint;
+
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.FlushEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A JDBC savepoint within the transaction of a unit of work, set for a {@link Propagation.Mode#NESTED} method. The
+ * session's pending changes are flushed before the savepoint is set, so that the savepoint separates the changes of
+ * the nested method from those of its caller. The changes of the nested method are flushed without going through
+ * {@code Session.flush()}, which marks the whole transaction rollback-only when it fails; failures of other session
+ * operations within the nested method still do, so that the enclosing transaction rolls back too. Outbox messages
+ * enqueued after the savepoint are discarded along with the database changes when it is rolled back.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+final class NestedTransaction {
+	private static final Logger logger = LoggerFactory.getLogger(NestedTransaction.class);
+
+	private final Session session;
+	private final HibernateUnitOfWork.Context context;
+	private final Savepoint savepoint;
+	private final int outboxMessages;
+
+	private NestedTransaction(
+			final Session session,
+			final HibernateUnitOfWork.Context context,
+			final Savepoint savepoint,
+			final int outboxMessages) {
+		this.session = session;
+		this.context = context;
+		this.savepoint = savepoint;
+		this.outboxMessages = outboxMessages;
+	}
+
+	/**
+	 * Sets a savepoint in the transaction of the argument unit of work, whose session must be open.
+	 */
+	static NestedTransaction begin(final Session session, final HibernateUnitOfWork.Context context) {
+		flush(session);
+		final Savepoint savepoint = session.doReturningWork(connection -> connection.setSavepoint());
+		final Outbox.Pending pending = context.getOutboxMessages();
+		return new NestedTransaction(session, context, savepoint, pending != null ? pending.size() : 0);
+	}
+
+	/**
+	 * Flushes the changes of the nested method and releases the savepoint.
+	 */
+	void commit() {
+		flushChanges();
+		session.doWork(connection -> {
+			try {
+				connection.releaseSavepoint(savepoint);
+			} catch (final SQLFeatureNotSupportedException e) {
+				// Released along with the transaction
+			}
+		});
+	}
+
+	/**
+	 * Rolls the transaction back to the savepoint and clears the session, whose persistence context may hold changes
+	 * which no longer exist in the database.
+	 */
+	void rollback() {
+		session.doWork(connection -> connection.rollback(savepoint));
+		session.clear();
+		if (session.getTransaction().getRollbackOnly()) {
+			logger.warn("A nested transaction was rolled back to its savepoint, but Hibernate has marked the enclosing "
+					+ "transaction for rollback because a session operation failed");
+		}
+		final Outbox.Pending pending = context.getOutboxMessages();
+		if (pending != null) {
+			pending.truncate(Math.min(outboxMessages, pending.size()));
+		}
+		logger.debug("Rolled back to savepoint. session={}", session);
+	}
+
+	/**
+	 * Same as {@link #rollback()}, but adds a failure to roll back to the argument failure rather than throwing it.
+	 */
+	void rollbackQuietly(final Throwable failure) {
+		try {
+			rollback();
+		} catch (final RuntimeException e) {
+			failure.addSuppressed(e);
+		}
+	}
+
+	// Fires the flush listeners directly: a failure of Session.flush() would mark the enclosing transaction rollback-only
+	private void flushChanges() {
+		if (session.getHibernateFlushMode() == FlushMode.MANUAL) {
+			return;
+		}
+		final EventSource source = (EventSource) session;
+		final FlushEvent event = new FlushEvent(source);
+		source.getFactory()
+			.getServiceRegistry()
+			.getService(EventListenerRegistry.class)
+			.getEventListenerGroup(EventType.FLUSH)
+			.listeners()
+			.forEach(listener -> listener.onFlush(event));
+	}
+
+	// Sessions in MANUAL flush mode (e.g. @ReadOnly transactions) are never flushed implicitly
+	private static void flush(final Session session) {
+		if (session.getHibernateFlushMode() != FlushMode.MANUAL) {
+			session.flush();
+		}
+	}
+}
@@ -0,0 +1,161 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.hibernate.Session;
+import org.hibernate.action.spi.AfterTransactionCompletionProcess;
+import org.hibernate.action.spi.BeforeTransactionCompletionProcess;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.event.spi.EventSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Transactional outbox. Messages enqueued by a transaction are written to the outbox table by that same transaction,
+ * just before it commits, so they are stored if and only if the transaction's other changes are. The
+ * {@link OutboxRelay} then publishes them to the {@link OutboxSink} after the fact, which neither slows the commit down
+ * nor loses messages if the process dies right after committing. <br />
+ * <br />
+ *
+ * The messages of a transaction are buffered in its {@link HibernateUnitOfWork} and inserted with JDBC batches of
+ * {@link OutboxConfiguration#getBatchSize()} statements once the session has been flushed. If the insert fails, so
+ * does the commit. Messages enqueued by a transaction which rolls back are discarded.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+@Singleton
+public class Outbox {
+	private static final Logger logger = LoggerFactory.getLogger(Outbox.class);
+
+	private final HibernateUnitOfWork unitOfWork;
+	private final OutboxConfiguration configuration;
+	private final OutboxSerializer serializer;
+	private final String insert;
+
+	// Message ids are <millis><sequence><node> in fixed width hex so that they sort in the order they were enqueued
+	private final AtomicLong sequence = new AtomicLong();
+	private final int node = ThreadLocalRandom.current().nextInt();
+
+	@Inject
+	public Outbox(final HibernateUnitOfWork unitOfWork, final OutboxConfiguration configuration, final OutboxSerializer serializer) {
+		this.unitOfWork = unitOfWork;
+		this.configuration = configuration;
+		this.serializer = serializer;
+		this.insert = "INSERT INTO " + configuration.getTable()
+				+ " (id, topic, message_key, payload, created_at, claimed_by, claimed_until) VALUES (?, ?, ?, ?, ?, NULL, 0)";
+	}
+
+	/**
+	 * @see #enqueue(String, String, Object)
+	 */
+	public OutboxMessage enqueue(final String topic, final Object event) {
+		return enqueue(topic, null, event);
+	}
+
+	/**
+	 * Enqueues a message to be written by the transaction in progress. Must be invoked within a transaction (e.g. from
+	 * a {@code @Transactional} method).
+	 *
+	 * @param topic
+	 *            Where the message should be published
+	 * @param key
+	 *            Key of the message (e.g. the id of the entity it is about), or null
+	 * @param event
+	 *            The event or entity, converted to the payload of the message by the bound {@link OutboxSerializer}
+	 * @return The enqueued message
+	 */
+	public OutboxMessage enqueue(final String topic, final String key, final Object event) {
+		Preconditions.checkNotNull(topic, "topic");
+		final HibernateUnitOfWork.Context context = unitOfWork.current();
+		Preconditions.checkState(context != null && context.isTransactionActive(), "Outbox.enqueue requires an active transaction");
+
+		final long createdAt = System.currentTimeMillis();
+		final OutboxMessage message = new OutboxMessage(
+				String.format("%012x%016x%08x", createdAt, sequence.getAndIncrement(), node),
+				topic,
+				key,
+				serializer.serialize(event),
+				createdAt);
+
+		// Begins the transaction if it was deferred until the session is used
+		final Session session = unitOfWork.get();
+		Pending pending = context.getOutboxMessages();
+		if (pending == null || pending.completed) {
+			pending = new Pending();
+			((EventSource) session).getActionQueue().registerProcess((BeforeTransactionCompletionProcess) pending);
+			((EventSource) session).getActionQueue().registerProcess((AfterTransactionCompletionProcess) pending);
+			context.setOutboxMessages(pending);
+		}
+		pending.messages.add(message);
+		return message;
+	}
+
+	/**
+	 * Messages enqueued by one transaction. Written before the transaction commits; discarded once it completes.
+	 */
+	final class Pending implements BeforeTransactionCompletionProcess, AfterTransactionCompletionProcess {
+		private final List<OutboxMessage> messages = new ArrayList<>();
+		// Also guards against running after a rollback, which leaves this process queued on the session
+		private volatile boolean completed;
+
+		/**
+		 * @return The number of messages enqueued so far
+		 */
+		int size() {
+			return messages.size();
+		}
+
+		/**
+		 * Discards the messages enqueued after the first {@code size} (e.g. by a nested transaction which rolled back).
+		 */
+		void truncate(final int size) {
+			messages.subList(size, messages.size()).clear();
+		}
+
+		@Override
+		public void doBeforeTransactionCompletion(final SessionImplementor session) {
+			if (completed || messages.isEmpty()) {
+				return;
+			}
+			session.doWork(connection -> {
+				try (PreparedStatement statement = connection.prepareStatement(insert)) {
+					int batched = 0;
+					for (final OutboxMessage message : messages) {
+						statement.setString(1, message.getId());
+						statement.setString(2, message.getTopic());
+						statement.setString(3, message.getKey());
+						statement.setString(4, message.getPayload());
+						statement.setLong(5, message.getCreatedAt());
+						statement.addBatch();
+						if (++batched == configuration.getBatchSize()) {
+							statement.executeBatch();
+							batched = 0;
+						}
+					}
+					if (batched > 0) {
+						statement.executeBatch();
+					}
+				}
+			});
+			logger.debug("Wrote {} messages to {}", messages.size(), configuration.getTable());
+		}
+
+		@Override
+		public void doAfterTransactionCompletion(final boolean success, final SharedSessionContractImplementor session) {
+			completed = true;
+			if (!success && !messages.isEmpty()) {
+				logger.debug("Discarded {} outbox messages of a transaction which rolled back", messages.size());
+			}
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Settings of the {@link Outbox} and its {@link OutboxRelay}. The outbox table is not created automatically; it must
+ * have the following columns (adjust the type of {@code payload} to the database):
+ *
+ * <pre>
+ * CREATE TABLE guice_persist_outbox (
+ *     id            VARCHAR(36)  NOT NULL PRIMARY KEY,
+ *     topic         VARCHAR(255) NOT NULL,
+ *     message_key   VARCHAR(255),
+ *     payload       CLOB,
+ *     created_at    BIGINT       NOT NULL,
+ *     claimed_by    VARCHAR(64),
+ *     claimed_until BIGINT       NOT NULL
+ * );
+ * CREATE INDEX guice_persist_outbox_claimed_by ON guice_persist_outbox (claimed_by);
+ * </pre>
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+public final class OutboxConfiguration {
+
+	public static final String DEFAULT_TABLE = "guice_persist_outbox";
+
+	public static final OutboxConfiguration DEFAULT = new OutboxConfiguration(DEFAULT_TABLE, 500, 1000, 60_000, TimeUnit.MILLISECONDS);
+
+	private final String table;
+	private final int batchSize;
+	private final long pollIntervalMillis;
+	private final long leaseMillis;
+
+	/**
+	 * @param table
+	 *            Name of the outbox table
+	 * @param batchSize
+	 *            Maximum number of messages per JDBC batch when writing, and per batch claimed by the relay
+	 * @param pollInterval
+	 *            How long the relay waits before looking for messages again once the table is drained or a batch fails
+	 * @param lease
+	 *            How long a batch claimed by a relay stays invisible to the other relays. A batch which is neither
+	 *            published nor released within its lease (e.g. because its node died) is claimed again.
+	 * @param unit
+	 *            Unit of the argument durations
+	 */
+	public OutboxConfiguration(final String table, final int batchSize, final long pollInterval, final long lease, final TimeUnit unit) {
+		Preconditions.checkArgument(table != null && !table.isEmpty(), "table must be named");
+		Preconditions.checkArgument(batchSize > 0, "batchSize must be positive");
+		Preconditions.checkArgument(pollInterval > 0, "pollInterval must be positive");
+		Preconditions.checkArgument(lease > 0, "lease must be positive");
+		this.table = table;
+		this.batchSize = batchSize;
+		this.pollIntervalMillis = unit.toMillis(pollInterval);
+		this.leaseMillis = unit.toMillis(lease);
+	}
+
+	public String getTable() {
+		return table;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public long getPollIntervalMillis() {
+		return pollIntervalMillis;
+	}
+
+	public long getLeaseMillis() {
+		return leaseMillis;
+	}
+}
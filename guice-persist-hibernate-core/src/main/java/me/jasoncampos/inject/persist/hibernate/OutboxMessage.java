@@ -0,0 +1,63 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * A message written to the outbox table by {@link Outbox#enqueue(String, String, Object)} and handed to the
+ * {@link OutboxSink} by the {@link OutboxRelay}.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+public final class OutboxMessage {
+	private final String id;
+	private final String topic;
+	private final String key;
+	private final String payload;
+	private final long createdAt;
+
+	OutboxMessage(final String id, final String topic, final String key, final String payload, final long createdAt) {
+		this.id = id;
+		this.topic = topic;
+		this.key = key;
+		this.payload = payload;
+		this.createdAt = createdAt;
+	}
+
+	/**
+	 * @return Unique id of the message. Ids of messages enqueued by the same JVM sort in the order they were enqueued.
+	 */
+	public String getId() {
+		return id;
+	}
+
+	public String getTopic() {
+		return topic;
+	}
+
+	/**
+	 * @return The key of the message (e.g. the id of the entity it is about), or null
+	 */
+	public String getKey() {
+		return key;
+	}
+
+	public String getPayload() {
+		return payload;
+	}
+
+	/**
+	 * @return Epoch millis at which the message was enqueued
+	 */
+	public long getCreatedAt() {
+		return createdAt;
+	}
+
+	@Override
+	public String toString() {
+		return MoreObjects.toStringHelper(this)
+			.add("id", id)
+			.add("topic", topic)
+			.add("key", key)
+			.toString();
+	}
+}
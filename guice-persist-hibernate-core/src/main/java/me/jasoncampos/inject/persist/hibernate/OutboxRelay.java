@@ -0,0 +1,241 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.hibernate.jdbc.ReturningWork;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Publishes the messages of the {@link Outbox} table to the {@link OutboxSink}. Once the {@link HibernatePersistService}
+ * has started, a background thread repeatedly claims a batch of up to {@link OutboxConfiguration#getBatchSize()} of the
+ * oldest unclaimed messages, publishes it and deletes it. When the table is drained (or a batch fails) the thread waits
+ * for {@link OutboxConfiguration#getPollIntervalMillis()} before looking again. <br />
+ * <br />
+ *
+ * Claiming a batch marks its rows with a token and a lease expiry in a short transaction of its own, so several nodes
+ * may relay the same table without publishing the same batch twice; the sink is invoked outside of any transaction. A
+ * batch which fails to publish is released immediately, and one whose node dies is claimed again once its lease
+ * expires. Messages are published at least once and, with a single relaying node, in the order they were enqueued.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+@Singleton
+public class OutboxRelay implements HibernateStartupListener {
+	private static final Logger logger = LoggerFactory.getLogger(OutboxRelay.class);
+
+	private final HibernatePersistService persistService;
+	private final OutboxSink sink;
+	private final OutboxConfiguration configuration;
+
+	private final String selectUnclaimed;
+	private final String claim;
+	private final String selectClaimed;
+	private final String delete;
+	private final String release;
+
+	private final LongAdder relayed = new LongAdder();
+	private final LongAdder batches = new LongAdder();
+	private final LongAdder failures = new LongAdder();
+	private volatile ScheduledExecutorService scheduler;
+
+	@Inject
+	public OutboxRelay(final HibernatePersistService persistService, final OutboxSink sink, final OutboxConfiguration configuration) {
+		this.persistService = persistService;
+		this.sink = sink;
+		this.configuration = configuration;
+
+		final String table = configuration.getTable();
+		this.selectUnclaimed = "SELECT id FROM " + table + " WHERE claimed_until < ? ORDER BY id";
+		this.claim = "UPDATE " + table + " SET claimed_by = ?, claimed_until = ? WHERE id = ? AND claimed_until < ?";
+		this.selectClaimed = "SELECT id, topic, message_key, payload, created_at FROM " + table + " WHERE claimed_by = ? ORDER BY id";
+		this.delete = "DELETE FROM " + table + " WHERE claimed_by = ?";
+		this.release = "UPDATE " + table + " SET claimed_by = NULL, claimed_until = 0 WHERE claimed_by = ?";
+	}
+
+	@Override
+	public synchronized void started(final HibernatePersistService persistService) {
+		if (scheduler == null) {
+			scheduler = Executors.newSingleThreadScheduledExecutor(
+					new ThreadFactoryBuilder().setDaemon(true).setNameFormat("hibernate-outbox-relay").build());
+			scheduler.scheduleWithFixedDelay(this::drain, 0, configuration.getPollIntervalMillis(), TimeUnit.MILLISECONDS);
+			logger.info("Outbox relay started. table={}", configuration.getTable());
+		}
+	}
+
+	@Override
+	public synchronized void stopping(final HibernatePersistService persistService) {
+		if (scheduler == null) {
+			return;
+		}
+		scheduler.shutdown();
+		try {
+			// Let the batch in flight finish so that it is deleted rather than published again
+			if (!scheduler.awaitTermination(10, TimeUnit.SECONDS)) {
+				logger.warn("Outbox relay did not stop within 10 seconds");
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		scheduler = null;
+		logger.info("Outbox relay stopped. relayed={}", relayed.sum());
+	}
+
+	/**
+	 * @return The number of messages published so far
+	 */
+	public long getRelayed() {
+		return relayed.sum();
+	}
+
+	/**
+	 * @return The number of batches published so far
+	 */
+	public long getBatches() {
+		return batches.sum();
+	}
+
+	/**
+	 * @return The number of batches which failed to publish so far
+	 */
+	public long getFailures() {
+		return failures.sum();
+	}
+
+	/**
+	 * Claims, publishes and deletes one batch.
+	 *
+	 * @return The number of messages published, or -1 if the batch could not be published
+	 */
+	int relayBatch() {
+		final String token = UUID.randomUUID().toString();
+		final List<OutboxMessage> messages = inTransaction(connection -> claim(connection, token));
+		if (messages.isEmpty()) {
+			return 0;
+		}
+
+		try {
+			sink.publish(messages);
+		} catch (final Exception e) {
+			failures.increment();
+			logger.warn("Failed to publish {} outbox messages. They will be retried.", messages.size(), e);
+			inTransaction(connection -> execute(connection, release, token));
+			return -1;
+		}
+
+		inTransaction(connection -> execute(connection, delete, token));
+		relayed.add(messages.size());
+		batches.increment();
+		logger.debug("Relayed {} outbox messages", messages.size());
+		return messages.size();
+	}
+
+	// Relays full batches back to back until the table is drained
+	private void drain() {
+		try {
+			int published;
+			do {
+				published = relayBatch();
+			} while (published == configuration.getBatchSize() && !Thread.currentThread().isInterrupted());
+		} catch (final RuntimeException e) {
+			logger.warn("Outbox relay failed", e);
+		}
+	}
+
+	private List<OutboxMessage> claim(final Connection connection, final String token) throws SQLException {
+		final long now = System.currentTimeMillis();
+		final List<String> ids = new ArrayList<>();
+		try (PreparedStatement statement = connection.prepareStatement(selectUnclaimed)) {
+			statement.setLong(1, now);
+			statement.setMaxRows(configuration.getBatchSize());
+			try (ResultSet results = statement.executeQuery()) {
+				while (results.next()) {
+					ids.add(results.getString(1));
+				}
+			}
+		}
+		if (ids.isEmpty()) {
+			return ImmutableList.of();
+		}
+
+		// Rows claimed by another relay since they were selected no longer match
+		try (PreparedStatement statement = connection.prepareStatement(claim)) {
+			for (final String id : ids) {
+				statement.setString(1, token);
+				statement.setLong(2, now + configuration.getLeaseMillis());
+				statement.setString(3, id);
+				statement.setLong(4, now);
+				statement.addBatch();
+			}
+			statement.executeBatch();
+		}
+
+		final ImmutableList.Builder<OutboxMessage> messages = ImmutableList.builder();
+		try (PreparedStatement statement = connection.prepareStatement(selectClaimed)) {
+			statement.setString(1, token);
+			try (ResultSet results = statement.executeQuery()) {
+				while (results.next()) {
+					messages.add(new OutboxMessage(
+							results.getString(1),
+							results.getString(2),
+							results.getString(3),
+							results.getString(4),
+							results.getLong(5)));
+				}
+			}
+		}
+		return messages.build();
+	}
+
+	private Integer execute(final Connection connection, final String sql, final String token) throws SQLException {
+		try (PreparedStatement statement = connection.prepareStatement(sql)) {
+			statement.setString(1, token);
+			return statement.executeUpdate();
+		}
+	}
+
+	private <T> T inTransaction(final ReturningWork<T> work) {
+		final SessionFactoryGeneration generation = persistService.acquire();
+		final Session session;
+		try {
+			session = generation.getSessionFactory().openSession();
+		} catch (final RuntimeException e) {
+			generation.release();
+			throw e;
+		}
+		try {
+			final Transaction transaction = session.beginTransaction();
+			try {
+				final T result = session.doReturningWork(work);
+				transaction.commit();
+				return result;
+			} catch (final RuntimeException e) {
+				if (transaction.isActive()) {
+					transaction.rollback();
+				}
+				throw e;
+			}
+		} finally {
+			session.close();
+			generation.release();
+		}
+	}
+}
@@ -0,0 +1,17 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+/**
+ * Converts the events (or entities) given to {@link Outbox#enqueue(String, String, Object)} into the payload stored in
+ * the outbox table. The default serializer stores {@code String.valueOf(event)}; bind an {@code OptionalBinder} for
+ * this type to store e.g. JSON instead. <br />
+ * <br />
+ *
+ * Serialization happens as the event is enqueued, so an entity is captured in the state it had at that time.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+@FunctionalInterface
+public interface OutboxSerializer {
+
+	String serialize(Object event);
+}
@@ -0,0 +1,26 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import java.util.List;
+
+/**
+ * Destination of the messages relayed from the outbox table by the {@link OutboxRelay} (e.g. a message broker). Bound
+ * with {@link HibernatePersistModule#enableOutbox(Class)}. <br />
+ * <br />
+ *
+ * Delivery is at least once: a batch whose publication fails, or whose relay dies before deleting it, is published
+ * again. Implementations should be idempotent or let consumers deduplicate by {@link OutboxMessage#getId()}.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+public interface OutboxSink {
+
+	/**
+	 * Publishes a batch of messages. Invoked by a single relay thread, outside of any transaction.
+	 *
+	 * @param messages
+	 *            The messages of the batch, ordered by id
+	 * @throws Exception
+	 *             If the batch could not be published. The whole batch is retried later.
+	 */
+	void publish(List<OutboxMessage> messages) throws Exception;
+}
@@ -0,0 +1,27 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import com.google.inject.BindingAnnotation;
+
+/**
+ * Qualifies the {@link HibernatePersistService}, {@code SessionFactory}, {@code UnitOfWork}, {@code Session},
+ * {@link HibernateEntityClassProvider} and {@link HibernatePropertyProvider} bindings of a named persistence unit. Instances for use in modules are created with
+ * {@link PersistenceUnits#named(String)}.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ * @see HibernatePersistModule#addPersistenceUnit(String, Class, Class)
+ */
+@BindingAnnotation
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.FIELD, ElementType.PARAMETER, ElementType.METHOD })
+public @interface PersistenceUnit {
+
+	/**
+	 * @return The name of the persistence unit
+	 */
+	String value();
+}
@@ -0,0 +1,40 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import javax.inject.Provider;
+
+import org.hibernate.Session;
+
+import com.google.inject.persist.UnitOfWork;
+
+/**
+ * The {@link PersistenceUnit} qualified {@code UnitOfWork} and {@code Provider<Session>} of a named persistence unit.
+ * Both are views of the one {@link HibernateUnitOfWork} of the thread, pinned to the named unit: {@link #begin()}
+ * begins the unit of work on that unit if none is in progress, and {@link #get()} returns the session the unit of work
+ * keeps for that unit. Sessions of several units may be used within one unit of work.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+class PersistenceUnitWork implements Provider<Session>, UnitOfWork {
+	private final Provider<HibernateUnitOfWork> unitOfWork;
+	private final Provider<HibernatePersistService> persistenceUnit;
+
+	PersistenceUnitWork(final Provider<HibernateUnitOfWork> unitOfWork, final Provider<HibernatePersistService> persistenceUnit) {
+		this.unitOfWork = unitOfWork;
+		this.persistenceUnit = persistenceUnit;
+	}
+
+	@Override
+	public Session get() {
+		return unitOfWork.get().get(persistenceUnit.get());
+	}
+
+	@Override
+	public void begin() {
+		unitOfWork.get().begin(persistenceUnit.get());
+	}
+
+	@Override
+	public void end() {
+		unitOfWork.get().end();
+	}
+}
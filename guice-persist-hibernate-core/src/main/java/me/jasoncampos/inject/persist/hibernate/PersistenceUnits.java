@@ -0,0 +1,58 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import java.io.Serializable;
+import java.lang.annotation.Annotation;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Creates {@link PersistenceUnit} instances, e.g. to look up the {@code SessionFactory} of a persistence unit with
+ * {@code Key.get(SessionFactory.class, PersistenceUnits.named("shard-1"))}.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+public final class PersistenceUnits {
+
+	private PersistenceUnits() {
+	}
+
+	public static PersistenceUnit named(final String name) {
+		return new PersistenceUnitImpl(name);
+	}
+
+	// Equality and hash code as specified by java.lang.annotation.Annotation
+	private static class PersistenceUnitImpl implements PersistenceUnit, Serializable {
+		private static final long serialVersionUID = 0;
+
+		private final String value;
+
+		private PersistenceUnitImpl(final String value) {
+			this.value = Preconditions.checkNotNull(value, "name");
+		}
+
+		@Override
+		public String value() {
+			return value;
+		}
+
+		@Override
+		public Class<? extends Annotation> annotationType() {
+			return PersistenceUnit.class;
+		}
+
+		@Override
+		public int hashCode() {
+			return (127 * "value".hashCode()) ^ value.hashCode();
+		}
+
+		@Override
+		public boolean equals(final Object o) {
+			return o instanceof PersistenceUnit && value.equals(((PersistenceUnit) o).value());
+		}
+
+		@Override
+		public String toString() {
+			return "@" + PersistenceUnit.class.getName() + "(value=" + value + ")";
+		}
+	}
+}
@@ -0,0 +1,53 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import com.google.inject.persist.Transactional;
+
+/**
+ * Declares how a {@link Transactional} method (or every {@code @Transactional} method of a class) relates to a
+ * transaction which is already in progress when it is invoked. Without this annotation, the method joins the enclosing
+ * transaction. The annotation has no effect on {@link Bulk} methods.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+@Documented
+@Inherited
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.METHOD, ElementType.TYPE })
+public @interface Propagation {
+
+	Mode value();
+
+	enum Mode {
+		/**
+		 * Joins the enclosing transaction, or begins one if there is none.
+		 */
+		REQUIRED,
+
+		/**
+		 * Runs within the enclosing transaction, but behind a JDBC savepoint: if the method fails with an exception
+		 * which calls for a rollback, only its own changes are rolled back and the enclosing transaction may go on
+		 * (e.g. to the next item of a batch). Changes are flushed when the savepoint is set and again when the method
+		 * completes, so that constraint violations surface within the method. Rolling back to the savepoint clears the
+		 * session: entities loaded before the method was invoked become detached and must be loaded again. A failure
+		 * of a session operation called by the method itself (rather than of its final flush) still marks the
+		 * enclosing transaction rollback-only, as Hibernate does for any such failure. Behaves like {@link #REQUIRED}
+		 * if there is no enclosing transaction.
+		 */
+		NESTED,
+
+		/**
+		 * Suspends the enclosing unit of work and runs the method in a unit of work of its own, with its own session,
+		 * connection and transaction, which commits or rolls back independently of the enclosing one. The enclosing
+		 * unit of work resumes once the method returns. The method must not wait on locks held by the suspended
+		 * transaction, which cannot complete until it returns.
+		 */
+		REQUIRES_NEW
+	}
+}
@@ -0,0 +1,60 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reloads the {@link HibernatePersistService} whenever the primary or a replica {@link HibernatePropertyProvider}
+ * reports a change to its properties, and stops the providers from watching their properties once the service stops.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+@Singleton
+class PropertyChangeReloader implements HibernateStartupListener {
+	private static final Logger logger = LoggerFactory.getLogger(PropertyChangeReloader.class);
+
+	private final HibernatePropertyProvider propertyProvider;
+	private final Set<HibernatePropertyProvider> replicaPropertyProviders;
+	private final AtomicBoolean registered = new AtomicBoolean();
+
+	@Inject
+	PropertyChangeReloader(
+			final HibernatePropertyProvider propertyProvider,
+			@Replica final Set<HibernatePropertyProvider> replicaPropertyProviders) {
+		this.propertyProvider = propertyProvider;
+		this.replicaPropertyProviders = replicaPropertyProviders;
+	}
+
+	@Override
+	public void started(final HibernatePersistService persistService) {
+		// The service may be restarted, but the providers need only be watched once
+		if (!registered.compareAndSet(false, true)) {
+			return;
+		}
+
+		final Runnable reload = () -> {
+			if (persistService.isStarted()) {
+				logger.info("Hibernate properties changed. Reloading HibernatePersistService.");
+				try {
+					persistService.reload();
+				} catch (final IllegalStateException e) {
+					// Stopped since the check
+				}
+			}
+		};
+		propertyProvider.addChangeListener(reload);
+		replicaPropertyProviders.forEach(provider -> provider.addChangeListener(reload));
+	}
+
+	@Override
+	public void stopping(final HibernatePersistService persistService) {
+		propertyProvider.stop();
+		replicaPropertyProviders.forEach(HibernatePropertyProvider::stop);
+	}
+}
@@ -0,0 +1,315 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCommitDeleteEventListener;
+import org.hibernate.event.spi.PostCommitInsertEventListener;
+import org.hibernate.event.spi.PostCommitUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSet;
+
+import me.jasoncampos.inject.persist.hibernate.integrator.AutoRegisteringListener;
+
+/**
+ * Holds the results of {@link CachedQuery} methods, in a bounded cache per method, and invalidates them as
+ * transactions commit changes to the entity types each method declares. Invalidation is driven by two
+ * {@link AutoRegisteringListener AutoRegisteringListeners} (see {@link #getListeners()}) which
+ * {@link HibernatePersistModule} registers with every {@code SessionFactory}:
+ * <ul>
+ * <li>Post-commit insert, update and delete listeners invalidate every method which declares the changed entity type
+ * (or a supertype).</li>
+ * <li>Post insert, update and delete listeners, which run as changes are flushed, mark the current unit of work as
+ * having uncommitted changes. Cached results are neither read nor written by a unit of work with uncommitted changes,
+ * since they may not reflect them.</li>
+ * </ul>
+ * A result computed while an invalidation takes place is not cached, as it may predate the invalidating commit.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+@Singleton
+public class QueryResultCache {
+
+	// Guava caches cannot hold null
+	private static final Object NULL = new Object();
+
+	private final Provider<HibernateUnitOfWork> unitOfWork;
+	private final ConcurrentMap<Method, MethodResults> methods = new ConcurrentHashMap<>();
+	private final ImmutableSet<AutoRegisteringListener> listeners = ImmutableSet.of(new CommitListener(), new FlushListener());
+
+	@Inject
+	public QueryResultCache(final Provider<HibernateUnitOfWork> unitOfWork) {
+		this.unitOfWork = unitOfWork;
+	}
+
+	/**
+	 * @return The listeners which keep this cache consistent. Must be registered with every {@code SessionFactory}
+	 *         through an {@link me.jasoncampos.inject.persist.hibernate.integrator.AutoRegisteringListenerIntegrator}.
+	 */
+	public ImmutableSet<AutoRegisteringListener> getListeners() {
+		return listeners;
+	}
+
+	/**
+	 * Invalidates the cached results of every method whose results are invalidated by the argument entity type.
+	 */
+	public void invalidate(final Class<?> entityClass) {
+		for (final MethodResults results : methods.values()) {
+			if (results.isInvalidatedBy(entityClass)) {
+				results.invalidate();
+			}
+		}
+	}
+
+	public void invalidateAll() {
+		methods.values().forEach(MethodResults::invalidate);
+	}
+
+	/**
+	 * @return The cached results of the argument method, or null if it has not been cached yet
+	 */
+	public MethodResults getResults(final Method method) {
+		return methods.get(method);
+	}
+
+	/**
+	 * @return The cached results of the argument method, created on first use
+	 */
+	MethodResults resultsOf(final Method method, final CachedQuery cachedQuery) {
+		// Plain get() first: it never locks or allocates, unlike computeIfAbsent.
+		final MethodResults results = methods.get(method);
+		return results != null ? results : methods.computeIfAbsent(method, m -> new MethodResults(cachedQuery));
+	}
+
+	/**
+	 * @return True if the current unit of work, if any, may read and write cached results
+	 */
+	boolean isUsable() {
+		final HibernateUnitOfWork.Context context = unitOfWork.get().current();
+		return context == null || !context.hasUncommittedChanges();
+	}
+
+	private void changed(final EntityPersister persister) {
+		invalidate(persister.getMappedClass());
+	}
+
+	private void flushed() {
+		final HibernateUnitOfWork.Context context = unitOfWork.get().current();
+		if (context != null) {
+			context.markWritten();
+		}
+	}
+
+	/**
+	 * The cached results of a single {@link CachedQuery} method.
+	 */
+	public static class MethodResults {
+		private final Class<?>[] invalidatedBy;
+		private final Cache<Arguments, Object> results;
+		// Incremented by every invalidation
+		private final AtomicLong generation = new AtomicLong();
+		private final LongAdder hits = new LongAdder();
+		private final LongAdder misses = new LongAdder();
+
+		private MethodResults(final CachedQuery cachedQuery) {
+			this.invalidatedBy = cachedQuery.invalidatedBy().clone();
+			this.results = CacheBuilder.newBuilder().maximumSize(cachedQuery.maxEntries()).build();
+		}
+
+		public long getHits() {
+			return hits.sum();
+		}
+
+		public long getMisses() {
+			return misses.sum();
+		}
+
+		public long getSize() {
+			return results.size();
+		}
+
+		/**
+		 * @return The cached result of the argument arguments, {@link QueryResultCache#NULL} for a null result, or
+		 *         null if there is none
+		 */
+		Object get(final Arguments arguments) {
+			final Object result = results.getIfPresent(arguments);
+			if (result != null) {
+				hits.increment();
+			} else {
+				misses.increment();
+			}
+			return result;
+		}
+
+		long generation() {
+			return generation.get();
+		}
+
+		/**
+		 * Caches the argument result unless the results were invalidated since {@code generation} was read.
+		 */
+		void put(final Arguments arguments, final Object result, final long generation) {
+			if (this.generation.get() != generation) {
+				return;
+			}
+			results.put(arguments, result == null ? NULL : result);
+			// An invalidation may have cleared the cache between the check and the put
+			if (this.generation.get() != generation) {
+				results.invalidate(arguments);
+			}
+		}
+
+		private boolean isInvalidatedBy(final Class<?> entityClass) {
+			for (final Class<?> type : invalidatedBy) {
+				if (type.isAssignableFrom(entityClass)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private void invalidate() {
+			generation.incrementAndGet();
+			results.invalidateAll();
+		}
+	}
+
+	/**
+	 * @return The argument cached result, with {@link #NULL} mapped back to null
+	 */
+	static Object unwrap(final Object result) {
+		return result == NULL ? null : result;
+	}
+
+	/**
+	 * Cache key made of the arguments of a method invocation. Array arguments are compared by content.
+	 */
+	static final class Arguments {
+		private final Object[] arguments;
+		private final int hashCode;
+
+		Arguments(final Object[] arguments) {
+			this.arguments = arguments.clone();
+			this.hashCode = Arrays.deepHashCode(this.arguments);
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			return obj instanceof Arguments && Arrays.deepEquals(arguments, ((Arguments) obj).arguments);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+	}
+
+	private class CommitListener
+			implements
+			AutoRegisteringListener,
+			PostCommitInsertEventListener,
+			PostCommitUpdateEventListener,
+			PostCommitDeleteEventListener {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public ImmutableSet<EventType<?>> getEventType() {
+			return ImmutableSet.of(EventType.POST_COMMIT_INSERT, EventType.POST_COMMIT_UPDATE, EventType.POST_COMMIT_DELETE);
+		}
+
+		@Override
+		public ImmutableSet<RegistrationType> getEventRegistrations() {
+			return ImmutableSet.of(RegistrationType.APPEND);
+		}
+
+		@Override
+		public void onPostInsert(final PostInsertEvent event) {
+			changed(event.getPersister());
+		}
+
+		@Override
+		public void onPostUpdate(final PostUpdateEvent event) {
+			changed(event.getPersister());
+		}
+
+		@Override
+		public void onPostDelete(final PostDeleteEvent event) {
+			changed(event.getPersister());
+		}
+
+		@Override
+		public void onPostInsertCommitFailed(final PostInsertEvent event) {
+		}
+
+		@Override
+		public void onPostUpdateCommitFailed(final PostUpdateEvent event) {
+		}
+
+		@Override
+		public void onPostDeleteCommitFailed(final PostDeleteEvent event) {
+		}
+
+		@Override
+		public boolean requiresPostCommitHanding(final EntityPersister persister) {
+			return true;
+		}
+	}
+
+	private class FlushListener
+			implements
+			AutoRegisteringListener,
+			PostInsertEventListener,
+			PostUpdateEventListener,
+			PostDeleteEventListener {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public ImmutableSet<EventType<?>> getEventType() {
+			return ImmutableSet.of(EventType.POST_INSERT, EventType.POST_UPDATE, EventType.POST_DELETE);
+		}
+
+		@Override
+		public ImmutableSet<RegistrationType> getEventRegistrations() {
+			return ImmutableSet.of(RegistrationType.APPEND);
+		}
+
+		@Override
+		public void onPostInsert(final PostInsertEvent event) {
+			flushed();
+		}
+
+		@Override
+		public void onPostUpdate(final PostUpdateEvent event) {
+			flushed();
+		}
+
+		@Override
+		public void onPostDelete(final PostDeleteEvent event) {
+			flushed();
+		}
+
+		@Override
+		public boolean requiresPostCommitHanding(final EntityPersister persister) {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,34 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import com.google.inject.persist.Transactional;
+
+/**
+ * Marks a {@link Transactional} method (or every {@code @Transactional} method of a class) as read-only. When the
+ * {@link HibernateTransactionInterceptor} begins a transaction for such a method, the {@code Session} is switched to
+ * read-only mode for the duration of the transaction:
+ * <ul>
+ * <li>Entities are loaded read-only ({@code Session.setDefaultReadOnly(true)}) so Hibernate keeps no dirty-checking
+ * snapshots of them</li>
+ * <li>The flush mode is set to {@code FlushMode.MANUAL}, so neither the commit nor {@link HibernateUnitOfWork#end()}
+ * flush the session</li>
+ * <li>The JDBC connection is marked read-only, allowing the driver and database to optimize accordingly</li>
+ * </ul>
+ * The annotation has no effect on a method which joins a transaction begun by an enclosing {@code @Transactional}
+ * method; the enclosing transaction decides.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+@Documented
+@Inherited
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.METHOD, ElementType.TYPE })
+public @interface ReadOnly {
+	//
+}
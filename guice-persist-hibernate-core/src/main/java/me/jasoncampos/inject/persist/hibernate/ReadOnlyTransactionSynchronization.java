@@ -0,0 +1,81 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Switches a session and its connection to read-only mode for the duration of a transaction and restores them once
+ * the transaction completes. The connection is marked read-only before the transaction begins, since JDBC drivers such
+ * as PostgreSQL's and MySQL Connector/J ignore or reject the flag while a transaction is open. Hibernate notifies
+ * synchronizations after the physical commit/rollback but before the connection is released, so the connection goes
+ * back to the pool writable.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ * @see ReadOnly
+ */
+class ReadOnlyTransactionSynchronization implements Synchronization {
+	private static final Logger logger = LoggerFactory.getLogger(ReadOnlyTransactionSynchronization.class);
+
+	private final Session session;
+	private final Connection connection;
+	private final boolean defaultReadOnly;
+	private final FlushMode flushMode;
+
+	private ReadOnlyTransactionSynchronization(final Session session, final Connection connection, final boolean defaultReadOnly, final FlushMode flushMode) {
+		this.session = session;
+		this.connection = connection;
+		this.defaultReadOnly = defaultReadOnly;
+		this.flushMode = flushMode;
+	}
+
+	/**
+	 * Applies read-only mode to the argument session and begins the argument transaction with the argument policy.
+	 * Read-only mode is undone again if the transaction fails to begin.
+	 */
+	static void begin(final Session session, final Transaction txn, final TransactionPolicy policy, final long deadline) {
+		final boolean defaultReadOnly = session.isDefaultReadOnly();
+		final FlushMode flushMode = session.getHibernateFlushMode();
+
+		session.setDefaultReadOnly(true);
+		session.setHibernateFlushMode(FlushMode.MANUAL);
+		final Connection connection = session.doReturningWork(c -> {
+			c.setReadOnly(true);
+			return c;
+		});
+
+		final ReadOnlyTransactionSynchronization synchronization = new ReadOnlyTransactionSynchronization(session, connection, defaultReadOnly, flushMode);
+		try {
+			policy.begin(txn, deadline);
+		} catch (final Throwable e) {
+			synchronization.afterCompletion(Status.STATUS_NO_TRANSACTION);
+			throw e;
+		}
+		txn.registerSynchronization(synchronization);
+	}
+
+	@Override
+	public void beforeCompletion() {
+		//
+	}
+
+	@Override
+	public void afterCompletion(final int status) {
+		try {
+			connection.setReadOnly(false);
+		} catch (final SQLException e) {
+			logger.warn("Failed to reset read-only flag of connection " + connection, e);
+		} finally {
+			session.setDefaultReadOnly(defaultReadOnly);
+			session.setHibernateFlushMode(flushMode);
+		}
+	}
+}
@@ -0,0 +1,19 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+import com.google.inject.BindingAnnotation;
+
+/**
+ * Qualifies bindings which describe read replicas of the primary database. Each {@link HibernatePropertyProvider}
+ * bound with this annotation yields one replica {@code SessionFactory}.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ * @see HibernatePersistModule#addReplica(Class)
+ */
+@BindingAnnotation
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Replica {
+	//
+}
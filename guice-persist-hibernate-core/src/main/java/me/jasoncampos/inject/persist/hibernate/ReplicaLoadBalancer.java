@@ -0,0 +1,22 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import java.util.List;
+
+/**
+ * Strategy used by {@link HibernateUnitOfWork} to choose the replica on which a read-only unit of work runs. Bind an
+ * implementation via {@code OptionalBinder.newOptionalBinder(binder(), ReplicaLoadBalancer.class).setBinding()} to
+ * override the default {@link RoundRobinReplicaLoadBalancer}.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+public interface ReplicaLoadBalancer {
+
+	/**
+	 * Implementations must be thread safe.
+	 *
+	 * @param replicas
+	 *            The non-empty list of available replicas
+	 * @return The replica to open the next read-only session on
+	 */
+	HibernateReplica select(List<HibernateReplica> replicas);
+}
@@ -0,0 +1,59 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import com.google.inject.persist.Transactional;
+
+/**
+ * Retries a {@link Transactional} method (or every {@code @Transactional} method of a class) whose transaction is
+ * rolled back because of a transient failure, such as a deadlock, a serialization failure or an optimistic lock
+ * failure. Failures are classified by the bound {@link RetryClassifier} (by default {@link SqlStateRetryClassifier}) and
+ * by {@link #retryOn()}. <br />
+ * <br />
+ *
+ * Each attempt runs in a fresh unit of work: the session of the failed attempt is discarded along with every entity it
+ * loaded. If the method runs in a unit of work begun elsewhere (e.g. by a {@code PersistFilter}), that unit of work
+ * keeps its session, which is cleared instead; entities loaded before the method was invoked are then detached. Before
+ * each retry the {@link HibernateTransactionInterceptor} sleeps for a random duration between zero and
+ * {@code backoffMillis * 2^(attempt - 1)}, capped at {@link #maxBackoffMillis()}, so that the contending transactions
+ * do not collide again. Once {@link #maxAttempts()} attempts have failed, the last failure is thrown. <br />
+ * <br />
+ *
+ * Only a method which begins the transaction is retried; a method which joins an enclosing transaction leaves the
+ * decision to the method which began it. Methods returning a {@code CompletionStage} are not retried. The method must
+ * be safe to run again, i.e. it must have no effects outside of its transaction.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+@Documented
+@Inherited
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.METHOD, ElementType.TYPE })
+public @interface Retry {
+
+	/**
+	 * @return The number of times the method is invoked at most, including the first attempt
+	 */
+	int maxAttempts() default 3;
+
+	/**
+	 * @return Upper bound of the delay before the first retry. The bound doubles with each further retry.
+	 */
+	long backoffMillis() default 20;
+
+	/**
+	 * @return Upper bound of the delay before any retry
+	 */
+	long maxBackoffMillis() default 1000;
+
+	/**
+	 * @return Further exception types which are retried, in addition to those of the {@link RetryClassifier}. Like the
+	 *         classifier, these are matched against every cause of the failure.
+	 */
+	Class<? extends Throwable>[] retryOn() default {};
+}
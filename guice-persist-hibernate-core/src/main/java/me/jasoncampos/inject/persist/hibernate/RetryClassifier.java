@@ -0,0 +1,20 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+/**
+ * Decides which failures of a {@link Retry} method are transient and worth retrying. Bind an implementation via
+ * {@code OptionalBinder.newOptionalBinder(binder(), RetryClassifier.class).setBinding()} to override the default
+ * {@link SqlStateRetryClassifier}.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+public interface RetryClassifier {
+
+	/**
+	 * Implementations must be thread safe.
+	 *
+	 * @param failure
+	 *            The failure of the transactional method or of its commit
+	 * @return True if running the method again in a new transaction may succeed
+	 */
+	boolean isRetryable(Throwable failure);
+}
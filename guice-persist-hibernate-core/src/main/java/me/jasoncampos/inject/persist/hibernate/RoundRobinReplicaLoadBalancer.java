@@ -0,0 +1,20 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cycles through the available replicas in order.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+public class RoundRobinReplicaLoadBalancer implements ReplicaLoadBalancer {
+
+	private final AtomicInteger next = new AtomicInteger();
+
+	@Override
+	public HibernateReplica select(final List<HibernateReplica> replicas) {
+		// Mask the sign bit so the index stays positive once the counter overflows
+		return replicas.get((next.getAndIncrement() & Integer.MAX_VALUE) % replicas.size());
+	}
+}
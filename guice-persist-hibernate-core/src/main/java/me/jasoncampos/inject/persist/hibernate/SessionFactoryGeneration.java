@@ -0,0 +1,94 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hibernate.SessionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@code SessionFactory} together with the number of units of work holding one of its sessions. Once a
+ * {@link HibernatePersistService#reload()} has replaced it, the generation is retired: it refuses new units of work and
+ * its {@code SessionFactory} is closed as soon as the last unit of work releases it.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+final class SessionFactoryGeneration {
+	private static final Logger logger = LoggerFactory.getLogger(SessionFactoryGeneration.class);
+
+	private final String name;
+	private final SessionFactory sessionFactory;
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final AtomicBoolean closed = new AtomicBoolean();
+	private volatile boolean retired;
+
+	SessionFactoryGeneration(final String name, final SessionFactory sessionFactory) {
+		this.name = name;
+		this.sessionFactory = sessionFactory;
+	}
+
+	SessionFactory getSessionFactory() {
+		return sessionFactory;
+	}
+
+	int getInFlight() {
+		return inFlight.get();
+	}
+
+	boolean isRetired() {
+		return retired;
+	}
+
+	boolean isClosed() {
+		return closed.get();
+	}
+
+	/**
+	 * @return False if the generation has been retired, in which case the caller must not use its
+	 *         {@code SessionFactory} and must not call {@link #release()}.
+	 */
+	boolean acquire() {
+		inFlight.incrementAndGet();
+		if (retired) {
+			release();
+			return false;
+		}
+		return true;
+	}
+
+	void release() {
+		// Whoever releases the last unit of work of a retired generation closes it
+		if (inFlight.decrementAndGet() == 0 && retired) {
+			close();
+		}
+	}
+
+	/**
+	 * Refuses new units of work and closes the {@code SessionFactory} once the units of work in flight have released
+	 * it.
+	 */
+	void retire() {
+		retired = true;
+		if (inFlight.get() == 0) {
+			close();
+		} else {
+			logger.info("Draining {} units of work from retired SessionFactory {}", inFlight.get(), name);
+		}
+	}
+
+	/**
+	 * Closes the {@code SessionFactory} regardless of the units of work in flight.
+	 */
+	void close() {
+		if (closed.compareAndSet(false, true)) {
+			sessionFactory.close();
+			logger.debug("Closed SessionFactory {}", name);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
@@ -0,0 +1,187 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Detects sessions which {@link HibernateUnitOfWork#get()} opened outside of a unit of work and which were garbage
+ * collected without being closed. Such sessions hold on to their pooled connection until the pool reclaims it, if
+ * ever. <br />
+ * <br />
+ *
+ * Each such session is handed out behind a proxy implementing the same interfaces. The detector keeps the real session
+ * and tracks the proxy with a {@code PhantomReference}. When the proxy is collected while the session is still open, the
+ * leak is counted and logged, and the real session is closed so its connection returns to the pool. If
+ * {@code recordAllocationStacks} is enabled, the log includes the stack which opened the session; recording a stack
+ * costs a {@code Throwable} per session, so it is intended for debugging.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+public class SessionLeakDetector {
+	private static final Logger logger = LoggerFactory.getLogger(SessionLeakDetector.class);
+
+	private final boolean recordAllocationStacks;
+	private final ReferenceQueue<Session> collected = new ReferenceQueue<>();
+	// Keeps the phantom references themselves reachable until their session is closed or reaped
+	private final Set<Tracked> outstanding = ConcurrentHashMap.newKeySet();
+	private final LongAdder leaked = new LongAdder();
+	private volatile Thread reaper;
+
+	/**
+	 * @param recordAllocationStacks
+	 *            True to record the stack which opened each session
+	 */
+	public SessionLeakDetector(final boolean recordAllocationStacks) {
+		this.recordAllocationStacks = recordAllocationStacks;
+	}
+
+	/**
+	 * @return The number of tracked sessions which have been opened but neither closed nor reaped
+	 */
+	public int getOutstanding() {
+		return outstanding.size();
+	}
+
+	/**
+	 * @return The number of tracked sessions which were garbage collected while still open
+	 */
+	public long getLeaked() {
+		return leaked.sum();
+	}
+
+	/**
+	 * Starts tracking the argument session.
+	 *
+	 * @return The session to hand out in place of the argument session
+	 */
+	Session track(final Session session) {
+		startReaper();
+		final Handler handler = new Handler(session);
+		final Session proxy = (Session) Proxy.newProxyInstance(
+				session.getClass().getClassLoader(),
+				interfacesOf(session.getClass()),
+				handler);
+		handler.tracked = new Tracked(proxy, collected, session, recordAllocationStacks ? new Throwable("Session opened here") : null);
+		outstanding.add(handler.tracked);
+		return proxy;
+	}
+
+	/**
+	 * Reaps the argument reference, whose proxy has been garbage collected.
+	 */
+	void reap(final Tracked tracked) {
+		if (!outstanding.remove(tracked) || !tracked.session.isOpen()) {
+			return;
+		}
+
+		leaked.increment();
+		if (tracked.allocation != null) {
+			logger.warn("Session opened outside of a UnitOfWork was garbage collected without being closed. Closing it.", tracked.allocation);
+		} else {
+			logger.warn("Session opened outside of a UnitOfWork was garbage collected without being closed. Closing it. "
+					+ "Enable allocation stack recording to find where it was opened.");
+		}
+
+		try {
+			tracked.session.close();
+		} catch (final RuntimeException e) {
+			logger.warn("Failed to close leaked session", e);
+		}
+	}
+
+	private void startReaper() {
+		if (reaper != null) {
+			return;
+		}
+		synchronized (this) {
+			if (reaper == null) {
+				final Thread thread = new Thread(this::reapForever, "hibernate-session-leak-detector");
+				thread.setDaemon(true);
+				thread.start();
+				reaper = thread;
+			}
+		}
+	}
+
+	private void reapForever() {
+		while (true) {
+			try {
+				reap((Tracked) collected.remove());
+			} catch (final InterruptedException e) {
+				return;
+			} catch (final RuntimeException e) {
+				logger.warn("Failed to reap leaked session", e);
+			}
+		}
+	}
+
+	private static Class<?>[] interfacesOf(final Class<?> type) {
+		final Set<Class<?>> interfaces = new LinkedHashSet<>();
+		for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+			for (final Class<?> i : c.getInterfaces()) {
+				interfaces.add(i);
+			}
+		}
+		return interfaces.toArray(new Class<?>[interfaces.size()]);
+	}
+
+	static class Tracked extends PhantomReference<Session> {
+		private final Session session;
+		private final Throwable allocation;
+
+		private Tracked(final Session proxy, final ReferenceQueue<Session> queue, final Session session, final Throwable allocation) {
+			super(proxy, queue);
+			this.session = session;
+			this.allocation = allocation;
+		}
+	}
+
+	// Must not reference the proxy, or the proxy could never be collected
+	private class Handler implements InvocationHandler {
+		private final Session session;
+		private Tracked tracked;
+
+		private Handler(final Session session) {
+			this.session = session;
+		}
+
+		@Override
+		public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "equals":
+				if (args != null && args.length == 1 && method.getParameterTypes()[0] == Object.class) {
+					return proxy == args[0];
+				}
+				break;
+			case "hashCode":
+				if (args == null) {
+					return System.identityHashCode(proxy);
+				}
+				break;
+			case "close":
+				if (args == null) {
+					outstanding.remove(tracked);
+				}
+				break;
+			}
+
+			try {
+				return method.invoke(session, args);
+			} catch (final InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+	}
+}
@@ -0,0 +1,31 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import com.google.inject.persist.Transactional;
+
+/**
+ * Marks the parameter of a {@link Transactional} method whose value selects the persistence unit on which the method
+ * runs. When the {@link HibernateTransactionInterceptor} begins a unit of work for the method, the argument is handed to
+ * the bound {@link ShardRouter} and the unit of work's session is opened on the {@code SessionFactory} of the chosen
+ * unit. The argument must not be null. <br />
+ * <br />
+ *
+ * A method without a shard key parameter runs on the unit chosen for the key set by
+ * {@link HibernateShards#run(Object, Runnable)}, or on the default persistence unit if no key is set. Within a unit of
+ * work begun elsewhere (e.g. by a {@code PersistFilter}), the method uses a session of that unit of work opened on the
+ * routed unit, and methods which are not routed keep using the default unit. A method which joins an enclosing
+ * transaction must route to the persistence unit of that transaction.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.PARAMETER)
+public @interface ShardKey {
+	//
+}
@@ -0,0 +1,24 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import java.util.List;
+
+/**
+ * Strategy used by {@link HibernateShards} to choose the persistence unit which holds the data of a shard key. Bind an
+ * implementation via {@code OptionalBinder.newOptionalBinder(binder(), ShardRouter.class).setBinding()} to override the
+ * default {@link HashShardRouter}.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+public interface ShardRouter {
+
+	/**
+	 * Implementations must be thread safe and must always route the same key to the same unit.
+	 *
+	 * @param shardKey
+	 *            The non-null shard key
+	 * @param persistenceUnits
+	 *            The non-empty list of persistence unit names, in the order they were added to the module
+	 * @return The name of the persistence unit holding the data of the shard key
+	 */
+	String route(Object shardKey, List<String> persistenceUnits);
+}
@@ -0,0 +1,74 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import java.sql.SQLException;
+import java.util.Set;
+
+import javax.persistence.OptimisticLockException;
+
+import org.hibernate.StaleStateException;
+import org.hibernate.exception.LockAcquisitionException;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Retries failures caused by a {@code SQLException} with one of the configured SQLStates, or by an exception of one of
+ * the configured types. The whole cause chain of the failure is examined, since Hibernate and JPA wrap the
+ * {@code SQLException} raised by the driver. <br />
+ * <br />
+ *
+ * By default, retries serialization failures and deadlocks ({@value #SERIALIZATION_FAILURE}, which MySQL, MariaDB, SQL
+ * Server and Oracle also report for deadlock victims, and PostgreSQL's {@value #DEADLOCK_DETECTED}), Hibernate's
+ * {@code LockAcquisitionException}, and optimistic lock failures ({@code OptimisticLockException} and
+ * {@code StaleStateException}).
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+public class SqlStateRetryClassifier implements RetryClassifier {
+
+	public static final String SERIALIZATION_FAILURE = "40001";
+	public static final String DEADLOCK_DETECTED = "40P01";
+
+	public static final ImmutableSet<String> DEFAULT_SQL_STATES = ImmutableSet.of(SERIALIZATION_FAILURE, DEADLOCK_DETECTED);
+	public static final ImmutableSet<Class<? extends Throwable>> DEFAULT_TYPES = ImmutableSet.of(
+			LockAcquisitionException.class,
+			OptimisticLockException.class,
+			StaleStateException.class);
+
+	private final ImmutableSet<String> sqlStates;
+	private final ImmutableSet<Class<? extends Throwable>> types;
+
+	public SqlStateRetryClassifier() {
+		this(DEFAULT_SQL_STATES, DEFAULT_TYPES);
+	}
+
+	public SqlStateRetryClassifier(final Set<String> sqlStates, final Set<Class<? extends Throwable>> types) {
+		this.sqlStates = ImmutableSet.copyOf(sqlStates);
+		this.types = ImmutableSet.copyOf(types);
+	}
+
+	@Override
+	public boolean isRetryable(final Throwable failure) {
+		for (final Throwable cause : Throwables.getCausalChain(failure)) {
+			if (cause instanceof SQLException && isRetryable((SQLException) cause)) {
+				return true;
+			}
+			for (final Class<? extends Throwable> type : types) {
+				if (type.isInstance(cause)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	// Batch failures report the failure of each statement as a chain of next exceptions
+	private boolean isRetryable(final SQLException e) {
+		for (SQLException next = e; next != null; next = next.getNextException()) {
+			if (next.getSQLState() != null && sqlStates.contains(next.getSQLState())) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,50 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import org.hibernate.boot.Metadata;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+
+/**
+ * {@link Integrator} which marks the boundary between the metadata and session factory phases of
+ * {@code Configuration.buildSessionFactory}. Hibernate integrates its integrators, on the building thread, as soon as
+ * the {@code SessionFactory} construction begins, i.e. right after the mapping metadata has been built.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+class StartupPhaseIntegrator implements Integrator {
+
+	private static final ThreadLocal<Long> metadataBuilt = new ThreadLocal<>();
+
+	/**
+	 * Starts tracking a {@code SessionFactory} build on the current thread.
+	 */
+	static void begin() {
+		metadataBuilt.remove();
+	}
+
+	/**
+	 * Stops tracking the build on the current thread.
+	 *
+	 * @return The {@code System.nanoTime()} at which metadata was built, or null if it is unknown (i.e. this integrator
+	 *         was not registered with the {@code BootstrapServiceRegistry})
+	 */
+	static Long end() {
+		final Long nanos = metadataBuilt.get();
+		metadataBuilt.remove();
+		return nanos;
+	}
+
+	@Override
+	public void integrate(
+			final Metadata metadata,
+			final SessionFactoryImplementor sessionFactory,
+			final SessionFactoryServiceRegistry serviceRegistry) {
+		metadataBuilt.set(System.nanoTime());
+	}
+
+	@Override
+	public void disintegrate(final SessionFactoryImplementor sessionFactory, final SessionFactoryServiceRegistry serviceRegistry) {
+		//
+	}
+}
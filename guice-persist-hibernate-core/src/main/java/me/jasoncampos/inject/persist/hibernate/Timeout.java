@@ -0,0 +1,39 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+import com.google.inject.persist.Transactional;
+
+/**
+ * Limits the time a {@link Transactional} method (or every {@code @Transactional} method of a class) may hold its
+ * transaction, overriding the default set with {@link HibernatePersistModule#setTransactionTimeout(long, TimeUnit)}.
+ * The deadline is counted from the invocation of the method. Every statement Hibernate issues within the transaction
+ * gets the time remaining until the deadline as its JDBC query timeout (rounded up to whole seconds), statements issued
+ * after the deadline fail, and a transaction which is still running at the deadline is rolled back rather than
+ * committed. <br />
+ * <br />
+ *
+ * The annotation has no effect on a method which joins a transaction begun by an enclosing {@code @Transactional}
+ * method; the enclosing transaction's deadline applies. A {@link Retry} method's attempts all share one deadline.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+@Documented
+@Inherited
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.METHOD, ElementType.TYPE })
+public @interface Timeout {
+
+	/**
+	 * @return The timeout, or zero for none
+	 */
+	long value();
+
+	TimeUnit unit() default TimeUnit.SECONDS;
+}
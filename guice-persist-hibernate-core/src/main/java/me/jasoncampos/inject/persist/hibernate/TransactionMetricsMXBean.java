@@ -0,0 +1,45 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+/**
+ * JMX view of the metrics recorded by {@link JmxHibernateMetrics} for a single {@code @Transactional} method. Times
+ * are in milliseconds; percentiles are accurate to within a factor of two. Flush and dirty-check counts remain zero
+ * unless {@link FlushDiagnostics} are enabled.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+public interface TransactionMetricsMXBean {
+
+	long getCommits();
+
+	long getRollbacks();
+
+	long getRetries();
+
+	double getTransactionMeanMillis();
+
+	double getTransaction99thPercentileMillis();
+
+	double getTransactionMaxMillis();
+
+	long getSessionsClosed();
+
+	double getSessionOpenMeanMillis();
+
+	double getSessionOpenMaxMillis();
+
+	double getBeginMeanMillis();
+
+	double getFlushMeanMillis();
+
+	double getFlush99thPercentileMillis();
+
+	double getCloseMeanMillis();
+
+	long getFlushes();
+
+	long getAutoFlushes();
+
+	long getDirtyCheckedEntities();
+
+	double getDirtyCheckedEntitiesPerUnitOfWork();
+}
@@ -0,0 +1,366 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.hibernate.TransactionException;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.inject.persist.Transactional;
+
+/**
+ * Immutable, pre-resolved view of the {@link Transactional} metadata which applies to an intercepted method. Policies
+ * are resolved once per method/target class pair by {@link HibernateTransactionInterceptor} so that the steady-state
+ * interceptor path performs no annotation lookups. <br />
+ * <br />
+ *
+ * A policy with a timeout (see {@link Timeout}) gives each invocation a deadline. Deadlines are {@code System.nanoTime()}
+ * instants, or {@link #NO_DEADLINE}. <br />
+ * <br />
+ *
+ * Rollback decisions are memoized per exception class. Since {@code Class.isInstance(e)} is equivalent to
+ * {@code Class.isAssignableFrom(e.getClass())}, the decision for a given exception class never changes.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+final class TransactionPolicy {
+
+	@Transactional
+	private static class Internal {
+	}
+
+	static final long NO_DEADLINE = 0;
+	private static final long ONE_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+	private final String name;
+	private final Class<? extends Exception>[] rollbackOn;
+	private final Class<? extends Exception>[] ignore;
+	private final boolean readOnly;
+	private final boolean bulk;
+	private final boolean async;
+	private final int shardKey;
+	private final Retry retry;
+	private final long timeoutNanos;
+	private final Propagation.Mode propagation;
+	private final FlushMode flushMode;
+	private final ConcurrentMap<Class<?>, Boolean> rollbackDecisions = new ConcurrentHashMap<>();
+
+	private TransactionPolicy(
+			final String name,
+			final Transactional transactional,
+			final boolean readOnly,
+			final boolean bulk,
+			final boolean async,
+			final int shardKey,
+			final Retry retry,
+			final long timeoutNanos,
+			final Propagation.Mode propagation,
+			final FlushMode flushMode) {
+		this.name = name;
+		this.rollbackOn = transactional.rollbackOn().clone();
+		this.ignore = transactional.ignore().clone();
+		this.readOnly = readOnly;
+		this.bulk = bulk;
+		this.async = async;
+		this.shardKey = shardKey;
+		this.retry = retry;
+		this.timeoutNanos = timeoutNanos;
+		this.propagation = propagation;
+		this.flushMode = flushMode;
+	}
+
+	/**
+	 * Resolves the policy for the argument method. Method level annotations take precedence over class level
+	 * annotations. If neither is present, the {@code @Transactional} defaults are used.
+	 *
+	 * @param method
+	 *            The intercepted method
+	 * @param targetClass
+	 *            The class of the object on which the method was invoked
+	 */
+	static TransactionPolicy resolve(final Method method, final Class<?> targetClass) {
+		return resolve(method, targetClass, TransactionTimeout.NONE);
+	}
+
+	/**
+	 * Resolves the policy for the argument method, applying the argument timeout unless the method declares its own.
+	 */
+	static TransactionPolicy resolve(final Method method, final Class<?> targetClass, final TransactionTimeout defaultTimeout) {
+		Transactional transactional = findAnnotation(method, targetClass, Transactional.class);
+		if (null == transactional) {
+			// If there is no transactional annotation present, use the default
+			transactional = Internal.class.getAnnotation(Transactional.class);
+		}
+		final boolean readOnly = findAnnotation(method, targetClass, ReadOnly.class) != null;
+		final boolean bulk = findAnnotation(method, targetClass, Bulk.class) != null;
+		// Methods declared to return CompletionStage or CompletableFuture; the interceptor substitutes a CompletableFuture
+		final Class<?> returnType = method.getReturnType();
+		final boolean async = CompletionStage.class.isAssignableFrom(returnType) && returnType.isAssignableFrom(CompletableFuture.class);
+		final String name = method.getDeclaringClass().getName() + "." + method.getName();
+		// A CompletionStage fails after the method has returned, by which time it is too late to retry
+		final Retry retry = async ? null : findAnnotation(method, targetClass, Retry.class);
+		if (retry != null) {
+			Preconditions.checkArgument(retry.maxAttempts() > 0, "@Retry of %s must allow at least one attempt", method);
+		}
+		final Timeout timeout = findAnnotation(method, targetClass, Timeout.class);
+		final long timeoutNanos = timeout != null ? timeout.unit().toNanos(timeout.value()) : defaultTimeout.getTimeoutNanos();
+		// Stateless sessions always join an enclosing @Bulk transaction
+		final Propagation propagation = bulk ? null : findAnnotation(method, targetClass, Propagation.class);
+		// Read-only transactions never flush
+		final FlushStrategy flushStrategy = bulk || readOnly ? null : findAnnotation(method, targetClass, FlushStrategy.class);
+		return new TransactionPolicy(
+				name,
+				transactional,
+				readOnly,
+				bulk,
+				async,
+				findShardKey(method),
+				retry,
+				timeoutNanos,
+				propagation != null ? propagation.value() : Propagation.Mode.REQUIRED,
+				flushStrategy != null ? flushStrategy.value() : null);
+	}
+
+	/**
+	 * @param now
+	 *            The {@code System.nanoTime()} at which the method was invoked
+	 * @return The deadline of an invocation of the method, or {@link #NO_DEADLINE} if it has no timeout
+	 */
+	long deadline(final long now) {
+		if (timeoutNanos <= 0) {
+			return NO_DEADLINE;
+		}
+		final long deadline = now + timeoutNanos;
+		return deadline != NO_DEADLINE ? deadline : deadline + 1;
+	}
+
+	/**
+	 * Begins a transaction on the argument session according to this policy.
+	 *
+	 * @return The begun transaction
+	 */
+	Transaction begin(final Session session, final long deadline) {
+		final Transaction txn = session.getTransaction();
+		if (readOnly) {
+			// The connection must be read-only before the transaction begins
+			ReadOnlyTransactionSynchronization.begin(session, txn, this, deadline);
+			return txn;
+		}
+		begin(txn, deadline);
+		if (flushMode != null) {
+			FlushModeSynchronization.apply(session, txn, flushMode);
+		}
+		return txn;
+	}
+
+	/**
+	 * Begins the argument transaction. If it has a deadline, Hibernate gives each statement of the transaction the
+	 * time remaining as its query timeout, and fails statements issued once no time remains.
+	 *
+	 * @throws TransactionException
+	 *             If the deadline has already passed
+	 */
+	void begin(final Transaction txn, final long deadline) {
+		if (deadline != NO_DEADLINE) {
+			final long remaining = deadline - System.nanoTime();
+			if (remaining <= 0) {
+				throw new TransactionException(name + " timed out before its transaction began");
+			}
+			// JDBC query timeouts are whole seconds
+			txn.setTimeout((int) Math.min(Integer.MAX_VALUE, (remaining + ONE_SECOND - 1) / ONE_SECOND));
+		} else if (txn.getTimeout() > 0) {
+			// Set by an earlier transaction of the session
+			txn.setTimeout(-1);
+		}
+		txn.begin();
+	}
+
+	/**
+	 * Commits the argument transaction, or rolls it back if the argument failure calls for it. Errors (i.e. failures
+	 * which are not exceptions) always roll back.
+	 *
+	 * @param failure
+	 *            The failure of the transactional method, or null if it completed normally
+	 * @param deadline
+	 *            The deadline of the transaction, past which it is rolled back even if the method completed normally
+	 * @return True if the transaction was committed
+	 * @throws TransactionException
+	 *             If the deadline passed before the method completed normally
+	 */
+	boolean complete(final Transaction txn, final Throwable failure, final long deadline) {
+		if (failure == null || (failure instanceof Exception && !rollsBackOn(failure))) {
+			if (deadline != NO_DEADLINE && deadline - System.nanoTime() <= 0) {
+				// Too late to commit: the transaction has held its locks for longer than allowed
+				txn.markRollbackOnly();
+				txn.rollback();
+				throw new TransactionException(name + " exceeded its timeout and was rolled back");
+			}
+			txn.commit();
+			return true;
+		} else {
+			txn.rollback();
+			return false;
+		}
+	}
+
+	/**
+	 * @return The name under which the transactions of this policy are measured
+	 * @see HibernateMetrics
+	 */
+	String getName() {
+		return name;
+	}
+
+	/**
+	 * @return True if the transaction should run against a read-only {@code Session}.
+	 * @see ReadOnly
+	 */
+	boolean isReadOnly() {
+		return readOnly;
+	}
+
+	/**
+	 * @return True if the transaction should run in a {@link HibernateStatelessUnitOfWork}.
+	 * @see Bulk
+	 */
+	boolean isBulk() {
+		return bulk;
+	}
+
+	/**
+	 * @return True if the transaction should complete when the {@code CompletionStage} returned by the method
+	 *         completes rather than when the method returns.
+	 */
+	boolean isAsync() {
+		return async;
+	}
+
+	/**
+	 * @return How the method relates to a transaction which is in progress when it is invoked
+	 */
+	Propagation.Mode getPropagation() {
+		return propagation;
+	}
+
+	/**
+	 * @return The flush mode of the session during the transaction, or null to leave the session's own
+	 * @see FlushStrategy
+	 */
+	FlushMode getFlushMode() {
+		return flushMode;
+	}
+
+	/**
+	 * @return The index of the method's {@link ShardKey} parameter, or -1 if it has none
+	 */
+	int getShardKeyIndex() {
+		return shardKey;
+	}
+
+	/**
+	 * @return True if the method is retried when its transaction fails
+	 * @see Retry
+	 */
+	boolean isRetried() {
+		return retry != null && retry.maxAttempts() > 1;
+	}
+
+	/**
+	 * Returns true if the method should run again after the argument failure of its given attempt. Only failures which
+	 * rolled back the transaction (i.e. not exceptions committed due to an {@code ignore} clause) are retried.
+	 *
+	 * @param attempt
+	 *            The attempt which failed, starting at 1
+	 */
+	boolean retries(final Throwable failure, final int attempt, final RetryClassifier classifier) {
+		if (!isRetried() || attempt >= retry.maxAttempts()) {
+			return false;
+		}
+		if (failure instanceof Exception && !rollsBackOn(failure)) {
+			return false;
+		}
+		if (classifier.isRetryable(failure)) {
+			return true;
+		}
+		for (final Throwable cause : Throwables.getCausalChain(failure)) {
+			for (final Class<? extends Throwable> type : retry.retryOn()) {
+				if (type.isInstance(cause)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param attempt
+	 *            The attempt which failed, starting at 1
+	 * @return A random delay before the next attempt, between zero and the exponentially growing bound of the attempt
+	 */
+	long backoffMillis(final int attempt) {
+		final long bound = Math.min(retry.maxBackoffMillis(), retry.backoffMillis() << Math.min(attempt - 1, 30));
+		return bound > 0 ? ThreadLocalRandom.current().nextLong(bound + 1) : 0;
+	}
+
+	/**
+	 * Returns true if the argument exception should cause the transaction to be rolled back. An exception matching a
+	 * {@code rollbackOn} clause is ignored (i.e. committed) if it also matches an {@code ignore} clause.
+	 *
+	 * @param e
+	 *            The exception thrown by the intercepted method
+	 */
+	boolean rollsBackOn(final Throwable e) {
+		final Class<?> exceptionClass = e.getClass();
+		Boolean rollback = rollbackDecisions.get(exceptionClass);
+		if (rollback == null) {
+			rollback = decide(exceptionClass);
+			rollbackDecisions.putIfAbsent(exceptionClass, rollback);
+		}
+		return rollback;
+	}
+
+	// Method level annotations take precedence over class level annotations.
+	private static <A extends Annotation> A findAnnotation(final Method method, final Class<?> targetClass, final Class<A> type) {
+		final A annotation = method.getAnnotation(type);
+		return annotation != null ? annotation : targetClass.getAnnotation(type);
+	}
+
+	private static int findShardKey(final Method method) {
+		final Annotation[][] parameterAnnotations = method.getParameterAnnotations();
+		int index = -1;
+		for (int i = 0; i < parameterAnnotations.length; i++) {
+			for (final Annotation annotation : parameterAnnotations[i]) {
+				if (annotation instanceof ShardKey) {
+					Preconditions.checkArgument(index < 0, "%s has more than one @ShardKey parameter", method);
+					index = i;
+				}
+			}
+		}
+		return index;
+	}
+
+	private boolean decide(final Class<?> exceptionClass) {
+		for (final Class<? extends Exception> rollbackClass : rollbackOn) {
+			if (rollbackClass.isAssignableFrom(exceptionClass)) {
+				// check ignore clauses (supercedes rollback clause)
+				for (final Class<? extends Exception> ignoreClass : ignore) {
+					if (ignoreClass.isAssignableFrom(exceptionClass)) {
+						return false;
+					}
+				}
+				return true;
+			}
+		}
+		return false;
+	}
+}
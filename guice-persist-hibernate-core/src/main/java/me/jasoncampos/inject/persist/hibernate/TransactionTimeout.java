@@ -0,0 +1,38 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Default timeout of the transactions of {@code @Transactional} methods which are not annotated with {@link Timeout}.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ * @see HibernatePersistModule#setTransactionTimeout(long, TimeUnit)
+ */
+public final class TransactionTimeout {
+
+	/**
+	 * Transactions may run for as long as they like.
+	 */
+	public static final TransactionTimeout NONE = new TransactionTimeout(0, TimeUnit.SECONDS);
+
+	private final long timeoutNanos;
+
+	/**
+	 * @param timeout
+	 *            Zero for none
+	 * @param unit
+	 */
+	public TransactionTimeout(final long timeout, final TimeUnit unit) {
+		Preconditions.checkArgument(timeout >= 0, "Transaction timeout must not be negative");
+		this.timeoutNanos = unit.toNanos(timeout);
+	}
+
+	/**
+	 * @return The timeout in nanoseconds, or zero if there is none
+	 */
+	public long getTimeoutNanos() {
+		return timeoutNanos;
+	}
+}
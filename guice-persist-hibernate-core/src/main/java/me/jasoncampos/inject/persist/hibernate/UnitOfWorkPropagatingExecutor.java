@@ -0,0 +1,31 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import java.util.concurrent.Executor;
+
+/**
+ * {@code Executor} decorator which runs each task within the {@link HibernateUnitOfWork} that was current on the
+ * submitting thread. Useful for handing work to a thread pool (e.g. via
+ * {@code CompletableFuture.supplyAsync(supplier, executor)}) from inside a {@code @Transactional} method. Tasks
+ * submitted without a current unit of work run unchanged. <br />
+ * <br />
+ *
+ * A {@code Session} is not thread safe: the submitting thread must not use the session while a propagated task runs,
+ * and propagated tasks sharing a unit of work must not run concurrently with one another.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+public class UnitOfWorkPropagatingExecutor implements Executor {
+
+	private final HibernateUnitOfWork unitOfWork;
+	private final Executor delegate;
+
+	public UnitOfWorkPropagatingExecutor(final HibernateUnitOfWork unitOfWork, final Executor delegate) {
+		this.unitOfWork = unitOfWork;
+		this.delegate = delegate;
+	}
+
+	@Override
+	public void execute(final Runnable command) {
+		delegate.execute(unitOfWork.propagate(command));
+	}
+}
@@ -0,0 +1,175 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Tracks every {@link HibernateUnitOfWork} which holds an open {@code Session} (and therefore a pooled connection).
+ * A background thread periodically checks how long each session has been open. Once a session has been open for longer
+ * than {@code warnAfter}, a warning is logged along with the {@code @Transactional} method which began the unit of work
+ * and the current stack of the thread which opened the session. If {@code cancelAfter} is set and also exceeded, the
+ * statement currently running on the session is cancelled with {@link Session#cancelQuery()}. <br />
+ * <br />
+ *
+ * The watchdog is disabled by default. Enable it with {@link HibernatePersistModule#setWatchdog(long, long, TimeUnit)}.
+ * A disabled watchdog tracks nothing and starts no thread.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+public class UnitOfWorkWatchdog {
+	private static final Logger logger = LoggerFactory.getLogger(UnitOfWorkWatchdog.class);
+
+	private static final UnitOfWorkWatchdog DISABLED = new UnitOfWorkWatchdog();
+
+	private final long warnAfterNanos;
+	private final long cancelAfterNanos;
+	private final ConcurrentMap<Object, Held> held = new ConcurrentHashMap<>();
+	private volatile ScheduledExecutorService scheduler;
+
+	private UnitOfWorkWatchdog() {
+		this.warnAfterNanos = 0;
+		this.cancelAfterNanos = 0;
+	}
+
+	/**
+	 * @param warnAfter
+	 *            How long a session may be open before a warning is logged
+	 * @param cancelAfter
+	 *            How long a session may be open before its running statement is cancelled. Zero to never cancel.
+	 * @param unit
+	 *            Unit of the argument durations
+	 */
+	public UnitOfWorkWatchdog(final long warnAfter, final long cancelAfter, final TimeUnit unit) {
+		Preconditions.checkArgument(warnAfter > 0, "warnAfter must be positive");
+		Preconditions.checkArgument(cancelAfter >= 0, "cancelAfter must not be negative");
+		this.warnAfterNanos = unit.toNanos(warnAfter);
+		this.cancelAfterNanos = unit.toNanos(cancelAfter);
+	}
+
+	/**
+	 * @return A watchdog which tracks nothing.
+	 */
+	public static UnitOfWorkWatchdog disabled() {
+		return DISABLED;
+	}
+
+	public boolean isEnabled() {
+		return warnAfterNanos > 0;
+	}
+
+	/**
+	 * @return The number of units of work currently holding an open session.
+	 */
+	public int getHeld() {
+		return held.size();
+	}
+
+	/**
+	 * Starts tracking the argument unit of work, whose session was just opened by the current thread.
+	 */
+	void track(final Object unitOfWork, final Session session, final String method) {
+		if (!isEnabled()) {
+			return;
+		}
+		startScheduler();
+		held.put(unitOfWork, new Held(session, method, Thread.currentThread(), System.nanoTime()));
+	}
+
+	void untrack(final Object unitOfWork) {
+		if (isEnabled()) {
+			held.remove(unitOfWork);
+		}
+	}
+
+	/**
+	 * Checks every held session once. Invoked periodically by the watchdog thread.
+	 */
+	synchronized void check() {
+		final long now = System.nanoTime();
+		for (final Map.Entry<Object, Held> entry : held.entrySet()) {
+			final Held unitOfWork = entry.getValue();
+			final long heldNanos = now - unitOfWork.opened;
+
+			if (!unitOfWork.warned && heldNanos > warnAfterNanos) {
+				unitOfWork.warned = true;
+				final Exception stack = new Exception("Stack of " + unitOfWork.owner.getName());
+				stack.setStackTrace(unitOfWork.owner.getStackTrace());
+				logger.warn(
+						"UnitOfWork begun by {} has held its session for {}ms on thread {}",
+						unitOfWork.method,
+						TimeUnit.NANOSECONDS.toMillis(heldNanos),
+						unitOfWork.owner.getName(),
+						stack);
+			}
+
+			if (cancelAfterNanos > 0 && !unitOfWork.cancelled && heldNanos > cancelAfterNanos) {
+				unitOfWork.cancelled = true;
+				logger.warn(
+						"Cancelling the running statement of UnitOfWork begun by {} after {}ms",
+						unitOfWork.method,
+						TimeUnit.NANOSECONDS.toMillis(heldNanos));
+				try {
+					// The only Session method which may be invoked from another thread
+					unitOfWork.session.cancelQuery();
+				} catch (final HibernateException e) {
+					logger.warn("Failed to cancel the running statement of UnitOfWork begun by {}", unitOfWork.method, e);
+				}
+			}
+		}
+	}
+
+	private void startScheduler() {
+		if (scheduler != null) {
+			return;
+		}
+		synchronized (this) {
+			if (scheduler == null) {
+				final long periodNanos = Math.max(
+						TimeUnit.MILLISECONDS.toNanos(10),
+						(cancelAfterNanos > 0 ? Math.min(warnAfterNanos, cancelAfterNanos) : warnAfterNanos) / 4);
+				final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+						new ThreadFactoryBuilder().setDaemon(true).setNameFormat("hibernate-unit-of-work-watchdog").build());
+				executor.scheduleWithFixedDelay(this::checkQuietly, periodNanos, periodNanos, TimeUnit.NANOSECONDS);
+				scheduler = executor;
+			}
+		}
+	}
+
+	// An exception would silently cancel the scheduled check
+	private void checkQuietly() {
+		try {
+			check();
+		} catch (final RuntimeException e) {
+			logger.warn("UnitOfWork watchdog check failed", e);
+		}
+	}
+
+	private static class Held {
+		private final Session session;
+		private final String method;
+		private final Thread owner;
+		private final long opened;
+		// Only accessed by check()
+		private boolean warned;
+		private boolean cancelled;
+
+		private Held(final Session session, final String method, final Thread owner, final long opened) {
+			this.session = session;
+			this.method = method;
+			this.owner = owner;
+			this.opened = opened;
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package me.jasoncampos.inject.persist.hibernate.integrator;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Settings of the asynchronous dispatch of events to an {@link AutoRegisteringListener} registered with
+ * {@link AutoRegisteringListener.RegistrationType#ASYNC}. Events are put on a bounded queue by the thread which raised
+ * them and delivered to the listener, in batches of at most {@code maxBatchSize}, by a pool of {@code workers} threads.
+ * With more than one worker, events may be delivered out of order.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+public final class AsyncDispatch {
+
+	/**
+	 * What the thread raising an event does when the queue is full.
+	 */
+	public enum Backpressure {
+		/** Wait until the queue has room */
+		BLOCK,
+		/** Discard the event */
+		DROP,
+		/** Deliver the event on the raising thread */
+		CALLER_RUNS
+	}
+
+	public static final AsyncDispatch DEFAULT = new AsyncDispatch(8192, 256, 1, Backpressure.BLOCK);
+
+	private final int queueCapacity;
+	private final int maxBatchSize;
+	private final int workers;
+	private final Backpressure backpressure;
+
+	public AsyncDispatch(final int queueCapacity, final int maxBatchSize, final int workers, final Backpressure backpressure) {
+		Preconditions.checkArgument(queueCapacity > 0, "queueCapacity must be positive");
+		Preconditions.checkArgument(maxBatchSize > 0, "maxBatchSize must be positive");
+		Preconditions.checkArgument(workers > 0, "workers must be positive");
+		this.queueCapacity = queueCapacity;
+		this.maxBatchSize = maxBatchSize;
+		this.workers = workers;
+		this.backpressure = Preconditions.checkNotNull(backpressure);
+	}
+
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	public int getMaxBatchSize() {
+		return maxBatchSize;
+	}
+
+	public int getWorkers() {
+		return workers;
+	}
+
+	public Backpressure getBackpressure() {
+		return backpressure;
+	}
+}
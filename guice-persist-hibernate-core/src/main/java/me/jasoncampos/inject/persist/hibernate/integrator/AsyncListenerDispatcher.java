@@ -0,0 +1,417 @@
+package me.jasoncampos.inject.persist.hibernate.integrator;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.hibernate.event.spi.AbstractEvent;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCommitDeleteEventListener;
+import org.hibernate.event.spi.PostCommitInsertEventListener;
+import org.hibernate.event.spi.PostCommitUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableSet;
+
+import me.jasoncampos.inject.persist.hibernate.JmxHibernateMetrics;
+
+/**
+ * Dispatches the events of a single {@link AutoRegisteringListener} asynchronously, as configured by its
+ * {@link AsyncDispatch}. {@link #adapterFor(EventType)} supplies the object registered with Hibernate in place of the
+ * listener; it only enqueues the event. Worker threads drain the queue in batches and deliver them to the listener.
+ * <br />
+ * <br />
+ *
+ * The queue is lock-free: a {@code ConcurrentLinkedQueue} bounded by a counter which producers reserve a slot from
+ * with compare-and-set. Idle workers park and are unparked by producers, so a steady stream of events never takes a
+ * lock. The dispatcher is exposed as an {@link AsyncListenerMetricsMXBean} named
+ * {@value JmxHibernateMetrics#DOMAIN}:type=AsyncListeners,listener=&lt;name&gt;,instance=&lt;instance&gt;.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+class AsyncListenerDispatcher implements AsyncListenerMetricsMXBean {
+	private static final Logger logger = LoggerFactory.getLogger(AsyncListenerDispatcher.class);
+
+	static final ImmutableSet<EventType<?>> SUPPORTED_EVENT_TYPES = ImmutableSet.of(
+			EventType.POST_INSERT,
+			EventType.POST_UPDATE,
+			EventType.POST_DELETE,
+			EventType.POST_COMMIT_INSERT,
+			EventType.POST_COMMIT_UPDATE,
+			EventType.POST_COMMIT_DELETE);
+
+	private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+	private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+	private static final long CLOSE_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(10);
+	private static final AtomicInteger instances = new AtomicInteger();
+
+	private final AutoRegisteringListener listener;
+	private final AsyncDispatch settings;
+	private final String name;
+	// Tells apart dispatchers of the same name, e.g. those of the old and new SessionFactory during a reload
+	private final int instance = instances.incrementAndGet();
+	private final Queue<Queued> queue = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger depth = new AtomicInteger();
+	private final AtomicInteger idle = new AtomicInteger();
+	private final Thread[] workers;
+	private volatile boolean running = true;
+	private ObjectName objectName;
+
+	private final LongAdder delivered = new LongAdder();
+	private final LongAdder batches = new LongAdder();
+	private final LongAdder dropped = new LongAdder();
+	private final LongAdder callerRuns = new LongAdder();
+	private final LongAdder failures = new LongAdder();
+	private final LongAdder lagged = new LongAdder();
+	private final LongAdder lagNanos = new LongAdder();
+	private final LongAccumulator maxLagNanos = new LongAccumulator(Math::max, 0);
+
+	/**
+	 * @param name
+	 *            Distinguishes the dispatcher in thread and JMX names
+	 */
+	AsyncListenerDispatcher(final AutoRegisteringListener listener, final String name) {
+		this.listener = listener;
+		this.settings = listener.getAsyncDispatch();
+		this.name = name;
+		this.workers = new Thread[settings.getWorkers()];
+		for (int i = 0; i < workers.length; i++) {
+			workers[i] = new Thread(this::work, "hibernate-async-listener-" + name + "-" + i);
+			workers[i].setDaemon(true);
+		}
+	}
+
+	void start() {
+		for (final Thread worker : workers) {
+			worker.start();
+		}
+		register();
+	}
+
+	/**
+	 * Delivers the events already queued, then stops the workers. Events raised afterwards are delivered on the raising
+	 * thread.
+	 */
+	void close() {
+		running = false;
+		for (final Thread worker : workers) {
+			LockSupport.unpark(worker);
+		}
+		final long deadline = System.currentTimeMillis() + CLOSE_TIMEOUT_MILLIS;
+		try {
+			for (final Thread worker : workers) {
+				worker.join(Math.max(1, deadline - System.currentTimeMillis()));
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (depth.get() > 0) {
+			logger.warn("{} events for listener {} were not delivered before shutdown", depth.get(), name);
+		}
+		unregister();
+	}
+
+	/**
+	 * @return The object to register with Hibernate for the argument event type, which must be one of
+	 *         {@link #SUPPORTED_EVENT_TYPES}
+	 */
+	Object adapterFor(final EventType<?> type) {
+		if (type == EventType.POST_INSERT || type == EventType.POST_COMMIT_INSERT) {
+			return new InsertAdapter();
+		} else if (type == EventType.POST_UPDATE || type == EventType.POST_COMMIT_UPDATE) {
+			return new UpdateAdapter();
+		} else if (type == EventType.POST_DELETE || type == EventType.POST_COMMIT_DELETE) {
+			return new DeleteAdapter();
+		}
+		throw new IllegalArgumentException("Event type " + type.eventName() + " cannot be dispatched asynchronously");
+	}
+
+	/**
+	 * Queues the argument event, applying the backpressure policy if the queue is full.
+	 */
+	void enqueue(final AbstractEvent event) {
+		if (!running) {
+			deliverNow(event);
+			return;
+		}
+
+		while (!tryReserve()) {
+			switch (settings.getBackpressure()) {
+			case DROP:
+				dropped.increment();
+				return;
+			case CALLER_RUNS:
+				callerRuns.increment();
+				deliverNow(event);
+				return;
+			case BLOCK:
+			default:
+				LockSupport.parkNanos(this, FULL_PARK_NANOS);
+				if (!running) {
+					deliverNow(event);
+					return;
+				}
+			}
+		}
+
+		queue.offer(new Queued(event, System.nanoTime()));
+		if (idle.get() > 0) {
+			for (final Thread worker : workers) {
+				LockSupport.unpark(worker);
+			}
+		}
+	}
+
+	private boolean tryReserve() {
+		while (true) {
+			final int current = depth.get();
+			if (current >= settings.getQueueCapacity()) {
+				return false;
+			}
+			if (depth.compareAndSet(current, current + 1)) {
+				return true;
+			}
+		}
+	}
+
+	private void work() {
+		final List<Queued> batch = new ArrayList<>(settings.getMaxBatchSize());
+		while (true) {
+			Queued queued;
+			while (batch.size() < settings.getMaxBatchSize() && (queued = queue.poll()) != null) {
+				depth.decrementAndGet();
+				batch.add(queued);
+			}
+
+			if (batch.isEmpty()) {
+				if (!running) {
+					return;
+				}
+				idle.incrementAndGet();
+				try {
+					// Re-checked after announcing idleness, so that a concurrent enqueue either is seen or unparks us
+					if (queue.isEmpty() && running) {
+						LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+					}
+				} finally {
+					idle.decrementAndGet();
+				}
+				continue;
+			}
+
+			deliver(batch);
+			batch.clear();
+		}
+	}
+
+	private void deliver(final List<Queued> batch) {
+		final long now = System.nanoTime();
+		final List<AbstractEvent> events = new ArrayList<>(batch.size());
+		for (final Queued queued : batch) {
+			final long lag = now - queued.enqueued;
+			lagged.increment();
+			lagNanos.add(lag);
+			maxLagNanos.accumulate(lag);
+			events.add(queued.event);
+		}
+
+		batches.increment();
+		if (listener instanceof BatchingListener) {
+			try {
+				((BatchingListener) listener).onBatch(events);
+				delivered.add(events.size());
+			} catch (final RuntimeException e) {
+				failures.increment();
+				logger.warn("Listener {} failed to handle a batch of {} events", name, events.size(), e);
+			}
+		} else {
+			events.forEach(this::deliverNow);
+		}
+	}
+
+	private void deliverNow(final AbstractEvent event) {
+		try {
+			if (event instanceof PostInsertEvent) {
+				((PostInsertEventListener) listener).onPostInsert((PostInsertEvent) event);
+			} else if (event instanceof PostUpdateEvent) {
+				((PostUpdateEventListener) listener).onPostUpdate((PostUpdateEvent) event);
+			} else if (event instanceof PostDeleteEvent) {
+				((PostDeleteEventListener) listener).onPostDelete((PostDeleteEvent) event);
+			}
+			delivered.increment();
+		} catch (final RuntimeException e) {
+			failures.increment();
+			logger.warn("Listener {} failed to handle {}", name, event.getClass().getSimpleName(), e);
+		}
+	}
+
+	private void register() {
+		final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+		try {
+			final ObjectName objectName = new ObjectName(
+					JmxHibernateMetrics.DOMAIN + ":type=AsyncListeners,listener=" + ObjectName.quote(name) + ",instance=" + instance);
+			mBeanServer.registerMBean(this, objectName);
+			this.objectName = objectName;
+		} catch (final JMException e) {
+			logger.warn("Failed to register metrics of async listener {} with JMX", name, e);
+		}
+	}
+
+	/**
+	 * @return The name the dispatcher is registered under with JMX, or null if it is not registered
+	 */
+	ObjectName getObjectName() {
+		return objectName;
+	}
+
+	private void unregister() {
+		if (objectName == null) {
+			return;
+		}
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+		} catch (final JMException e) {
+			logger.debug("Failed to unregister metrics of async listener {}", name, e);
+		}
+	}
+
+	@Override
+	public int getQueueDepth() {
+		return depth.get();
+	}
+
+	@Override
+	public int getQueueCapacity() {
+		return settings.getQueueCapacity();
+	}
+
+	@Override
+	public long getDelivered() {
+		return delivered.sum();
+	}
+
+	@Override
+	public long getBatches() {
+		return batches.sum();
+	}
+
+	@Override
+	public long getDropped() {
+		return dropped.sum();
+	}
+
+	@Override
+	public long getCallerRuns() {
+		return callerRuns.sum();
+	}
+
+	@Override
+	public long getFailures() {
+		return failures.sum();
+	}
+
+	@Override
+	public double getLagMeanMillis() {
+		final long count = lagged.sum();
+		return count == 0 ? 0 : lagNanos.sum() / (double) count / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	@Override
+	public double getLagMaxMillis() {
+		return maxLagNanos.get() / (double) TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	private static class Queued {
+		private final AbstractEvent event;
+		private final long enqueued;
+
+		private Queued(final AbstractEvent event, final long enqueued) {
+			this.event = event;
+			this.enqueued = enqueued;
+		}
+	}
+
+	// Registered with Hibernate in place of the listener. Serializable only because the listener interfaces are.
+
+	private class InsertAdapter implements PostCommitInsertEventListener {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public void onPostInsert(final PostInsertEvent event) {
+			enqueue(event);
+		}
+
+		@Override
+		public void onPostInsertCommitFailed(final PostInsertEvent event) {
+			if (listener instanceof PostCommitInsertEventListener) {
+				((PostCommitInsertEventListener) listener).onPostInsertCommitFailed(event);
+			}
+		}
+
+		@Override
+		public boolean requiresPostCommitHanding(final EntityPersister persister) {
+			return ((PostInsertEventListener) listener).requiresPostCommitHanding(persister);
+		}
+	}
+
+	private class UpdateAdapter implements PostCommitUpdateEventListener {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public void onPostUpdate(final PostUpdateEvent event) {
+			enqueue(event);
+		}
+
+		@Override
+		public void onPostUpdateCommitFailed(final PostUpdateEvent event) {
+			if (listener instanceof PostCommitUpdateEventListener) {
+				((PostCommitUpdateEventListener) listener).onPostUpdateCommitFailed(event);
+			}
+		}
+
+		@Override
+		public boolean requiresPostCommitHanding(final EntityPersister persister) {
+			return ((PostUpdateEventListener) listener).requiresPostCommitHanding(persister);
+		}
+	}
+
+	private class DeleteAdapter implements PostCommitDeleteEventListener {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public void onPostDelete(final PostDeleteEvent event) {
+			enqueue(event);
+		}
+
+		@Override
+		public void onPostDeleteCommitFailed(final PostDeleteEvent event) {
+			if (listener instanceof PostCommitDeleteEventListener) {
+				((PostCommitDeleteEventListener) listener).onPostDeleteCommitFailed(event);
+			}
+		}
+
+		@Override
+		public boolean requiresPostCommitHanding(final EntityPersister persister) {
+			return ((PostDeleteEventListener) listener).requiresPostCommitHanding(persister);
+		}
+	}
+}
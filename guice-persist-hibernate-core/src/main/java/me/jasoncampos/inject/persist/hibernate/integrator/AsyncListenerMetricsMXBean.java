@@ -0,0 +1,28 @@
+package me.jasoncampos.inject.persist.hibernate.integrator;
+
+/**
+ * JMX view of the queue of a listener registered with {@link AutoRegisteringListener.RegistrationType#ASYNC}. Lag is
+ * the time between an event being raised and its delivery beginning.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+public interface AsyncListenerMetricsMXBean {
+
+	int getQueueDepth();
+
+	int getQueueCapacity();
+
+	long getDelivered();
+
+	long getBatches();
+
+	long getDropped();
+
+	long getCallerRuns();
+
+	long getFailures();
+
+	double getLagMeanMillis();
+
+	double getLagMaxMillis();
+}
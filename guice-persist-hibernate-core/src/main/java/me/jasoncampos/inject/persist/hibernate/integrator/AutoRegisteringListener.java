@@ -9,7 +9,12 @@ import com.google.common.collect.ImmutableSet;
  * listeners. Listeners listen for specific {@link EventType EventTypes} and must implement specific interfaces in order
  * to listen for those events. For example, a listener which listens for {@code EventType.POST_COMMIT_INSERT} must
  * implement the {@code PostCommitInsertEventListener} interface. Failure to implement the correct interfaces is *not*
- * fatal but will result in the listener not being registered with Hibernate.
+ * fatal but will result in the listener not being registered with Hibernate. <br />
+ * <br />
+ *
+ * Listeners of post insert, update and delete events (including their post-commit variants) may opt in to
+ * {@link RegistrationType#ASYNC} dispatch, so that they no longer run on the thread which raised the event. Such a
+ * listener must not use the session of the event, which may have been closed by the time the event is delivered.
  *
  * @author Jason Campos <jcampos8782@gmail.com>
  */
@@ -17,10 +22,12 @@ public interface AutoRegisteringListener {
 
 	/**
 	 * Listeners can either replace the existing event listeners for a particular {@code EventType} or be
-	 * prepended/appended (or both) to the listener chain for the specified {@code EventType}.
+	 * prepended/appended (or both) to the listener chain for the specified {@code EventType}. {@code ASYNC} may be
+	 * combined with any of these (and implies {@code APPEND} on its own) to have events delivered asynchronously as
+	 * configured by {@link AutoRegisteringListener#getAsyncDispatch()}.
 	 */
 	public enum RegistrationType {
-		REPLACE, PREPEND, APPEND
+		REPLACE, PREPEND, APPEND, ASYNC
 	};
 
 	/**
@@ -33,4 +40,11 @@ public interface AutoRegisteringListener {
 	 *         {@code PREPEND/APPEND} are both specified, behavior is non-deterministic.
 	 */
 	ImmutableSet<RegistrationType> getEventRegistrations();
+
+	/**
+	 * @return How events are dispatched to this listener if it is registered with {@link RegistrationType#ASYNC}.
+	 */
+	default AsyncDispatch getAsyncDispatch() {
+		return AsyncDispatch.DEFAULT;
+	}
 }
@@ -1,5 +1,13 @@
 package me.jasoncampos.inject.persist.hibernate.integrator;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import javax.inject.Inject;
 
 import org.hibernate.boot.Metadata;
@@ -18,13 +26,19 @@ import me.jasoncampos.inject.persist.hibernate.integrator.AutoRegisteringListene
 /**
  * Hibernate {@link Integrator} which dynamically binds Listeners with the {@code EventType EventTypes} to which they
  * should subscribe. Any existing listener implementation may be decorated with the {@link AutoRegisteringListener}
- * in order to utilize auto-registration.
+ * in order to utilize auto-registration. <br />
+ * <br />
+ *
+ * Listeners registered with {@link RegistrationType#ASYNC} are registered through an {@link AsyncListenerDispatcher},
+ * whose worker threads are stopped when the {@code SessionFactory} closes.
  *
  * @author Jason Campos <jcampos8782@gmail.com>
  */
 public class AutoRegisteringListenerIntegrator implements Integrator {
 	private static final Logger logger = LoggerFactory.getLogger(AutoRegisteringListenerIntegrator.class);
 	private final ImmutableSet<? extends AutoRegisteringListener> listeners;
+	// The integrator may integrate several SessionFactory instances (e.g. replicas) sharing a bootstrap registry
+	private final Map<SessionFactoryImplementor, List<AsyncListenerDispatcher>> dispatchers = Collections.synchronizedMap(new IdentityHashMap<>());
 
 	@Inject
 	public AutoRegisteringListenerIntegrator(final ImmutableSet<? extends AutoRegisteringListener> listeners) {
@@ -37,27 +51,69 @@ public class AutoRegisteringListenerIntegrator implements Integrator {
 			final SessionFactoryImplementor sessionFactory,
 			final SessionFactoryServiceRegistry serviceRegistry) {
 		final EventListenerRegistry eventListenerRegistry = serviceRegistry.getService(EventListenerRegistry.class);
+		final List<AsyncListenerDispatcher> started = new ArrayList<>();
 		for (final AutoRegisteringListener listener : listeners) {
-			listener.getEventType().stream().forEach(type -> doRegister(eventListenerRegistry, type, listener));
+			if (listener.getEventRegistrations().contains(RegistrationType.ASYNC)) {
+				final AsyncListenerDispatcher dispatcher = new AsyncListenerDispatcher(listener, dispatcherName(listener, sessionFactory));
+				listener.getEventType().stream().forEach(type -> doRegisterAsync(eventListenerRegistry, type, listener, dispatcher));
+				dispatcher.start();
+				started.add(dispatcher);
+			} else {
+				listener.getEventType().stream().forEach(type -> doRegister(eventListenerRegistry, type, listener, listener));
+			}
+		}
+		if (!started.isEmpty()) {
+			dispatchers.put(sessionFactory, started);
 		}
 	}
 
 	@Override
 	public void disintegrate(final SessionFactoryImplementor sessionFactory, final SessionFactoryServiceRegistry serviceRegistry) {
-		//
+		final List<AsyncListenerDispatcher> started = dispatchers.remove(sessionFactory);
+		if (started != null) {
+			started.forEach(AsyncListenerDispatcher::close);
+		}
 	}
 
-	private <T> void doRegister(final EventListenerRegistry registry, final EventType<T> type, final AutoRegisteringListener listener) {
-		for (final RegistrationType registrationType : listener.getEventRegistrations()) {
+	private <T> void doRegisterAsync(
+			final EventListenerRegistry registry,
+			final EventType<T> type,
+			final AutoRegisteringListener listener,
+			final AsyncListenerDispatcher dispatcher) {
+		if (!type.baseListenerInterface().isInstance(listener)) {
+			logFailure(type, listener);
+		} else if (!AsyncListenerDispatcher.SUPPORTED_EVENT_TYPES.contains(type)) {
+			logger.warn(String.format("Listener %s cannot receive %s events asynchronously. Registering it synchronously.", listener.getClass(), type.eventName()));
+			doRegister(registry, type, listener, listener);
+		} else {
+			doRegister(registry, type, listener, dispatcher.adapterFor(type));
+		}
+	}
+
+	/**
+	 * Registers {@code registered}, which is either the argument listener or an adapter dispatching to it, as the
+	 * registration types of the argument listener specify.
+	 */
+	private <T> void doRegister(
+			final EventListenerRegistry registry,
+			final EventType<T> type,
+			final AutoRegisteringListener listener,
+			final Object registered) {
+		final Set<RegistrationType> registrationTypes = EnumSet.copyOf(listener.getEventRegistrations());
+		if (registrationTypes.remove(RegistrationType.ASYNC) && registrationTypes.isEmpty()) {
+			registrationTypes.add(RegistrationType.APPEND);
+		}
+
+		for (final RegistrationType registrationType : registrationTypes) {
 			switch (registrationType) {
 			case REPLACE:
-				replaceListener(registry, type, listener);
+				replaceListener(registry, type, listener, registered);
 				break;
 			case APPEND:
-				appendListener(registry, type, listener);
+				appendListener(registry, type, listener, registered);
 				break;
 			case PREPEND:
-				prependListener(registry, type, listener);
+				prependListener(registry, type, listener, registered);
 				break;
 			default:
 				throw new IllegalArgumentException("Unknown registration type " + registrationType.toString());
@@ -66,35 +122,54 @@ public class AutoRegisteringListenerIntegrator implements Integrator {
 	}
 
 	@SuppressWarnings("unchecked")
-	private <T> void replaceListener(final EventListenerRegistry registry, final EventType<T> type, final AutoRegisteringListener listener) {
+	private <T> void replaceListener(
+			final EventListenerRegistry registry,
+			final EventType<T> type,
+			final AutoRegisteringListener listener,
+			final Object registered) {
 		try {
 			logger.debug(String.format("Registering listener %s: %s", type.eventName(), listener.getClass()));
-			registry.setListeners(type, (T) listener);
+			registry.setListeners(type, (T) registered);
 		} catch (final ClassCastException e) {
 			logFailure(type, listener);
 		}
 	}
 
 	@SuppressWarnings("unchecked")
-	private <T> void appendListener(final EventListenerRegistry registry, final EventType<T> type, final AutoRegisteringListener listener) {
+	private <T> void appendListener(
+			final EventListenerRegistry registry,
+			final EventType<T> type,
+			final AutoRegisteringListener listener,
+			final Object registered) {
 		try {
 			logger.debug(String.format("Registering listener %s: %s", type.eventName(), listener.getClass()));
-			registry.appendListeners(type, (T) listener);
+			registry.appendListeners(type, (T) registered);
 		} catch (final ClassCastException e) {
 			logFailure(type, listener);
 		}
 	}
 
 	@SuppressWarnings("unchecked")
-	private <T> void prependListener(final EventListenerRegistry registry, final EventType<T> type, final AutoRegisteringListener listener) {
+	private <T> void prependListener(
+			final EventListenerRegistry registry,
+			final EventType<T> type,
+			final AutoRegisteringListener listener,
+			final Object registered) {
 		try {
 			logger.debug(String.format("Registering listener %s: %s", type.eventName(), listener.getClass()));
-			registry.prependListeners(type, (T) listener);
+			registry.prependListeners(type, (T) registered);
 		} catch (final ClassCastException e) {
 			logFailure(type, listener);
 		}
 	}
 
+	private static String dispatcherName(final AutoRegisteringListener listener, final SessionFactoryImplementor sessionFactory) {
+		final String factory = sessionFactory == null || sessionFactory.getName() == null
+				? Integer.toHexString(System.identityHashCode(sessionFactory))
+				: sessionFactory.getName();
+		return listener.getClass().getName() + "@" + factory;
+	}
+
 	private void logFailure(final EventType<?> type, final AutoRegisteringListener listener) {
 		logger.warn(String
 				.format("Failed to register event listener %s for event type %s. Listener does not implement required interface %s.",
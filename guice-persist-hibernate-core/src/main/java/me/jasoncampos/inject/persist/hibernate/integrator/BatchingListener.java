@@ -0,0 +1,22 @@
+package me.jasoncampos.inject.persist.hibernate.integrator;
+
+import java.util.List;
+
+import org.hibernate.event.spi.AbstractEvent;
+
+/**
+ * Optionally implemented by an {@link AutoRegisteringListener} registered with
+ * {@link AutoRegisteringListener.RegistrationType#ASYNC} to receive each batch drained from its queue at once (e.g. to
+ * index a batch of entities with a single request) rather than one event at a time.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+public interface BatchingListener {
+
+	/**
+	 * @param events
+	 *            The events of the batch, in the order they were raised. {@code PostInsertEvent},
+	 *            {@code PostUpdateEvent} or {@code PostDeleteEvent} instances.
+	 */
+	void onBatch(List<AbstractEvent> events);
+}
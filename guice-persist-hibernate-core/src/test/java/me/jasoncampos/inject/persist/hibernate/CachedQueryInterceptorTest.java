@@ -0,0 +1,170 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.engine.spi.ActionQueue;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import me.jasoncampos.inject.persist.hibernate.integrator.AutoRegisteringListener;
+
+@RunWith(MockitoJUnitRunner.class)
+public class CachedQueryInterceptorTest {
+
+	@Mock
+	private HibernatePersistService persistService;
+
+	@Mock
+	private MethodInvocation invocation;
+
+	@Mock
+	private EntityPersister persister;
+
+	private HibernateUnitOfWork unitOfWork;
+	private QueryResultCache cache;
+	private CachedQueryInterceptor interceptor;
+	private final AtomicInteger queries = new AtomicInteger();
+
+	@Before
+	public void beforeEach() throws Throwable {
+		unitOfWork = UnitOfWorkBuilder.of(persistService).build();
+		cache = new QueryResultCache(() -> unitOfWork);
+		interceptor = new CachedQueryInterceptor();
+		interceptor.cache = cache;
+
+		final Method method = Repository.class.getMethod("findByName", String.class);
+		when(invocation.getMethod()).thenReturn(method);
+		when(invocation.getArguments()).thenReturn(new Object[] { "jason" });
+		doAnswer(answer -> "result " + queries.incrementAndGet()).when(invocation).proceed();
+	}
+
+	@Test
+	public void itServesRepeatedInvocationsFromTheCache() throws Throwable {
+		assertEquals("result 1", interceptor.invoke(invocation));
+		assertEquals("result 1", interceptor.invoke(invocation));
+
+		when(invocation.getArguments()).thenReturn(new Object[] { "other" });
+		assertEquals("result 2", interceptor.invoke(invocation));
+		verify(invocation, times(2)).proceed();
+	}
+
+	@Test
+	public void itCachesNullResults() throws Throwable {
+		doAnswer(answer -> {
+			queries.incrementAndGet();
+			return null;
+		}).when(invocation).proceed();
+
+		assertNull(interceptor.invoke(invocation));
+		assertNull(interceptor.invoke(invocation));
+		assertEquals(1, queries.get());
+	}
+
+	@Test
+	public void committedChangesOfADeclaredTypeInvalidateResults() throws Throwable {
+		interceptor.invoke(invocation);
+
+		when(persister.getMappedClass()).thenReturn(String.class);
+		commitListener().onPostInsert(new PostInsertEvent(null, null, null, persister, null));
+		assertEquals("result 1", interceptor.invoke(invocation));
+
+		// Subclasses of a declared type count as well
+		when(persister.getMappedClass()).thenReturn(Manager.class);
+		commitListener().onPostInsert(new PostInsertEvent(null, null, null, persister, null));
+		assertEquals("result 2", interceptor.invoke(invocation));
+	}
+
+	@Test
+	public void resultsComputedDuringAnInvalidationAreNotCached() throws Throwable {
+		doAnswer(answer -> {
+			cache.invalidate(Employee.class);
+			return "result " + queries.incrementAndGet();
+		}).when(invocation).proceed();
+
+		assertEquals("result 1", interceptor.invoke(invocation));
+		assertEquals("result 2", interceptor.invoke(invocation));
+	}
+
+	@Test
+	public void unitsOfWorkWithUncommittedChangesBypassTheCache() throws Throwable {
+		interceptor.invoke(invocation);
+
+		unitOfWork.begin();
+		try {
+			unitOfWork.current().markWritten();
+			assertEquals("result 2", interceptor.invoke(invocation));
+		} finally {
+			unitOfWork.end();
+		}
+
+		assertEquals("result 1", interceptor.invoke(invocation));
+	}
+
+	@Test
+	public void aTransactionWithUnflushedChangesBypassesTheCache() throws Throwable {
+		final SessionFactory sessionFactory = mock(SessionFactory.class);
+		final Session session = mock(Session.class, withSettings().extraInterfaces(EventSource.class));
+		final Transaction transaction = mock(Transaction.class);
+		final ActionQueue actionQueue = mock(ActionQueue.class);
+		when(persistService.acquire()).thenReturn(new SessionFactoryGeneration("primary", sessionFactory));
+		when(sessionFactory.openSession()).thenReturn(session);
+		when(session.isOpen()).thenReturn(true);
+		when(session.getTransaction()).thenReturn(transaction);
+		when(transaction.isActive()).thenReturn(true);
+		when(((EventSource) session).getActionQueue()).thenReturn(actionQueue);
+		interceptor.invoke(invocation);
+
+		unitOfWork.begin();
+		try {
+			assertEquals("result 1", interceptor.invoke(invocation));
+			// session.persist(employee), which is not flushed until the query runs
+			when(actionQueue.hasAnyQueuedActions()).thenReturn(true);
+			unitOfWork.get();
+			assertEquals("result 2", interceptor.invoke(invocation));
+		} finally {
+			unitOfWork.end();
+		}
+	}
+
+	private PostInsertEventListener commitListener() {
+		for (final AutoRegisteringListener listener : cache.getListeners()) {
+			if (listener.getEventType().contains(EventType.POST_COMMIT_INSERT)) {
+				return (PostInsertEventListener) listener;
+			}
+		}
+		throw new AssertionError("No commit listener");
+	}
+
+	public static class Employee {
+	}
+
+	public static class Manager extends Employee {
+	}
+
+	public interface Repository {
+		@CachedQuery(invalidatedBy = Employee.class)
+		String findByName(String name);
+	}
+}
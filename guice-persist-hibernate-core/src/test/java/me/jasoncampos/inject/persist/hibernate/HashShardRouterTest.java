@@ -0,0 +1,39 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class HashShardRouterTest {
+
+	private final HashShardRouter router = new HashShardRouter();
+
+	@Test
+	public void itSpreadsSequentialKeysAcrossEveryUnit() {
+		final List<String> units = ImmutableList.of("shard-0", "shard-1", "shard-2", "shard-3");
+		final Map<String, Integer> counts = new HashMap<>();
+		for (long customer = 0; customer < 10_000; customer++) {
+			counts.merge(router.route(customer, units), 1, Integer::sum);
+		}
+
+		assertEquals(4, counts.size());
+		counts.values().forEach(count -> assertTrue(count > 2_000 && count < 3_000));
+	}
+
+	@Test
+	public void appendingAUnitOnlyMovesKeysToTheNewUnit() {
+		final List<String> before = ImmutableList.of("shard-0", "shard-1", "shard-2");
+		final List<String> after = ImmutableList.of("shard-0", "shard-1", "shard-2", "shard-3");
+		for (long customer = 0; customer < 10_000; customer++) {
+			final String moved = router.route(customer, after);
+			assertTrue(moved.equals("shard-3") || moved.equals(router.route(customer, before)));
+		}
+	}
+}
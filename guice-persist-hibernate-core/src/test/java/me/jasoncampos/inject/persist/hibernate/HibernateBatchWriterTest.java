@@ -0,0 +1,65 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.hibernate.Session;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class HibernateBatchWriterTest {
+
+	@Mock
+	private Session session;
+
+	@Before
+	public void beforeEach() {
+		when(session.getJdbcBatchSize()).thenReturn(null);
+	}
+
+	@Test
+	public void itFlushesAndClearsEveryBatch() {
+		try (final HibernateBatchWriter writer = new HibernateBatchWriter(session, 2)) {
+			verify(session).setJdbcBatchSize(2);
+			for (int i = 0; i < 5; i++) {
+				writer.persist(new Object());
+			}
+			assertEquals(4, writer.getRowsWritten());
+			assertEquals(2, writer.getBatchesSent());
+
+			writer.close();
+			assertEquals(5, writer.getRowsWritten());
+			assertEquals(3, writer.getBatchesSent());
+		}
+
+		verify(session, times(3)).flush();
+		verify(session, times(3)).clear();
+		verify(session).setJdbcBatchSize(null);
+	}
+
+	@Test
+	public void itCountsMergedEntities() {
+		final Object entity = new Object();
+		when(session.merge(entity)).thenReturn(entity);
+
+		final HibernateBatchWriter writer = new HibernateBatchWriter(session, 10);
+		assertEquals(entity, writer.merge(entity));
+		writer.close();
+
+		assertEquals(1, writer.getRowsWritten());
+		assertEquals(1, writer.getBatchesSent());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void itRejectsWritesAfterClose() {
+		final HibernateBatchWriter writer = new HibernateBatchWriter(session, 10);
+		writer.close();
+		writer.persist(new Object());
+	}
+}
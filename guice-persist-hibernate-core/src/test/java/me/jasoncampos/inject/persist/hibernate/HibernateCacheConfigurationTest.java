@@ -0,0 +1,88 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.boot.CacheRegionDefinition;
+import org.hibernate.boot.CacheRegionDefinition.CacheRegionType;
+import org.hibernate.boot.MetadataBuilder;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.cache.spi.access.AccessType;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class HibernateCacheConfigurationTest {
+
+	@Mock
+	private MetadataBuilder metadataBuilder;
+
+	@Mock
+	private StandardServiceRegistry serviceRegistry;
+
+	@Mock
+	private ConfigurationService configurationService;
+
+	@Test
+	public void noneLeavesTheCacheSettingsUntouched() {
+		assertTrue(HibernateCacheConfiguration.builder().build().getProperties().isEmpty());
+	}
+
+	@Test
+	public void itEnablesTheLocalRegionFactoryAndSizesRegions() {
+		final Map<String, String> properties = HibernateCacheConfiguration.builder()
+				.entity(Country.class, AccessType.READ_ONLY)
+				.region(Country.class.getName(), 500, 10, TimeUnit.MINUTES)
+				.build()
+				.getProperties();
+
+		assertEquals("true", properties.get(AvailableSettings.USE_SECOND_LEVEL_CACHE));
+		assertEquals("false", properties.get(AvailableSettings.USE_QUERY_CACHE));
+		assertEquals(LocalRegionFactory.class.getName(), properties.get(AvailableSettings.CACHE_REGION_FACTORY));
+		assertEquals("500", properties.get("guice.persist.cache.region." + Country.class.getName() + ".max_entries"));
+		assertEquals("600000", properties.get("guice.persist.cache.region." + Country.class.getName() + ".ttl_millis"));
+	}
+
+	@Test
+	public void itDefinesCacheRegionsForEntitiesAndCollections() {
+		final Map<String, String> properties = HibernateCacheConfiguration.builder()
+				.entity(Country.class, AccessType.READ_ONLY)
+				.collection(Country.class, "regions", AccessType.NONSTRICT_READ_WRITE, "geography")
+				.build()
+				.getProperties();
+		when(serviceRegistry.getService(ConfigurationService.class)).thenReturn(configurationService);
+		when(configurationService.getSettings()).thenReturn(properties);
+
+		new CacheDefinitionInitializer().contribute(metadataBuilder, serviceRegistry);
+
+		final ArgumentCaptor<CacheRegionDefinition> definitions = ArgumentCaptor.forClass(CacheRegionDefinition.class);
+		verify(metadataBuilder, times(2)).applyCacheRegionDefinition(definitions.capture());
+		final List<CacheRegionDefinition> applied = definitions.getAllValues();
+
+		assertEquals(CacheRegionType.ENTITY, applied.get(0).getRegionType());
+		assertEquals(Country.class.getName(), applied.get(0).getRole());
+		assertEquals("read-only", applied.get(0).getUsage());
+		assertNull(applied.get(0).getRegion());
+
+		assertEquals(CacheRegionType.COLLECTION, applied.get(1).getRegionType());
+		assertEquals(Country.class.getName() + ".regions", applied.get(1).getRole());
+		assertEquals("nonstrict-read-write", applied.get(1).getUsage());
+		assertEquals("geography", applied.get(1).getRegion());
+	}
+
+	private static class Country {
+	}
+}
@@ -1,6 +1,10 @@
 package me.jasoncampos.inject.persist.hibernate;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 
 import java.util.Arrays;
 import java.util.Collections;
@@ -10,6 +14,7 @@ import java.util.Map;
 import javax.persistence.Entity;
 import javax.persistence.Id;
 
+import org.hibernate.Session;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -17,6 +22,7 @@ import com.google.inject.AbstractModule;
 import com.google.inject.CreationException;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
+import com.google.inject.Key;
 import com.google.inject.persist.PersistService;
 import com.google.inject.persist.UnitOfWork;
 
@@ -65,6 +71,29 @@ public class HibernatePersistModuleTest {
 		assertEquals(unitOfWork, hibernateUnitOfWork);
 	}
 
+	@Test
+	public void itBindsEachPersistenceUnitUnderItsName() {
+		final Injector sharded = Guice.createInjector(new HibernatePersistModule(TestEntityProvider.class, TestPropertyProvider.class)
+			.addPersistenceUnit("shard-0", TestEntityProvider.class, TestPropertyProvider.class)
+			.addPersistenceUnit("shard-1", TestEntityProvider.class, TestPropertyProvider.class));
+
+		final HibernatePersistService first = sharded.getInstance(Key.get(HibernatePersistService.class, PersistenceUnits.named("shard-0")));
+		final HibernateShards shards = sharded.getInstance(HibernateShards.class);
+		assertEquals("shard-0", first.getName());
+		assertNotSame(first, sharded.getInstance(HibernatePersistService.class));
+		assertSame(first, shards.getPersistenceUnit("shard-0"));
+		assertEquals(Arrays.asList("shard-0", "shard-1"), shards.getPersistenceUnits());
+
+		// Qualified units of work pin the one HibernateUnitOfWork to their unit
+		final UnitOfWork unitOfWork = sharded.getInstance(Key.get(UnitOfWork.class, PersistenceUnits.named("shard-1")));
+		final HibernateUnitOfWork hibernateUnitOfWork = sharded.getInstance(HibernateUnitOfWork.class);
+		unitOfWork.begin();
+		assertSame(shards.getPersistenceUnit("shard-1"), hibernateUnitOfWork.current().getPersistenceUnit());
+		assertNotNull(sharded.getProvider(Key.get(Session.class, PersistenceUnits.named("shard-1"))));
+		unitOfWork.end();
+		assertFalse(hibernateUnitOfWork.isWorking());
+	}
+
 	@Entity
 	private static class TestEntity {
 		@Id
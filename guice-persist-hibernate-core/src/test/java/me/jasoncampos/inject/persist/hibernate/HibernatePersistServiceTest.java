@@ -0,0 +1,241 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Provider;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import org.hibernate.HibernateException;
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.registry.BootstrapServiceRegistry;
+import org.hibernate.boot.registry.BootstrapServiceRegistryBuilder;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.stat.Statistics;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import me.jasoncampos.inject.persist.hibernate.HibernateStartupListener.Phase;
+
+@RunWith(MockitoJUnitRunner.class)
+public class HibernatePersistServiceTest {
+
+	@Mock
+	private Configuration configuration;
+
+	@Mock
+	private SessionFactory sessionFactory;
+
+	@Mock
+	private HibernateStartupListener listener;
+
+	private final Properties properties = new Properties();
+	private HibernatePersistService persistService;
+
+	@Before
+	public void beforeEach() {
+		final BootstrapServiceRegistry bootstrapServiceRegistry = new BootstrapServiceRegistryBuilder().build();
+		when(configuration.getProperties()).thenReturn(properties);
+		when(configuration.getProperty(HibernatePersistService.START_TIMEOUT_PROPERTY)).thenAnswer(
+				answer -> properties.getProperty(HibernatePersistService.START_TIMEOUT_PROPERTY));
+		persistService = new HibernatePersistService(
+				bootstrapServiceRegistry,
+				configuration,
+				ImmutableList.of(),
+				ImmutableSet.of(listener));
+	}
+
+	@Test
+	public void itReportsPhaseTimingsAndReadiness() {
+		when(configuration.buildSessionFactory(any(ServiceRegistry.class))).thenReturn(sessionFactory);
+
+		persistService.start();
+
+		assertSame(sessionFactory, persistService.get());
+		verify(listener).phaseCompleted(eq("primary"), eq(Phase.SERVICE_REGISTRY), anyLong());
+		verify(listener).phaseCompleted(eq("primary"), eq(Phase.SESSION_FACTORY), anyLong());
+		verify(listener).started(persistService);
+	}
+
+	@Test
+	public void getBlocksUntilAnAsynchronousStartCompletes() throws Exception {
+		final CountDownLatch building = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		when(configuration.buildSessionFactory(any(ServiceRegistry.class))).thenAnswer(answer -> {
+			building.countDown();
+			release.await();
+			return sessionFactory;
+		});
+
+		final CompletableFuture<HibernatePersistService> started = persistService.startAsync();
+		assertTrue(building.await(5, TimeUnit.SECONDS));
+		assertFalse(persistService.isStarted());
+
+		final CompletableFuture<SessionFactory> got = CompletableFuture.supplyAsync(persistService::get);
+		assertFalse(got.isDone());
+
+		release.countDown();
+		assertSame(sessionFactory, got.get(5, TimeUnit.SECONDS));
+		assertSame(persistService, started.get());
+		assertTrue(persistService.isStarted());
+	}
+
+	@Test
+	public void anAsynchronousStartReadsTheConfigurationInTheBackground() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		when(configuration.buildSessionFactory(any(ServiceRegistry.class))).thenReturn(sessionFactory);
+		// e.g. a property provider which fetches from consul
+		final Provider<Configuration> slowConfiguration = () -> {
+			Uninterruptibles.awaitUninterruptibly(release);
+			return configuration;
+		};
+		persistService = new HibernatePersistService(
+				new BootstrapServiceRegistryBuilder().build(),
+				slowConfiguration,
+				ImmutableList::of,
+				ImmutableSet.of(listener));
+
+		final CompletableFuture<HibernatePersistService> started = persistService.startAsync();
+		assertFalse(started.isDone());
+
+		release.countDown();
+		assertSame(persistService, started.get(5, TimeUnit.SECONDS));
+		assertSame(sessionFactory, persistService.get());
+	}
+
+	@Test
+	public void getTimesOutIfTheStartDoesNotComplete() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		properties.setProperty(HibernatePersistService.START_TIMEOUT_PROPERTY, "0");
+		when(configuration.buildSessionFactory(any(ServiceRegistry.class))).thenAnswer(answer -> {
+			release.await();
+			return sessionFactory;
+		});
+
+		persistService.startAsync();
+		try {
+			persistService.get();
+			fail("Expected the start to time out");
+		} catch (final IllegalStateException e) {
+			// expected
+		} finally {
+			release.countDown();
+		}
+	}
+
+	@Test
+	public void anAsynchronousStartFailureIsReported() throws Exception {
+		final HibernateException failure = new HibernateException("boom");
+		when(configuration.buildSessionFactory(any(ServiceRegistry.class))).thenThrow(failure);
+
+		try {
+			persistService.startAsync().get(5, TimeUnit.SECONDS);
+			fail("Expected the start to fail");
+		} catch (final ExecutionException e) {
+			assertSame(failure, e.getCause());
+		}
+
+		verify(listener).failed(failure);
+		try {
+			persistService.get();
+			fail("Expected the service to be unavailable");
+		} catch (final IllegalStateException e) {
+			assertEquals("HibernatePersistService has not been started or has been stopped.", e.getMessage());
+		}
+	}
+
+	@Test
+	public void aReloadSwapsInANewFactoryAndDrainsTheOldOne() throws Exception {
+		final SessionFactory reloaded = mock(SessionFactory.class);
+		when(configuration.buildSessionFactory(any(ServiceRegistry.class))).thenReturn(sessionFactory, reloaded);
+		persistService.start();
+
+		final SessionFactoryGeneration inFlight = persistService.acquire();
+		assertSame(persistService, persistService.reload().get(5, TimeUnit.SECONDS));
+
+		assertSame(reloaded, persistService.get());
+		assertSame(sessionFactory, inFlight.getSessionFactory());
+		verify(sessionFactory, never()).close();
+
+		// The old factory closes once its last unit of work ends
+		inFlight.release();
+		verify(sessionFactory).close();
+
+		persistService.stop();
+		verify(reloaded).close();
+	}
+
+	@Test
+	public void statisticsAreExportedAgainAfterAReload() throws Exception {
+		final MBeanServer mBeanServer = MBeanServerFactory.newMBeanServer();
+		final HibernateStatisticsExporter exporter = new HibernateStatisticsExporter(mBeanServer);
+		persistService = new HibernatePersistService(
+				new BootstrapServiceRegistryBuilder().build(),
+				configuration,
+				ImmutableList.of(),
+				ImmutableSet.of(listener, exporter));
+		final SessionFactory reloaded = mock(SessionFactory.class);
+		final Statistics statistics = mock(Statistics.class);
+		final Statistics reloadedStatistics = mock(Statistics.class);
+		when(sessionFactory.getStatistics()).thenReturn(statistics);
+		when(reloaded.getStatistics()).thenReturn(reloadedStatistics);
+		when(statistics.getQueryExecutionCount()).thenReturn(1L);
+		when(reloadedStatistics.getQueryExecutionCount()).thenReturn(2L);
+		when(configuration.buildSessionFactory(any(ServiceRegistry.class))).thenReturn(sessionFactory, reloaded);
+		final ObjectName name = new ObjectName(JmxHibernateMetrics.DOMAIN + ":type=Statistics,sessionFactory=" + ObjectName.quote("primary"));
+
+		persistService.start();
+		assertEquals(1L, mBeanServer.getAttribute(name, "QueryExecutionCount"));
+
+		persistService.reload().get(5, TimeUnit.SECONDS);
+		verify(listener).reloaded(persistService);
+		verify(reloadedStatistics).setStatisticsEnabled(true);
+		assertEquals(2L, mBeanServer.getAttribute(name, "QueryExecutionCount"));
+
+		persistService.stop();
+		assertFalse(mBeanServer.isRegistered(name));
+	}
+
+	@Test
+	public void aFailedReloadKeepsTheCurrentFactory() throws Exception {
+		final HibernateException failure = new HibernateException("boom");
+		when(configuration.buildSessionFactory(any(ServiceRegistry.class))).thenReturn(sessionFactory).thenThrow(failure);
+		persistService.start();
+
+		try {
+			persistService.reload().get(5, TimeUnit.SECONDS);
+			fail("Expected the reload to fail");
+		} catch (final ExecutionException e) {
+			assertSame(failure, e.getCause());
+		}
+
+		assertSame(sessionFactory, persistService.get());
+		verify(sessionFactory, never()).close();
+	}
+}
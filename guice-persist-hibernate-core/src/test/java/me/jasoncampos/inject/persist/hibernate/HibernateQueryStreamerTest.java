@@ -0,0 +1,100 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.spi.PersistenceContext;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.query.Query;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class HibernateQueryStreamerTest {
+
+	@Mock
+	private HibernatePersistService persistService;
+
+	@Mock
+	private SessionFactory sessionFactory;
+
+	@Mock
+	private Session session;
+
+	@Mock
+	private SessionImplementor sessionImplementor;
+
+	@Mock
+	private PersistenceContext persistenceContext;
+
+	@Mock
+	private Query<String> query;
+
+	@Mock
+	private ScrollableResults results;
+
+	private HibernateUnitOfWork unitOfWork;
+	private HibernateQueryStreamer streamer;
+
+	@Before
+	public void beforeEach() {
+		when(persistService.get()).thenReturn(sessionFactory);
+		when(persistService.acquire()).thenReturn(new SessionFactoryGeneration("primary", sessionFactory));
+		when(sessionFactory.openSession()).thenReturn(session);
+		when(session.unwrap(SessionImplementor.class)).thenReturn(sessionImplementor);
+		when(sessionImplementor.getPersistenceContext()).thenReturn(persistenceContext);
+		when(query.setFetchSize(100)).thenReturn(query);
+		when(query.scroll(ScrollMode.FORWARD_ONLY)).thenReturn(results);
+		when(results.next()).thenReturn(true, true, false);
+		when(results.get()).thenReturn(new Object[] { "a" }, new Object[] { "b" });
+		when(persistenceContext.isEntryFor("a")).thenReturn(true);
+
+		unitOfWork = UnitOfWorkBuilder.of(persistService).build();
+		streamer = new HibernateQueryStreamer(unitOfWork);
+	}
+
+	@Test
+	public void itStreamsAndEvictsEachRow() {
+		unitOfWork.begin();
+		try (final Stream<String> stream = streamer.stream(query, 100)) {
+			final List<String> values = stream.collect(Collectors.toList());
+			assertEquals(Arrays.asList("a", "b"), values);
+		}
+		unitOfWork.end();
+
+		verify(session).evict("a");
+		verify(session, never()).evict("b");
+		verify(results, times(1)).close();
+	}
+
+	@Test
+	public void itClosesOpenCursorsWhenTheUnitOfWorkEnds() {
+		unitOfWork.begin();
+		final Stream<String> stream = streamer.stream(query, 100);
+		assertEquals("a", stream.findFirst().get());
+		verify(results, never()).close();
+
+		unitOfWork.end();
+		verify(results).close();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void itRequiresAUnitOfWork() {
+		streamer.stream(query);
+	}
+}
@@ -0,0 +1,762 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.OptimisticLockException;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.hibernate.TransactionException;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerGroup;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.FlushEvent;
+import org.hibernate.event.spi.FlushEventListener;
+import org.hibernate.exception.LockAcquisitionException;
+import org.hibernate.jdbc.ReturningWork;
+import org.hibernate.jdbc.Work;
+import org.hibernate.service.spi.ServiceRegistryImplementor;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.inject.persist.Transactional;
+
+@RunWith(MockitoJUnitRunner.class)
+public class HibernateTransactionInterceptorTest {
+
+	@Mock
+	private HibernatePersistService persistService;
+
+	@Mock
+	private SessionFactory sessionFactory;
+
+	@Mock
+	private EventSource session;
+
+	@Mock
+	private Transaction transaction;
+
+	@Mock
+	private HibernateStatelessUnitOfWork statelessUnitOfWork;
+
+	@Mock
+	private StatelessSession statelessSession;
+
+	@Mock
+	private Transaction statelessTransaction;
+
+	@Mock
+	private Connection connection;
+
+	@Mock
+	private MethodInvocation invocation;
+
+	@Mock
+	private HibernateMetrics metrics;
+
+	private HibernateUnitOfWork unitOfWork;
+	private HibernateTransactionInterceptor interceptor;
+
+	@Before
+	public void beforeEach() throws Throwable {
+		when(persistService.get()).thenReturn(sessionFactory);
+		when(persistService.acquire()).thenReturn(new SessionFactoryGeneration("primary", sessionFactory));
+		when(persistService.getReplicas()).thenReturn(Collections.emptyList());
+		when(sessionFactory.openSession()).thenReturn(session);
+		when(session.isOpen()).thenReturn(true);
+		when(session.getTransaction()).thenReturn(transaction);
+		when(session.getHibernateFlushMode()).thenReturn(FlushMode.AUTO);
+		doAnswer(answer -> {
+			((Work) answer.getArguments()[0]).execute(connection);
+			return null;
+		}).when(session).doWork(any(Work.class));
+		doAnswer(answer -> ((ReturningWork<?>) answer.getArguments()[0]).execute(connection))
+			.when(session).doReturningWork(any(ReturningWork.class));
+
+		when(invocation.getThis()).thenReturn(new Service());
+		// By default the intercepted method uses the session
+		when(invocation.proceed()).thenAnswer(answer -> {
+			unitOfWork.get();
+			return "result";
+		});
+
+		when(statelessUnitOfWork.get()).thenReturn(statelessSession);
+		when(statelessSession.getTransaction()).thenReturn(statelessTransaction);
+
+		unitOfWork = UnitOfWorkBuilder.of(persistService).metrics(metrics).build();
+		interceptor = new HibernateTransactionInterceptor();
+		interceptor.unitOfWork = unitOfWork;
+		interceptor.statelessUnitOfWork = statelessUnitOfWork;
+		interceptor.metrics = metrics;
+	}
+
+	@Test
+	public void itCommitsAndEndsTheUnitOfWorkItStarted() throws Throwable {
+		when(invocation.getMethod()).thenReturn(Service.class.getMethod("write"));
+
+		assertEquals("result", interceptor.invoke(invocation));
+
+		verify(transaction).begin();
+		verify(transaction).commit();
+		verify(session).close();
+		verify(session, never()).setDefaultReadOnly(true);
+		assertFalse(unitOfWork.isWorking());
+	}
+
+	@Test
+	public void itMeasuresTransactionsByMethod() throws Throwable {
+		when(invocation.getMethod()).thenReturn(Service.class.getMethod("write"));
+
+		interceptor.invoke(invocation);
+
+		final String method = Service.class.getName() + ".write";
+		verify(metrics).transactionCompleted(eq(method), eq(true), anyLong());
+		verify(metrics).operationCompleted(eq(method), eq(HibernateMetrics.Operation.BEGIN), anyLong());
+		verify(metrics).operationCompleted(eq(method), eq(HibernateMetrics.Operation.CLOSE), anyLong());
+		verify(metrics).sessionClosed(eq(method), anyLong());
+	}
+
+	@Test
+	public void itDoesNotOpenASessionForMethodsWhichDoNotUseIt() throws Throwable {
+		when(invocation.getMethod()).thenReturn(Service.class.getMethod("write"));
+		doReturn("cached").when(invocation).proceed();
+
+		assertEquals("cached", interceptor.invoke(invocation));
+
+		verify(sessionFactory, never()).openSession();
+		verify(transaction, never()).begin();
+		verify(metrics, never()).transactionCompleted(any(String.class), anyBoolean(), anyLong());
+		assertFalse(unitOfWork.isWorking());
+	}
+
+	@Test
+	public void itRunsReadOnlyMethodsAgainstAReadOnlySession() throws Throwable {
+		when(invocation.getMethod()).thenReturn(Service.class.getMethod("read"));
+
+		interceptor.invoke(invocation);
+
+		verify(session).setDefaultReadOnly(true);
+		verify(session).setHibernateFlushMode(FlushMode.MANUAL);
+
+		// Drivers ignore or reject the read-only flag while a transaction is open
+		final InOrder order = inOrder(connection, transaction);
+		order.verify(connection).setReadOnly(true);
+		order.verify(transaction).begin();
+
+		// Once the transaction completes, the connection and session settings are restored
+		final ArgumentCaptor<Synchronization> synchronization = ArgumentCaptor.forClass(Synchronization.class);
+		verify(transaction).registerSynchronization(synchronization.capture());
+		synchronization.getValue().afterCompletion(Status.STATUS_COMMITTED);
+
+		verify(connection).setReadOnly(false);
+		verify(session).setDefaultReadOnly(false);
+		verify(session).setHibernateFlushMode(FlushMode.AUTO);
+	}
+
+	@Test
+	public void itJoinsAnActiveTransaction() throws Throwable {
+		final MethodInvocation inner = mock(MethodInvocation.class);
+		when(inner.getThis()).thenReturn(new Service());
+		when(inner.getMethod()).thenReturn(Service.class.getMethod("read"));
+		when(inner.proceed()).thenAnswer(answer -> unitOfWork.get());
+
+		when(invocation.getMethod()).thenReturn(Service.class.getMethod("write"));
+		doAnswer(answer -> interceptor.invoke(inner)).when(invocation).proceed();
+
+		interceptor.invoke(invocation);
+
+		verify(transaction, times(1)).begin();
+		verify(transaction, times(1)).commit();
+		verify(session, never()).setDefaultReadOnly(true);
+	}
+
+	@Test
+	public void itRollsBackOnRuntimeExceptions() throws Throwable {
+		when(invocation.getMethod()).thenReturn(Service.class.getMethod("write"));
+		doAnswer(answer -> {
+			unitOfWork.get();
+			throw new IllegalStateException();
+		}).when(invocation).proceed();
+
+		try {
+			interceptor.invoke(invocation);
+		} catch (final IllegalStateException e) {
+			// expected
+		}
+
+		verify(transaction).rollback();
+		verify(transaction, never()).commit();
+		assertFalse(unitOfWork.isWorking());
+	}
+
+	@Test
+	public void itRollsBackAndEndsTheUnitOfWorkOnErrors() throws Throwable {
+		when(invocation.getMethod()).thenReturn(Service.class.getMethod("write"));
+		doAnswer(answer -> {
+			unitOfWork.get();
+			throw new StackOverflowError();
+		}).when(invocation).proceed();
+
+		try {
+			interceptor.invoke(invocation);
+			fail("Expected the error to propagate");
+		} catch (final StackOverflowError e) {
+			// expected
+		}
+
+		verify(transaction).rollback();
+		verify(transaction, never()).commit();
+		assertFalse(unitOfWork.isWorking());
+	}
+
+	@Test
+	public void itRollsBackBulkMethodsOnErrors() throws Throwable {
+		when(invocation.getMethod()).thenReturn(Service.class.getMethod("bulk"));
+		doThrow(new StackOverflowError()).when(invocation).proceed();
+
+		try {
+			interceptor.invoke(invocation);
+			fail("Expected the error to propagate");
+		} catch (final StackOverflowError e) {
+			// expected
+		}
+
+		verify(statelessTransaction).rollback();
+		verify(statelessUnitOfWork).end();
+	}
+
+	@Test
+	public void itRunsBulkMethodsInAStatelessUnitOfWork() throws Throwable {
+		when(invocation.getMethod()).thenReturn(Service.class.getMethod("bulk"));
+		doReturn("result").when(invocation).proceed();
+
+		interceptor.invoke(invocation);
+
+		verify(statelessUnitOfWork).begin();
+		verify(statelessTransaction).begin();
+		verify(statelessTransaction).commit();
+		verify(statelessUnitOfWork).end();
+		verify(sessionFactory, never()).openSession();
+	}
+
+	@Test
+	public void itRollsBackBulkMethodsOnFailure() throws Throwable {
+		when(invocation.getMethod()).thenReturn(Service.class.getMethod("bulk"));
+		doThrow(new IllegalStateException()).when(invocation).proceed();
+
+		try {
+			interceptor.invoke(invocation);
+		} catch (final IllegalStateException e) {
+			// expected
+		}
+
+		verify(statelessTransaction).rollback();
+		verify(statelessTransaction, never()).commit();
+		verify(statelessUnitOfWork).end();
+	}
+
+	@Test
+	public void itCommitsAsyncMethodsWhenTheirFutureCompletes() throws Throwable {
+		final CompletableFuture<String> pending = new CompletableFuture<>();
+		when(invocation.getMethod()).thenReturn(Service.class.getMethod("async"));
+		doAnswer(answer -> {
+			unitOfWork.get();
+			return pending;
+		}).when(invocation).proceed();
+
+		final CompletionStage<?> result = (CompletionStage<?>) interceptor.invoke(invocation);
+
+		// The unit of work is detached from the calling thread but the transaction is still open
+		assertFalse(unitOfWork.isWorking());
+		verify(transaction, never()).commit();
+		assertFalse(result.toCompletableFuture().isDone());
+
+		pending.complete("done");
+		verify(transaction).commit();
+		verify(session).close();
+		assertEquals("done", result.toCompletableFuture().get());
+	}
+
+	@Test
+	public void itRollsBackAsyncMethodsWhenTheirFutureFails() throws Throwable {
+		final CompletableFuture<String> pending = new CompletableFuture<>();
+		when(invocation.getMethod()).thenReturn(Service.class.getMethod("async"));
+		doAnswer(answer -> {
+			unitOfWork.get();
+			return pending;
+		}).when(invocation).proceed();
+
+		final CompletionStage<?> result = (CompletionStage<?>) interceptor.invoke(invocation);
+		pending.completeExceptionally(new IllegalStateException());
+
+		verify(transaction).rollback();
+		verify(transaction, never()).commit();
+		assertTrue(result.toCompletableFuture().isCompletedExceptionally());
+	}
+
+	@Test
+	public void itRefusesAsyncTransactionsInAUnitOfWorkBegunElsewhere() throws Throwable {
+		when(invocation.getMethod()).thenReturn(Service.class.getMethod("async"));
+
+		// e.g. begun by a PersistFilter, which would go on to end the unit of work while the transaction is open
+		unitOfWork.begin();
+		try {
+			interceptor.invoke(invocation);
+			fail("Expected the async method to be refused");
+		} catch (final IllegalStateException e) {
+			// expected
+		}
+
+		verify(invocation, never()).proceed();
+		verify(transaction, never()).begin();
+		assertTrue(unitOfWork.isWorking());
+		unitOfWork.end();
+	}
+
+	@Test
+	public void itRoutesShardKeyedMethodsToTheirPersistenceUnit() throws Throwable {
+		final SessionFactory shardSessionFactory = shard("shard-1");
+		when(invocation.getMethod()).thenReturn(Service.class.getMethod("sharded", int.class));
+		when(invocation.getArguments()).thenReturn(new Object[] { 1 });
+
+		interceptor.invoke(invocation);
+
+		verify(shardSessionFactory).openSession();
+		verify(persistService, never()).acquire();
+		verify(transaction).commit();
+		assertFalse(unitOfWork.isWorking());
+	}
+
+	@Test
+	public void itRoutesByTheShardKeyOfTheThread() throws Throwable {
+		final SessionFactory shardSessionFactory = shard("shard-1");
+		when(invocation.getMethod()).thenReturn(Service.class.getMethod("write"));
+
+		interceptor.shards.call(1, () -> {
+			try {
+				return interceptor.invoke(invocation);
+			} catch (final Throwable t) {
+				throw new AssertionError(t);
+			}
+		});
+
+		verify(shardSessionFactory).openSession();
+		verify(persistService, never()).acquire();
+		assertEquals(null, interceptor.shards.getShardKey());
+	}
+
+	@Test
+	public void itRunsARoutedMethodOnItsUnitWithinAnEnclosingUnitOfWork() throws Throwable {
+		final SessionFactory shardSessionFactory = shard("shard-1");
+		when(invocation.getMethod()).thenReturn(Service.class.getMethod("sharded", int.class));
+		when(invocation.getArguments()).thenReturn(new Object[] { 1 });
+
+		// e.g. begun by a PersistFilter
+		unitOfWork.begin();
+		interceptor.invoke(invocation);
+
+		verify(shardSessionFactory).openSession();
+		verify(persistService, never()).acquire();
+		verify(transaction).commit();
+		assertTrue(unitOfWork.isWorking());
+		unitOfWork.end();
+		verify(session).close();
+	}
+
+	@Test
+	public void unroutedWorkAfterARoutedMethodRunsOnTheDefaultUnit() throws Throwable {
+		final SessionFactory shardSessionFactory = shard("shard-1");
+		final MethodInvocation unrouted = mock(MethodInvocation.class);
+		when(unrouted.getThis()).thenReturn(new Service());
+		when(unrouted.getMethod()).thenReturn(Service.class.getMethod("write"));
+		doAnswer(answer -> unitOfWork.get()).when(unrouted).proceed();
+		when(invocation.getMethod()).thenReturn(Service.class.getMethod("sharded", int.class));
+		when(invocation.getArguments()).thenReturn(new Object[] { 1 });
+		doAnswer(answer -> unitOfWork.get()).when(invocation).proceed();
+
+		// e.g. begun by a PersistFilter
+		unitOfWork.begin();
+		interceptor.invoke(invocation);
+		interceptor.invoke(unrouted);
+
+		verify(shardSessionFactory).openSession();
+		verify(persistService).acquire();
+		verify(sessionFactory).openSession();
+		assertSame(persistService, unitOfWork.current().getPersistenceUnit());
+
+		// Routed to the default unit, so it joins the session opened there
+		when(invocation.getArguments()).thenReturn(new Object[] { 0 });
+		interceptor.invoke(invocation);
+		verify(persistService).acquire();
+		unitOfWork.end();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void itRefusesToSwitchThePersistenceUnitOfAnEnclosingUnitOfWork() throws Throwable {
+		shard("shard-1");
+		final MethodInvocation inner = mock(MethodInvocation.class);
+		when(inner.getThis()).thenReturn(new Service());
+		when(inner.getMethod()).thenReturn(Service.class.getMethod("sharded", int.class));
+		when(inner.getArguments()).thenReturn(new Object[] { 1 });
+
+		when(invocation.getMethod()).thenReturn(Service.class.getMethod("write"));
+		doAnswer(answer -> interceptor.invoke(inner)).when(invocation).proceed();
+
+		interceptor.invoke(invocation);
+	}
+
+	@Test
+	public void itRetriesADeadlockInAFreshUnitOfWork() throws Throwable {
+		when(invocation.getMethod()).thenReturn(Service.class.getMethod("retried"));
+		doAnswer(answer -> {
+			unitOfWork.get();
+			throw new LockAcquisitionException("Deadlock found", new SQLException("Deadlock found", "40001"));
+		}).doAnswer(answer -> {
+			unitOfWork.get();
+			return "result";
+		}).when(invocation).proceed();
+
+		assertEquals("result", interceptor.invoke(invocation));
+
+		// The session of the failed attempt is discarded
+		verify(sessionFactory, times(2)).openSession();
+		verify(session, times(2)).close();
+		verify(transaction).rollback();
+		verify(transaction).commit();
+		verify(metrics).transactionRetried(eq(Service.class.getName() + ".retried"), eq(1), any(LockAcquisitionException.class));
+		assertFalse(unitOfWork.isWorking());
+	}
+
+	@Test
+	public void itRetriesADeadlockInAUnitOfWorkBegunElsewhere() throws Throwable {
+		when(invocation.getMethod()).thenReturn(Service.class.getMethod("retried"));
+		when(session.isOpen()).thenReturn(true);
+		doAnswer(answer -> {
+			unitOfWork.get();
+			throw new LockAcquisitionException("Deadlock found", new SQLException("Deadlock found", "40001"));
+		}).doAnswer(answer -> {
+			unitOfWork.get();
+			return "result";
+		}).when(invocation).proceed();
+
+		unitOfWork.begin();
+		assertEquals("result", interceptor.invoke(invocation));
+
+		// The enclosing unit of work keeps its session, which is cleared before the retry
+		verify(sessionFactory, times(1)).openSession();
+		verify(session).clear();
+		verify(session, never()).close();
+		verify(transaction).rollback();
+		verify(transaction).commit();
+		assertTrue(unitOfWork.isWorking());
+		unitOfWork.end();
+	}
+
+	@Test
+	public void itDoesNotRetryAMethodWhichJoinsAnEnclosingTransaction() throws Throwable {
+		final MethodInvocation inner = mock(MethodInvocation.class);
+		when(inner.getThis()).thenReturn(new Service());
+		when(inner.getMethod()).thenReturn(Service.class.getMethod("retried"));
+		doThrow(new OptimisticLockException()).when(inner).proceed();
+
+		when(invocation.getMethod()).thenReturn(Service.class.getMethod("write"));
+		doAnswer(answer -> interceptor.invoke(inner)).when(invocation).proceed();
+
+		try {
+			interceptor.invoke(invocation);
+		} catch (final OptimisticLockException e) {
+			// expected
+		}
+
+		verify(inner, times(1)).proceed();
+	}
+
+	@Test
+	public void itGivesUpAfterTheLastAttempt() throws Throwable {
+		when(invocation.getMethod()).thenReturn(Service.class.getMethod("retried"));
+		doAnswer(answer -> {
+			unitOfWork.get();
+			throw new OptimisticLockException();
+		}).when(invocation).proceed();
+
+		try {
+			interceptor.invoke(invocation);
+		} catch (final OptimisticLockException e) {
+			// expected
+		}
+
+		verify(invocation, times(3)).proceed();
+		verify(transaction, times(3)).rollback();
+	}
+
+	@Test
+	public void itDoesNotRetryPermanentFailures() throws Throwable {
+		when(invocation.getMethod()).thenReturn(Service.class.getMethod("retried"));
+		doThrow(new IllegalStateException()).when(invocation).proceed();
+
+		try {
+			interceptor.invoke(invocation);
+		} catch (final IllegalStateException e) {
+			// expected
+		}
+
+		verify(invocation, times(1)).proceed();
+		verify(metrics, never()).transactionRetried(any(String.class), any(Integer.class), any(Throwable.class));
+	}
+
+	@Test
+	public void itGivesStatementsTheRemainingTimeBudget() throws Throwable {
+		when(invocation.getMethod()).thenReturn(Service.class.getMethod("bounded"));
+
+		interceptor.invoke(invocation);
+
+		verify(transaction).setTimeout(2);
+		verify(transaction).begin();
+		verify(transaction).commit();
+	}
+
+	@Test
+	public void itRollsBackATransactionWhichOutlivesItsDeadline() throws Throwable {
+		interceptor.defaultTimeout = new TransactionTimeout(10, TimeUnit.MILLISECONDS);
+		when(invocation.getMethod()).thenReturn(Service.class.getMethod("write"));
+		doAnswer(answer -> {
+			unitOfWork.get();
+			Thread.sleep(20);
+			return "result";
+		}).when(invocation).proceed();
+
+		try {
+			interceptor.invoke(invocation);
+			fail("Expected the transaction to time out");
+		} catch (final TransactionException e) {
+			// expected
+		}
+
+		verify(transaction).setTimeout(1);
+		verify(transaction).markRollbackOnly();
+		verify(transaction).rollback();
+		verify(transaction, never()).commit();
+		verify(metrics).transactionCompleted(eq(Service.class.getName() + ".write"), eq(false), anyLong());
+		assertFalse(unitOfWork.isWorking());
+	}
+
+	@Test
+	public void aNestedMethodRollsBackToItsSavepoint() throws Throwable {
+		when(transaction.isActive()).thenReturn(true);
+		final Savepoint savepoint = mock(Savepoint.class);
+		when(connection.setSavepoint()).thenReturn(savepoint);
+		when(invocation.getMethod()).thenReturn(Service.class.getMethod("write"));
+		final MethodInvocation nested = invocationOf("nested");
+		doAnswer(answer -> {
+			unitOfWork.get();
+			throw new IllegalStateException("Invalid item");
+		}).when(nested).proceed();
+		doAnswer(answer -> {
+			unitOfWork.get();
+			try {
+				interceptor.invoke(nested);
+				fail("Expected the nested method to fail");
+			} catch (final IllegalStateException e) {
+				// The caller carries on with the next item
+			}
+			return "result";
+		}).when(invocation).proceed();
+
+		assertEquals("result", interceptor.invoke(invocation));
+
+		verify(connection).rollback(savepoint);
+		verify(session).clear();
+		verify(transaction).begin();
+		verify(transaction, never()).rollback();
+		verify(transaction).commit();
+		verify(metrics).transactionCompleted(eq(Service.class.getName() + ".nested"), eq(false), anyLong());
+	}
+
+	@Test
+	public void aNestedMethodFlushesAndReleasesItsSavepoint() throws Throwable {
+		when(transaction.isActive()).thenReturn(true);
+		final Savepoint savepoint = mock(Savepoint.class);
+		when(connection.setSavepoint()).thenReturn(savepoint);
+		final FlushEventListener flushListener = flushListener();
+		when(invocation.getMethod()).thenReturn(Service.class.getMethod("write"));
+		final MethodInvocation nested = invocationOf("nested");
+		doAnswer(answer -> {
+			unitOfWork.get();
+			return interceptor.invoke(nested);
+		}).when(invocation).proceed();
+
+		assertEquals("result", interceptor.invoke(invocation));
+
+		// The caller's changes are flushed before the savepoint, and the nested method's changes before its release
+		verify(session).flush();
+		verify(flushListener).onFlush(any(FlushEvent.class));
+		verify(connection).releaseSavepoint(savepoint);
+		verify(connection, never()).rollback(savepoint);
+		verify(transaction).commit();
+		verify(metrics).transactionCompleted(eq(Service.class.getName() + ".nested"), eq(true), anyLong());
+	}
+
+	@Test
+	public void aRequiresNewMethodSuspendsTheEnclosingUnitOfWork() throws Throwable {
+		when(transaction.isActive()).thenReturn(true);
+		final Session innerSession = mock(Session.class);
+		final Transaction innerTransaction = mock(Transaction.class);
+		when(sessionFactory.openSession()).thenReturn(session, innerSession);
+		when(innerSession.isOpen()).thenReturn(true);
+		when(innerSession.getTransaction()).thenReturn(innerTransaction);
+		when(innerSession.getHibernateFlushMode()).thenReturn(FlushMode.AUTO);
+		when(invocation.getMethod()).thenReturn(Service.class.getMethod("write"));
+		final MethodInvocation audit = invocationOf("requiresNew");
+		doAnswer(answer -> {
+			final Session outer = unitOfWork.get();
+			final HibernateUnitOfWork.Context context = unitOfWork.current();
+			interceptor.invoke(audit);
+			assertSame(context, unitOfWork.current());
+			assertSame(outer, unitOfWork.get());
+			return "result";
+		}).when(invocation).proceed();
+
+		assertEquals("result", interceptor.invoke(invocation));
+
+		verify(innerTransaction).begin();
+		verify(innerTransaction).commit();
+		verify(innerSession).close();
+		verify(transaction).commit();
+		verify(session).close();
+		assertFalse(unitOfWork.isWorking());
+	}
+
+	@Test
+	public void itAppliesTheFlushStrategyForTheDurationOfTheTransaction() throws Throwable {
+		when(invocation.getMethod()).thenReturn(Service.class.getMethod("commitFlush"));
+
+		interceptor.invoke(invocation);
+
+		verify(session).setHibernateFlushMode(FlushMode.COMMIT);
+		final ArgumentCaptor<Synchronization> synchronization = ArgumentCaptor.forClass(Synchronization.class);
+		verify(transaction).registerSynchronization(synchronization.capture());
+		verify(transaction).commit();
+
+		synchronization.getValue().afterCompletion(Status.STATUS_COMMITTED);
+		verify(session).setHibernateFlushMode(FlushMode.AUTO);
+	}
+
+	private MethodInvocation invocationOf(final String method) throws Throwable {
+		final MethodInvocation nested = mock(MethodInvocation.class);
+		when(nested.getThis()).thenReturn(new Service());
+		when(nested.getMethod()).thenReturn(Service.class.getMethod(method));
+		when(nested.proceed()).thenAnswer(answer -> {
+			unitOfWork.get();
+			return "result";
+		});
+		return nested;
+	}
+
+	@SuppressWarnings("unchecked")
+	private FlushEventListener flushListener() {
+		final SessionFactoryImplementor factory = mock(SessionFactoryImplementor.class);
+		final ServiceRegistryImplementor serviceRegistry = mock(ServiceRegistryImplementor.class);
+		final EventListenerRegistry listenerRegistry = mock(EventListenerRegistry.class);
+		final EventListenerGroup<FlushEventListener> listeners = mock(EventListenerGroup.class);
+		final FlushEventListener listener = mock(FlushEventListener.class);
+		when(session.getFactory()).thenReturn(factory);
+		when(factory.getServiceRegistry()).thenReturn(serviceRegistry);
+		when(serviceRegistry.getService(EventListenerRegistry.class)).thenReturn(listenerRegistry);
+		when(listenerRegistry.getEventListenerGroup(EventType.FLUSH)).thenReturn(listeners);
+		when(listeners.listeners()).thenReturn(Collections.singletonList(listener));
+		return listener;
+	}
+
+	// Routes shard key n to the persistence unit "shard-n"
+	private SessionFactory shard(final String name) {
+		final HibernatePersistService shard = mock(HibernatePersistService.class);
+		final SessionFactory shardSessionFactory = mock(SessionFactory.class);
+		when(shard.getName()).thenReturn(name);
+		when(shard.acquire()).thenReturn(new SessionFactoryGeneration(name, shardSessionFactory));
+		when(shardSessionFactory.openSession()).thenReturn(session);
+		interceptor.shards = new HibernateShards(
+				ImmutableMap.of("shard-0", persistService, name, shard),
+				(shardKey, units) -> "shard-" + shardKey);
+		return shardSessionFactory;
+	}
+
+	@Transactional
+	public static class Service {
+		public void write() {
+		}
+
+		@ReadOnly
+		public void read() {
+		}
+
+		@Bulk
+		public void bulk() {
+		}
+
+		public CompletableFuture<String> async() {
+			return null;
+		}
+
+		public void sharded(@ShardKey final int customer) {
+		}
+
+		@Retry(backoffMillis = 1)
+		public void retried() {
+		}
+
+		@Timeout(value = 1500, unit = TimeUnit.MILLISECONDS)
+		public void bounded() {
+		}
+
+		@Propagation(Propagation.Mode.NESTED)
+		public void nested() {
+		}
+
+		@Propagation(Propagation.Mode.REQUIRES_NEW)
+		public void requiresNew() {
+		}
+
+		@FlushStrategy(FlushMode.COMMIT)
+		public void commitFlush() {
+		}
+	}
+}
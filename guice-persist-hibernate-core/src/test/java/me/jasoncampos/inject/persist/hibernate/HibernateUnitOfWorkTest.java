@@ -0,0 +1,214 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+import org.hibernate.SessionEventListener;
+import org.hibernate.SessionFactory;
+import org.hibernate.exception.JDBCConnectionException;
+import org.hibernate.jdbc.Work;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class HibernateUnitOfWorkTest {
+
+	@Mock
+	private HibernatePersistService persistService;
+
+	@Mock
+	private SessionFactory primary;
+
+	@Mock
+	private SessionFactory replicaFactory;
+
+	@Mock
+	private Session primarySession;
+
+	@Mock
+	private Session replicaSession;
+
+	private HibernateReplica replica;
+	private HibernateUnitOfWork unitOfWork;
+
+	@Before
+	public void beforeEach() {
+		replica = new HibernateReplica("replica-0", replicaFactory);
+		when(persistService.get()).thenReturn(primary);
+		when(persistService.acquire()).thenReturn(new SessionFactoryGeneration("primary", primary));
+		when(persistService.getReplicas()).thenReturn(Arrays.asList(replica));
+		when(primary.openSession()).thenReturn(primarySession);
+		when(replicaFactory.openSession()).thenReturn(replicaSession);
+		when(primarySession.isOpen()).thenReturn(true);
+		when(replicaSession.isOpen()).thenReturn(true);
+
+		unitOfWork = UnitOfWorkBuilder.of(persistService).build();
+	}
+
+	@Test
+	public void itRoutesReadOnlyWorkToAReplica() {
+		unitOfWork.beginReadOnly();
+		verify(replicaFactory, never()).openSession();
+		assertSame(replicaSession, unitOfWork.get());
+		assertEquals(1, replica.getInFlight());
+
+		unitOfWork.end();
+		verify(replicaSession).close();
+		assertEquals(0, replica.getInFlight());
+		assertFalse(unitOfWork.isWorking());
+	}
+
+	@Test
+	public void itReportsHeldSessionsToTheWatchdog() {
+		final UnitOfWorkWatchdog watchdog = new UnitOfWorkWatchdog(1, 0, TimeUnit.MINUTES);
+		unitOfWork = UnitOfWorkBuilder.of(persistService).watchdog(watchdog).build();
+
+		unitOfWork.begin();
+		assertEquals(0, watchdog.getHeld());
+		unitOfWork.get();
+		assertEquals(1, watchdog.getHeld());
+
+		unitOfWork.end();
+		assertEquals(0, watchdog.getHeld());
+	}
+
+	@Test
+	public void itCountsTheFlushesOfEachUnitOfWork() {
+		final HibernateMetrics metrics = mock(HibernateMetrics.class);
+		unitOfWork = UnitOfWorkBuilder.of(persistService)
+			.metrics(metrics)
+			.flushDiagnostics(new FlushDiagnostics(true))
+			.build();
+
+		unitOfWork.begin();
+		unitOfWork.get();
+		final ArgumentCaptor<SessionEventListener> listener = ArgumentCaptor.forClass(SessionEventListener.class);
+		verify(primarySession).addEventListeners(listener.capture());
+		listener.getValue().partialFlushEnd(40, 0);
+		// A query which needs no flush check
+		listener.getValue().partialFlushEnd(0, 0);
+		listener.getValue().flushEnd(40, 2);
+		unitOfWork.end();
+
+		verify(metrics).flushesCounted(HibernateMetrics.UNTAGGED, 1, 1, 80L);
+	}
+
+	@Test
+	public void itOpensTheSessionOnTheRequestedPersistenceUnit() {
+		final HibernatePersistService shard = mock(HibernatePersistService.class);
+		final SessionFactory shardFactory = mock(SessionFactory.class);
+		final Session shardSession = mock(Session.class);
+		when(shard.acquire()).thenReturn(new SessionFactoryGeneration("shard-1", shardFactory));
+		when(shardFactory.openSession()).thenReturn(shardSession);
+		when(shardSession.isOpen()).thenReturn(true);
+
+		unitOfWork.begin();
+		assertSame(shardSession, unitOfWork.get(shard));
+		verify(primary, never()).openSession();
+
+		// The unit of work keeps a session on each persistence unit
+		assertSame(persistService, unitOfWork.current().getPersistenceUnit());
+		assertSame(primarySession, unitOfWork.get());
+		assertSame(shardSession, unitOfWork.get(shard));
+		unitOfWork.end();
+		verify(shardSession).close();
+		verify(primarySession).close();
+	}
+
+	@Test
+	public void itReleasesAReplacedSessionFactoryEvenIfTheSessionFailsToClose() {
+		final SessionFactoryGeneration generation = new SessionFactoryGeneration("primary", primary);
+		generation.acquire();
+		when(persistService.acquire()).thenReturn(generation);
+		doThrow(new IllegalStateException("close failed")).when(primarySession).close();
+
+		unitOfWork.begin();
+		unitOfWork.get();
+		// Replaced by a reload while the unit of work is in flight
+		generation.retire();
+		try {
+			unitOfWork.end();
+		} catch (final IllegalStateException e) {
+			// expected
+		}
+
+		assertEquals(0, generation.getInFlight());
+		assertTrue(generation.isClosed());
+		verify(primary).close();
+		assertFalse(unitOfWork.isWorking());
+	}
+
+	@Test
+	public void itFallsBackToThePrimaryWhenTheReplicaFails() {
+		doThrow(new JDBCConnectionException("unreachable", null)).when(replicaSession).doWork(any(Work.class));
+
+		unitOfWork.beginReadOnly();
+		assertSame(primarySession, unitOfWork.get());
+		assertEquals(0, replica.getInFlight());
+		verify(replicaSession).close();
+
+		unitOfWork.end();
+	}
+
+	@Test
+	public void itOpensTheSessionOnFirstUse() {
+		unitOfWork.begin();
+		verify(primary, never()).openSession();
+		assertSame(primarySession, unitOfWork.get());
+		assertSame(primarySession, unitOfWork.get());
+		unitOfWork.end();
+
+		verify(primary).openSession();
+		verify(primarySession).close();
+	}
+
+	@Test
+	public void itDoesNotFlushManualFlushModeSessions() {
+		when(primarySession.isJoinedToTransaction()).thenReturn(true);
+		when(primarySession.getHibernateFlushMode()).thenReturn(FlushMode.MANUAL);
+
+		unitOfWork.begin();
+		unitOfWork.get();
+		unitOfWork.end();
+
+		verify(primarySession, never()).flush();
+		verify(primarySession).close();
+	}
+
+	@Test
+	public void itPropagatesTheUnitOfWorkToOtherThreads() throws Exception {
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			unitOfWork.begin();
+			final Future<Session> propagated = executor.submit(unitOfWork.propagate(() -> unitOfWork.get()));
+			assertSame(primarySession, propagated.get());
+
+			// The worker thread is left without a unit of work once the task completes
+			assertFalse(executor.submit(() -> unitOfWork.isWorking()).get());
+			assertTrue(unitOfWork.isWorking());
+			unitOfWork.end();
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class JmxHibernateMetricsTest {
+
+	private static final String METHOD = "com.example.AccountService.transfer";
+
+	private MBeanServer mBeanServer;
+	private JmxHibernateMetrics metrics;
+
+	@Before
+	public void beforeEach() {
+		mBeanServer = MBeanServerFactory.newMBeanServer();
+		metrics = new JmxHibernateMetrics(mBeanServer);
+	}
+
+	@Test
+	public void itCountsCommitsAndRollbacksPerMethod() {
+		assertNull(metrics.getMetrics(METHOD));
+
+		metrics.transactionCompleted(METHOD, true, TimeUnit.MILLISECONDS.toNanos(2));
+		metrics.transactionCompleted(METHOD, true, TimeUnit.MILLISECONDS.toNanos(4));
+		metrics.transactionCompleted(METHOD, false, TimeUnit.MILLISECONDS.toNanos(6));
+
+		final TransactionMetricsMXBean transfer = metrics.getMetrics(METHOD);
+		assertEquals(2, transfer.getCommits());
+		assertEquals(1, transfer.getRollbacks());
+		assertEquals(4.0, transfer.getTransactionMeanMillis(), 0.001);
+		assertEquals(6.0, transfer.getTransactionMaxMillis(), 0.001);
+		// Percentiles are bucketed by powers of two but never exceed the maximum
+		assertEquals(6.0, transfer.getTransaction99thPercentileMillis(), 0.001);
+	}
+
+	@Test
+	public void itExposesMethodMetricsWithJmx() throws Exception {
+		metrics.transactionCompleted(METHOD, true, 1000);
+		metrics.operationCompleted(METHOD, HibernateMetrics.Operation.FLUSH, TimeUnit.MILLISECONDS.toNanos(3));
+		metrics.sessionClosed(METHOD, TimeUnit.MILLISECONDS.toNanos(8));
+
+		final ObjectName name = metrics.nameOf(METHOD);
+		assertEquals(1L, mBeanServer.getAttribute(name, "Commits"));
+		assertEquals(3.0, (double) mBeanServer.getAttribute(name, "FlushMeanMillis"), 0.001);
+		assertEquals(1L, mBeanServer.getAttribute(name, "SessionsClosed"));
+		assertEquals(8.0, (double) mBeanServer.getAttribute(name, "SessionOpenMaxMillis"), 0.001);
+	}
+
+	@Test
+	public void eachInstanceRegistersItsOwnMBeans() throws Exception {
+		// e.g. two injectors in the same JVM
+		final JmxHibernateMetrics other = new JmxHibernateMetrics(mBeanServer);
+		metrics.transactionCompleted(METHOD, true, 1000);
+		other.transactionCompleted(METHOD, false, 1000);
+
+		assertEquals(1L, mBeanServer.getAttribute(metrics.nameOf(METHOD), "Commits"));
+		assertEquals(1L, mBeanServer.getAttribute(other.nameOf(METHOD), "Rollbacks"));
+
+		other.stopping(null);
+		assertFalse(mBeanServer.isRegistered(other.nameOf(METHOD)));
+		assertTrue(mBeanServer.isRegistered(metrics.nameOf(METHOD)));
+	}
+
+	@Test
+	public void itAveragesDirtyChecksPerUnitOfWork() {
+		metrics.flushesCounted(METHOD, 1, 4, 500);
+		metrics.flushesCounted(METHOD, 1, 0, 100);
+
+		final TransactionMetricsMXBean transfer = metrics.getMetrics(METHOD);
+		assertEquals(2, transfer.getFlushes());
+		assertEquals(4, transfer.getAutoFlushes());
+		assertEquals(600, transfer.getDirtyCheckedEntities());
+		assertEquals(300.0, transfer.getDirtyCheckedEntitiesPerUnitOfWork(), 0.001);
+	}
+
+	@Test
+	public void histogramPercentilesAreBoundedByPowersOfTwo() {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 0; i < 99; i++) {
+			histogram.record(TimeUnit.MICROSECONDS.toNanos(100));
+		}
+		histogram.record(TimeUnit.MILLISECONDS.toNanos(500));
+
+		// 100us falls in the [2^16, 2^17) nanosecond bucket
+		assertEquals((1 << 17) / 1_000_000.0, histogram.getPercentileMillis(0.99), 0.0001);
+		assertEquals(500.0, histogram.getPercentileMillis(0.999), 0.0001);
+		assertEquals(100, histogram.getCount());
+	}
+}
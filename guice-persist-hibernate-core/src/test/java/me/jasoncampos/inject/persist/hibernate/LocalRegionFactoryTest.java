@@ -0,0 +1,119 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.cache.CacheException;
+import org.hibernate.cache.spi.access.AccessType;
+import org.hibernate.cache.spi.access.EntityRegionAccessStrategy;
+import org.hibernate.cache.spi.access.SoftLock;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LocalRegionFactoryTest {
+
+	private LocalRegionFactory regionFactory;
+
+	@Before
+	public void beforeEach() {
+		final Properties settings = new Properties();
+		settings.putAll(HibernateCacheConfiguration.builder()
+				.entity(Object.class, AccessType.READ_WRITE, "small")
+				.region("small", 2, 0, TimeUnit.SECONDS)
+				.build()
+				.getProperties());
+		regionFactory = new LocalRegionFactory();
+		regionFactory.start(null, settings);
+	}
+
+	@Test
+	public void timestampsIncrease() {
+		final long first = regionFactory.nextTimestamp();
+		assertTrue(regionFactory.nextTimestamp() > first);
+	}
+
+	@Test
+	public void regionsAreBoundedByTheirSettings() {
+		final EntityRegionAccessStrategy small = regionFactory.buildEntityRegion("small", new Properties(), null)
+				.buildAccessStrategy(AccessType.READ_WRITE);
+		final long txTimestamp = regionFactory.nextTimestamp();
+
+		small.putFromLoad(null, 1, "one", txTimestamp, null);
+		small.putFromLoad(null, 2, "two", txTimestamp, null);
+		small.putFromLoad(null, 3, "three", txTimestamp, null);
+
+		assertEquals(2, small.getRegion().getElementCountInMemory());
+	}
+
+	@Test
+	public void regionsWithoutSettingsUseTheDefault() {
+		final LocalRegion region = (LocalRegion) regionFactory.buildEntityRegion("other", new Properties(), null);
+		final EntityRegionAccessStrategy access = region.buildAccessStrategy(AccessType.READ_ONLY);
+		final long txTimestamp = regionFactory.nextTimestamp();
+
+		for (int i = 0; i < 100; i++) {
+			access.putFromLoad(null, i, i, txTimestamp, null);
+		}
+
+		assertEquals(100, region.getElementCountInMemory());
+	}
+
+	@Test
+	public void readWriteLocksKeysDuringUpdates() {
+		final EntityRegionAccessStrategy access = regionFactory.buildEntityRegion("other", new Properties(), null)
+				.buildAccessStrategy(AccessType.READ_WRITE);
+		final long loadingSession = regionFactory.nextTimestamp();
+		assertTrue(access.putFromLoad(null, 1, "old", loadingSession, null));
+
+		final SoftLock lock = access.lockItem(null, 1, null);
+		assertNull(access.get(null, 1, regionFactory.nextTimestamp()));
+		assertFalse(access.putFromLoad(null, 1, "old", loadingSession, null));
+
+		assertFalse(access.update(null, 1, "new", null, null));
+		assertTrue(access.afterUpdate(null, 1, "new", null, null, lock));
+		assertEquals("new", access.get(null, 1, regionFactory.nextTimestamp()));
+	}
+
+	@Test
+	public void loadsWhichBeganBeforeAnUpdateAreNotCached() {
+		final EntityRegionAccessStrategy access = regionFactory.buildEntityRegion("other", new Properties(), null)
+				.buildAccessStrategy(AccessType.READ_WRITE);
+		final long loadingSession = regionFactory.nextTimestamp();
+
+		// Another session removes the entry
+		access.unlockItem(null, 1, access.lockItem(null, 1, null));
+
+		assertFalse(access.putFromLoad(null, 1, "stale", loadingSession, null));
+		assertTrue(access.putFromLoad(null, 1, "fresh", regionFactory.nextTimestamp(), null));
+	}
+
+	@Test
+	public void nonstrictReadWriteEvictsOnUpdate() {
+		final EntityRegionAccessStrategy access = regionFactory.buildEntityRegion("other", new Properties(), null)
+				.buildAccessStrategy(AccessType.NONSTRICT_READ_WRITE);
+		access.putFromLoad(null, 1, "old", regionFactory.nextTimestamp(), null);
+
+		assertNull(access.lockItem(null, 1, null));
+		access.update(null, 1, "new", null, null);
+
+		assertNull(access.get(null, 1, regionFactory.nextTimestamp()));
+		assertFalse(access.afterUpdate(null, 1, "new", null, null, null));
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void readOnlyRefusesUpdates() {
+		regionFactory.buildEntityRegion("other", new Properties(), null)
+				.buildAccessStrategy(AccessType.READ_ONLY)
+				.update(null, 1, "new", null, null);
+	}
+
+	@Test(expected = CacheException.class)
+	public void transactionalIsNotSupported() {
+		regionFactory.buildEntityRegion("other", new Properties(), null).buildAccessStrategy(AccessType.TRANSACTIONAL);
+	}
+}
@@ -0,0 +1,199 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.action.spi.AfterTransactionCompletionProcess;
+import org.hibernate.action.spi.BeforeTransactionCompletionProcess;
+import org.hibernate.engine.spi.ActionQueue;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.jdbc.ReturningWork;
+import org.hibernate.jdbc.Work;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class OutboxTest {
+
+	private static final OutboxConfiguration CONFIGURATION = new OutboxConfiguration("outbox", 2, 1, 1, TimeUnit.SECONDS);
+
+	@Mock
+	private HibernatePersistService persistService;
+
+	@Mock
+	private SessionFactory sessionFactory;
+
+	@Mock
+	private Transaction transaction;
+
+	@Mock
+	private ActionQueue actionQueue;
+
+	@Mock
+	private Connection connection;
+
+	@Mock
+	private PreparedStatement statement;
+
+	private SessionImplementor session;
+	private HibernateUnitOfWork unitOfWork;
+	private Outbox outbox;
+
+	@Before
+	public void beforeEach() throws Exception {
+		session = mock(SessionImplementor.class, withSettings().extraInterfaces(EventSource.class));
+		when(persistService.get()).thenReturn(sessionFactory);
+		when(persistService.acquire()).thenReturn(new SessionFactoryGeneration("primary", sessionFactory));
+		when(sessionFactory.openSession()).thenReturn(session);
+		when(session.getTransaction()).thenReturn(transaction);
+		when(session.beginTransaction()).thenReturn(transaction);
+		when(transaction.isActive()).thenReturn(true);
+		when(((EventSource) session).getActionQueue()).thenReturn(actionQueue);
+		when(connection.prepareStatement(anyString())).thenReturn(statement);
+		doAnswer(invocation -> {
+			((Work) invocation.getArguments()[0]).execute(connection);
+			return null;
+		}).when(session).doWork(any(Work.class));
+		doAnswer(invocation -> ((ReturningWork<?>) invocation.getArguments()[0]).execute(connection))
+			.when(session).doReturningWork(any(ReturningWork.class));
+
+		unitOfWork = UnitOfWorkBuilder.of(persistService).build();
+		outbox = new Outbox(unitOfWork, CONFIGURATION, String::valueOf);
+	}
+
+	@Test
+	public void itWritesEnqueuedMessagesInJdbcBatchesBeforeCommit() throws Exception {
+		unitOfWork.begin();
+		unitOfWork.get();
+		final OutboxMessage first = outbox.enqueue("accounts", "1", "created");
+		outbox.enqueue("accounts", "2", "created");
+		final OutboxMessage last = outbox.enqueue("accounts", "1", "deleted");
+		assertTrue(first.getId().compareTo(last.getId()) < 0);
+
+		// One pair of completion processes per transaction
+		final ArgumentCaptor<BeforeTransactionCompletionProcess> process = ArgumentCaptor.forClass(BeforeTransactionCompletionProcess.class);
+		verify(actionQueue).registerProcess(process.capture());
+		verify(actionQueue).registerProcess(any(AfterTransactionCompletionProcess.class));
+		verify(statement, never()).addBatch();
+
+		process.getValue().doBeforeTransactionCompletion(session);
+		verify(connection).prepareStatement(startsWith("INSERT INTO outbox "));
+		verify(statement, times(3)).addBatch();
+		verify(statement, times(2)).executeBatch();
+		verify(statement).setString(4, "deleted");
+		unitOfWork.end();
+	}
+
+	@Test
+	public void itDiscardsTheMessagesOfARolledBackTransaction() throws Exception {
+		unitOfWork.begin();
+		unitOfWork.get();
+		outbox.enqueue("accounts", "created");
+
+		final ArgumentCaptor<BeforeTransactionCompletionProcess> before = ArgumentCaptor.forClass(BeforeTransactionCompletionProcess.class);
+		final ArgumentCaptor<AfterTransactionCompletionProcess> after = ArgumentCaptor.forClass(AfterTransactionCompletionProcess.class);
+		verify(actionQueue).registerProcess(before.capture());
+		verify(actionQueue).registerProcess(after.capture());
+		after.getValue().doAfterTransactionCompletion(false, session);
+
+		// A rollback leaves the before completion process queued for the next commit of the session
+		before.getValue().doBeforeTransactionCompletion(session);
+		verify(session, never()).doWork(any(Work.class));
+
+		// The next transaction gets a fresh set of messages
+		outbox.enqueue("accounts", "created again");
+		verify(actionQueue, times(2)).registerProcess(any(BeforeTransactionCompletionProcess.class));
+		unitOfWork.end();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void itRequiresATransaction() {
+		outbox.enqueue("accounts", "created");
+	}
+
+	@Test
+	public void theRelayPublishesAndDeletesAClaimedBatch() throws Exception {
+		final InMemoryOutboxSink sink = new InMemoryOutboxSink();
+		final OutboxRelay relay = new OutboxRelay(persistService, sink, CONFIGURATION);
+		final PreparedStatement selectUnclaimed = statement("SELECT id FROM outbox WHERE claimed_until");
+		final PreparedStatement claim = statement("UPDATE outbox SET claimed_by = ?, claimed_until");
+		final PreparedStatement selectClaimed = statement("SELECT id, topic");
+		final PreparedStatement delete = statement("DELETE FROM outbox");
+		final ResultSet unclaimed = mock(ResultSet.class);
+		when(selectUnclaimed.executeQuery()).thenReturn(unclaimed);
+		when(unclaimed.next()).thenReturn(true, true, false);
+		when(unclaimed.getString(1)).thenReturn("a", "b");
+		// Only one of the two rows could be claimed
+		final ResultSet claimed = mock(ResultSet.class);
+		when(selectClaimed.executeQuery()).thenReturn(claimed);
+		when(claimed.next()).thenReturn(true, false);
+		when(claimed.getString(1)).thenReturn("a");
+		when(claimed.getString(2)).thenReturn("accounts");
+		when(claimed.getString(4)).thenReturn("created");
+
+		assertEquals(1, relay.relayBatch());
+
+		verify(selectUnclaimed).setMaxRows(2);
+		verify(claim, times(2)).addBatch();
+		verify(delete).executeUpdate();
+		verify(transaction, times(2)).commit();
+		final List<OutboxMessage> published = sink.getPublished();
+		assertEquals(1, published.size());
+		assertEquals("a", published.get(0).getId());
+		assertEquals("created", published.get(0).getPayload());
+		assertEquals(1, relay.getRelayed());
+	}
+
+	@Test
+	public void theRelayReleasesABatchWhichFailsToPublish() throws Exception {
+		final OutboxSink sink = mock(OutboxSink.class);
+		doAnswer(invocation -> {
+			throw new IllegalStateException("broker unavailable");
+		}).when(sink).publish(any());
+		final OutboxRelay relay = new OutboxRelay(persistService, sink, CONFIGURATION);
+		final PreparedStatement selectUnclaimed = statement("SELECT id FROM outbox WHERE claimed_until");
+		final PreparedStatement selectClaimed = statement("SELECT id, topic");
+		final PreparedStatement release = statement("UPDATE outbox SET claimed_by = NULL");
+		final PreparedStatement delete = statement("DELETE FROM outbox");
+		final ResultSet rows = mock(ResultSet.class);
+		when(selectUnclaimed.executeQuery()).thenReturn(rows);
+		when(selectClaimed.executeQuery()).thenReturn(rows);
+		when(rows.next()).thenReturn(true, false, true, false);
+
+		assertEquals(-1, relay.relayBatch());
+
+		verify(release).executeUpdate();
+		verify(delete, never()).executeUpdate();
+		assertEquals(1, relay.getFailures());
+		assertEquals(0, relay.getRelayed());
+	}
+
+	private PreparedStatement statement(final String sqlPrefix) throws Exception {
+		final PreparedStatement prepared = mock(PreparedStatement.class);
+		when(connection.prepareStatement(startsWith(sqlPrefix))).thenReturn(prepared);
+		return prepared;
+	}
+}
@@ -0,0 +1,36 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ReplicaLoadBalancerTest {
+
+	private final HibernateReplica first = new HibernateReplica("replica-0", null);
+	private final HibernateReplica second = new HibernateReplica("replica-1", null);
+	private final List<HibernateReplica> replicas = Arrays.asList(first, second);
+
+	@Test
+	public void roundRobinCyclesThroughReplicas() {
+		final ReplicaLoadBalancer balancer = new RoundRobinReplicaLoadBalancer();
+		assertSame(first, balancer.select(replicas));
+		assertSame(second, balancer.select(replicas));
+		assertSame(first, balancer.select(replicas));
+	}
+
+	@Test
+	public void leastInFlightChoosesTheIdlestReplica() {
+		final ReplicaLoadBalancer balancer = new LeastInFlightReplicaLoadBalancer();
+		assertSame(first, balancer.select(replicas));
+
+		first.acquire();
+		assertSame(second, balancer.select(replicas));
+
+		second.acquire();
+		second.acquire();
+		assertSame(first, balancer.select(replicas));
+	}
+}
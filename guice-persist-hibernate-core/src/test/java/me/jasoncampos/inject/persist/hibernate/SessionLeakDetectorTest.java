@@ -0,0 +1,63 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.hibernate.Session;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SessionLeakDetectorTest {
+
+	@Mock
+	private Session session;
+
+	private final SessionLeakDetector detector = new SessionLeakDetector(true);
+
+	@Test
+	public void closedSessionsAreNoLongerOutstanding() {
+		final Session tracked = detector.track(session);
+		assertNotSame(session, tracked);
+		assertEquals(1, detector.getOutstanding());
+
+		tracked.close();
+		verify(session).close();
+		assertEquals(0, detector.getOutstanding());
+		assertEquals(0, detector.getLeaked());
+	}
+
+	@Test
+	public void collectedSessionsWhichAreStillOpenAreClosed() throws Exception {
+		when(session.isOpen()).thenReturn(true);
+		open();
+
+		for (int i = 0; i < 50 && detector.getLeaked() == 0; i++) {
+			System.gc();
+			Thread.sleep(100);
+		}
+
+		assertEquals(1, detector.getLeaked());
+		assertEquals(0, detector.getOutstanding());
+		verify(session, timeout(1000)).close();
+	}
+
+	@Test
+	public void trackedSessionsDelegateToTheRealSession() {
+		when(session.isOpen()).thenReturn(true);
+		final Session tracked = detector.track(session);
+		assertTrue(tracked.isOpen());
+		assertTrue(tracked.equals(tracked));
+	}
+
+	// Opens a session and drops the only reference to it
+	private void open() {
+		detector.track(session).isOpen();
+	}
+}
@@ -0,0 +1,92 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.SQLException;
+import java.util.concurrent.TimeoutException;
+
+import javax.persistence.OptimisticLockException;
+import javax.persistence.PersistenceException;
+
+import org.junit.Test;
+
+import com.google.inject.persist.Transactional;
+
+public class TransactionPolicyTest {
+
+	@Test
+	public void defaultPolicyRollsBackOnRuntimeExceptionsOnly() throws Exception {
+		final TransactionPolicy policy = TransactionPolicy.resolve(Service.class.getMethod("unannotated"), Service.class);
+		assertTrue(policy.rollsBackOn(new IllegalStateException()));
+		assertFalse(policy.rollsBackOn(new IOException()));
+	}
+
+	@Test
+	public void methodAnnotationTakesPrecedenceOverClassAnnotation() throws Exception {
+		final TransactionPolicy policy = TransactionPolicy.resolve(Service.class.getMethod("rollsBackOnIo"), Service.class);
+		assertTrue(policy.rollsBackOn(new IOException()));
+		assertFalse(policy.rollsBackOn(new IllegalStateException()));
+	}
+
+	@Test
+	public void ignoreClauseSupercedesRollbackClause() throws Exception {
+		final TransactionPolicy policy = TransactionPolicy.resolve(Service.class.getMethod("ignoresUncheckedIo"), Service.class);
+		assertFalse(policy.rollsBackOn(new UncheckedIOException(new IOException())));
+		assertTrue(policy.rollsBackOn(new IllegalStateException()));
+
+		// Memoized decisions must be stable across invocations
+		assertFalse(policy.rollsBackOn(new UncheckedIOException(new IOException())));
+		assertTrue(policy.rollsBackOn(new IllegalStateException()));
+	}
+
+	@Test
+	public void itRetriesTransientFailuresWhichRollBack() throws Exception {
+		final TransactionPolicy policy = TransactionPolicy.resolve(Service.class.getMethod("retried"), Service.class);
+		final RetryClassifier classifier = new SqlStateRetryClassifier();
+		final Exception deadlock = new PersistenceException(new SQLException("Deadlock found", "40001"));
+
+		assertTrue(policy.retries(deadlock, 1, classifier));
+		assertTrue(policy.retries(new OptimisticLockException(), 1, classifier));
+		assertTrue(policy.retries(new IllegalStateException(new TimeoutException()), 1, classifier));
+		assertFalse(policy.retries(deadlock, 2, classifier));
+		assertFalse(policy.retries(new PersistenceException(new SQLException("Duplicate entry", "23000")), 1, classifier));
+		// Committed, so running the method again would repeat its work
+		assertFalse(policy.retries(new IgnoredDeadlock(), 1, classifier));
+	}
+
+	@Test
+	public void retryBackoffIsBoundedAndGrowsExponentially() throws Exception {
+		final TransactionPolicy policy = TransactionPolicy.resolve(Service.class.getMethod("retried"), Service.class);
+		for (int i = 0; i < 1_000; i++) {
+			assertTrue(policy.backoffMillis(1) <= 10);
+			assertTrue(policy.backoffMillis(3) <= 25);
+		}
+		assertFalse(TransactionPolicy.resolve(Service.class.getMethod("unannotated"), Service.class).isRetried());
+	}
+
+	@Transactional
+	public static class Service {
+		public void unannotated() {
+		}
+
+		@Transactional(rollbackOn = IOException.class)
+		public void rollsBackOnIo() {
+		}
+
+		@Transactional(ignore = UncheckedIOException.class)
+		public void ignoresUncheckedIo() {
+		}
+
+		@Transactional(ignore = IgnoredDeadlock.class)
+		@Retry(maxAttempts = 2, backoffMillis = 10, maxBackoffMillis = 25, retryOn = TimeoutException.class)
+		public void retried() {
+		}
+	}
+
+	private static class IgnoredDeadlock extends OptimisticLockException {
+		private static final long serialVersionUID = 1L;
+	}
+}
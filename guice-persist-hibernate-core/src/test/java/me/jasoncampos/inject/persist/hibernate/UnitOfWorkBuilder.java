@@ -0,0 +1,41 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+/**
+ * Builds a {@link HibernateUnitOfWork} for tests, defaulting every collaborator which a test does not set to the
+ * default of {@link HibernatePersistModule} with its optional features disabled.
+ */
+class UnitOfWorkBuilder {
+	private final HibernatePersistService persistService;
+	private ReplicaLoadBalancer loadBalancer = new RoundRobinReplicaLoadBalancer();
+	private HibernateMetrics metrics = HibernateMetrics.NONE;
+	private UnitOfWorkWatchdog watchdog = UnitOfWorkWatchdog.disabled();
+	private SessionLeakDetector leakDetector = new SessionLeakDetector(false);
+	private FlushDiagnostics flushDiagnostics = FlushDiagnostics.disabled();
+
+	private UnitOfWorkBuilder(final HibernatePersistService persistService) {
+		this.persistService = persistService;
+	}
+
+	static UnitOfWorkBuilder of(final HibernatePersistService persistService) {
+		return new UnitOfWorkBuilder(persistService);
+	}
+
+	UnitOfWorkBuilder metrics(final HibernateMetrics metrics) {
+		this.metrics = metrics;
+		return this;
+	}
+
+	UnitOfWorkBuilder watchdog(final UnitOfWorkWatchdog watchdog) {
+		this.watchdog = watchdog;
+		return this;
+	}
+
+	UnitOfWorkBuilder flushDiagnostics(final FlushDiagnostics flushDiagnostics) {
+		this.flushDiagnostics = flushDiagnostics;
+		return this;
+	}
+
+	HibernateUnitOfWork build() {
+		return new HibernateUnitOfWork(persistService, loadBalancer, metrics, watchdog, leakDetector, flushDiagnostics);
+	}
+}
@@ -0,0 +1,68 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.Session;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class UnitOfWorkWatchdogTest {
+
+	@Mock
+	private Session session;
+
+	private final Object unitOfWork = new Object();
+
+	@Test
+	public void itCancelsTheStatementOfSessionsHeldTooLong() throws Exception {
+		final UnitOfWorkWatchdog watchdog = new UnitOfWorkWatchdog(1, 1, TimeUnit.NANOSECONDS);
+		watchdog.track(unitOfWork, session, "AccountService.transfer");
+		Thread.sleep(1);
+
+		watchdog.check();
+		verify(session).cancelQuery();
+
+		// Each held session is cancelled at most once
+		watchdog.check();
+		verify(session, times(1)).cancelQuery();
+	}
+
+	@Test
+	public void itOnlyWarnsIfNoCancelThresholdIsSet() throws Exception {
+		final UnitOfWorkWatchdog watchdog = new UnitOfWorkWatchdog(1, 0, TimeUnit.NANOSECONDS);
+		watchdog.track(unitOfWork, session, "AccountService.transfer");
+		Thread.sleep(1);
+
+		watchdog.check();
+		verify(session, never()).cancelQuery();
+	}
+
+	@Test
+	public void itLeavesSessionsWithinTheThresholdAlone() {
+		final UnitOfWorkWatchdog watchdog = new UnitOfWorkWatchdog(1, 1, TimeUnit.HOURS);
+		watchdog.track(unitOfWork, session, "AccountService.transfer");
+
+		watchdog.check();
+		verify(session, never()).cancelQuery();
+
+		watchdog.untrack(unitOfWork);
+		assertEquals(0, watchdog.getHeld());
+	}
+
+	@Test
+	public void aDisabledWatchdogTracksNothing() {
+		final UnitOfWorkWatchdog watchdog = UnitOfWorkWatchdog.disabled();
+		watchdog.track(unitOfWork, session, "AccountService.transfer");
+		assertFalse(watchdog.isEnabled());
+		assertEquals(0, watchdog.getHeld());
+	}
+}
@@ -0,0 +1,204 @@
+package me.jasoncampos.inject.persist.hibernate.integrator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.AbstractEvent;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.google.common.collect.ImmutableSet;
+
+import me.jasoncampos.inject.persist.hibernate.integrator.AsyncDispatch.Backpressure;
+import me.jasoncampos.inject.persist.hibernate.integrator.AutoRegisteringListener.RegistrationType;
+
+public class AsyncListenerDispatcherTest {
+
+	private AsyncListenerDispatcher dispatcher;
+
+	@After
+	public void afterEach() {
+		if (dispatcher != null) {
+			dispatcher.close();
+		}
+	}
+
+	@Test
+	public void itDeliversEventsInBatchesOnAWorkerThread() throws InterruptedException {
+		final RecordingListener listener = new RecordingListener(new AsyncDispatch(100, 10, 1, Backpressure.BLOCK));
+		dispatcher = start(listener);
+
+		final PostInsertEvent event = event();
+		dispatcher.enqueue(event);
+
+		assertTrue(listener.delivered.await(5, TimeUnit.SECONDS));
+		assertSame(event, listener.events.get(0));
+		assertNotSame(Thread.currentThread(), listener.threads.get(0));
+		assertEquals(1, dispatcher.getBatches());
+		assertEquals(0, dispatcher.getQueueDepth());
+	}
+
+	@Test
+	public void itDropsEventsWhenTheQueueIsFull() throws InterruptedException {
+		final BlockingListener listener = new BlockingListener(new AsyncDispatch(1, 1, 1, Backpressure.DROP));
+		dispatcher = start(listener);
+
+		dispatcher.enqueue(event());
+		assertTrue(listener.delivering.await(5, TimeUnit.SECONDS));
+		dispatcher.enqueue(event());
+		dispatcher.enqueue(event());
+
+		assertEquals(1, dispatcher.getQueueDepth());
+		assertEquals(1, dispatcher.getDropped());
+		listener.release.countDown();
+	}
+
+	@Test
+	public void itDeliversOnTheCallerWhenTheQueueIsFull() throws InterruptedException {
+		final BlockingListener listener = new BlockingListener(new AsyncDispatch(1, 1, 1, Backpressure.CALLER_RUNS));
+		dispatcher = start(listener);
+
+		dispatcher.enqueue(event());
+		assertTrue(listener.delivering.await(5, TimeUnit.SECONDS));
+		dispatcher.enqueue(event());
+		dispatcher.enqueue(event());
+
+		assertEquals(1, dispatcher.getCallerRuns());
+		assertTrue(listener.threads.contains(Thread.currentThread()));
+		listener.release.countDown();
+	}
+
+	@Test
+	public void theIntegratorRegistersAnAdapterAndStopsItsWorkers() {
+		final RecordingListener listener = new RecordingListener(AsyncDispatch.DEFAULT);
+		final AutoRegisteringListenerIntegrator integrator = new AutoRegisteringListenerIntegrator(ImmutableSet.of(listener));
+		final SessionFactoryServiceRegistry serviceRegistry = mock(SessionFactoryServiceRegistry.class);
+		final EventListenerRegistry eventListenerRegistry = mock(EventListenerRegistry.class);
+		when(serviceRegistry.getService(EventListenerRegistry.class)).thenReturn(eventListenerRegistry);
+
+		integrator.integrate(null, null, serviceRegistry);
+
+		final ArgumentCaptor<PostInsertEventListener> registered = ArgumentCaptor.forClass(PostInsertEventListener.class);
+		verify(eventListenerRegistry).appendListeners(eq(EventType.POST_COMMIT_INSERT), registered.capture());
+		assertNotSame(listener, registered.getValue());
+
+		integrator.disintegrate(null, null);
+
+		// Once the workers have stopped, events are delivered on the raising thread
+		registered.getValue().onPostInsert(event());
+		assertEquals(Thread.currentThread(), listener.threads.get(0));
+	}
+
+	@Test
+	public void closingADispatcherLeavesTheMBeanOfAnotherWithTheSameName() {
+		// e.g. the dispatchers of the old and new SessionFactory during a reload
+		final RecordingListener listener = new RecordingListener(new AsyncDispatch(100, 10, 1, Backpressure.BLOCK));
+		dispatcher = start(listener);
+		final AsyncListenerDispatcher replaced = start(listener);
+		assertNotEquals(replaced.getObjectName(), dispatcher.getObjectName());
+
+		replaced.close();
+		assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(replaced.getObjectName()));
+		assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(dispatcher.getObjectName()));
+	}
+
+	private AsyncListenerDispatcher start(final AutoRegisteringListener listener) {
+		final AsyncListenerDispatcher started = new AsyncListenerDispatcher(listener, "test");
+		started.start();
+		return started;
+	}
+
+	private static PostInsertEvent event() {
+		return new PostInsertEvent(new Object(), null, null, mock(EntityPersister.class), null);
+	}
+
+	private static class RecordingListener implements AutoRegisteringListener, PostInsertEventListener, BatchingListener {
+		private static final long serialVersionUID = 1L;
+
+		private final AsyncDispatch asyncDispatch;
+		final List<AbstractEvent> events = new CopyOnWriteArrayList<>();
+		final List<Thread> threads = new CopyOnWriteArrayList<>();
+		final CountDownLatch delivered = new CountDownLatch(1);
+
+		RecordingListener(final AsyncDispatch asyncDispatch) {
+			this.asyncDispatch = asyncDispatch;
+		}
+
+		@Override
+		public ImmutableSet<EventType<?>> getEventType() {
+			return ImmutableSet.of(EventType.POST_COMMIT_INSERT);
+		}
+
+		@Override
+		public ImmutableSet<RegistrationType> getEventRegistrations() {
+			return ImmutableSet.of(RegistrationType.ASYNC);
+		}
+
+		@Override
+		public AsyncDispatch getAsyncDispatch() {
+			return asyncDispatch;
+		}
+
+		@Override
+		public void onBatch(final List<AbstractEvent> batch) {
+			batch.forEach(event -> onPostInsert((PostInsertEvent) event));
+		}
+
+		@Override
+		public void onPostInsert(final PostInsertEvent event) {
+			events.add(event);
+			threads.add(Thread.currentThread());
+			delivered.countDown();
+		}
+
+		@Override
+		public boolean requiresPostCommitHanding(final EntityPersister persister) {
+			return true;
+		}
+	}
+
+	private static class BlockingListener extends RecordingListener {
+		private static final long serialVersionUID = 1L;
+
+		final CountDownLatch delivering = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+
+		BlockingListener(final AsyncDispatch asyncDispatch) {
+			super(asyncDispatch);
+		}
+
+		@Override
+		public void onPostInsert(final PostInsertEvent event) {
+			super.onPostInsert(event);
+			if (Thread.currentThread().getName().startsWith("hibernate-async-listener")) {
+				delivering.countDown();
+				try {
+					release.await(5, TimeUnit.SECONDS);
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+	}
+}
@@ -1,9 +1,19 @@
 package me.jasoncampos.inject.persist.hibernate;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.Base64;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 
@@ -11,36 +21,192 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.orbitz.consul.KeyValueClient;
+import com.orbitz.consul.model.ConsulResponse;
 import com.orbitz.consul.model.kv.Value;
+import com.orbitz.consul.option.QueryOptions;
 
 import me.jasoncampos.inject.persist.hibernate.module.HibernateKeys;
 
 /**
  * Loads hibernate configuration properties from consul. The {@link #keyPath} must
  * specify the full path to the consul folder containing hibernate configuration properties. For example,
- * {@code "my/app/config/hibernate"}.
+ * {@code "my/app/config/hibernate"}. <br />
+ * <br />
+ *
+ * Properties are fetched from consul once and cached. A background thread then keeps the cache up to date with consul
+ * blocking queries, which return as soon as a key under the path changes (or after {@code watchSeconds}). If a
+ * snapshot file is given, every version of the properties is written to it, and the properties are read from it if
+ * consul cannot be reached when they are first requested. Registered change listeners are notified each time the
+ * watch sees the properties change, which reloads the {@link HibernatePersistService}. The watch stops while the
+ * service is stopped, and resumes once the service requests the properties again.
  *
  * @author Jason Campos <jcampos8782@gmail.com>
  */
-public class HibernatePropertyProviderConsul implements HibernatePropertyProvider {
+public class HibernatePropertyProviderConsul implements HibernatePropertyProvider, AutoCloseable {
 	private static final Logger logger = LoggerFactory.getLogger(HibernatePropertyProviderConsul.class);
 
+	public static final int DEFAULT_WATCH_SECONDS = 60;
+
+	private static final long MAX_BACKOFF_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
 	private final KeyValueClient kvClient;
 	private final String keyPath;
+	private final Path snapshotFile;
+	private final int watchSeconds;
+
+	private final List<Runnable> changeListeners = new CopyOnWriteArrayList<>();
+	private volatile ImmutableMap<String, String> properties;
+	private volatile Thread watcher;
+	private volatile boolean closed;
 
 	@Inject
 	public HibernatePropertyProviderConsul(final KeyValueClient kvClient, @HibernateKeys final String keyPath) {
+		this(kvClient, keyPath, null, DEFAULT_WATCH_SECONDS);
+	}
+
+	/**
+	 * @param kvClient
+	 * @param keyPath
+	 * @param snapshotFile
+	 *            File holding the last properties read from consul, or null to keep no snapshot
+	 * @param watchSeconds
+	 *            Maximum duration of each blocking query. Zero to never refresh the cached properties.
+	 */
+	public HibernatePropertyProviderConsul(
+			final KeyValueClient kvClient,
+			final String keyPath,
+			final Path snapshotFile,
+			final int watchSeconds) {
 		this.kvClient = kvClient;
 		this.keyPath = keyPath;
+		this.snapshotFile = snapshotFile;
+		this.watchSeconds = watchSeconds;
 	}
 
 	@Override
 	public Map<String, String> get() {
+		if (properties == null || watcher == null && watchSeconds > 0 && !closed) {
+			load();
+		}
+		return properties;
+	}
+
+	@Override
+	public void addChangeListener(final Runnable listener) {
+		changeListeners.add(listener);
+	}
+
+	/**
+	 * Stops refreshing the cached properties until they are next requested, e.g. while the
+	 * {@link HibernatePersistService} is stopped.
+	 */
+	@Override
+	public synchronized void stop() {
+		final Thread thread = watcher;
+		watcher = null;
+		if (thread != null) {
+			thread.interrupt();
+		}
+	}
+
+	/**
+	 * Stops refreshing the cached properties for good.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		stop();
+	}
+
+	private synchronized void load() {
+		if (properties == null) {
+			fetch();
+		}
+
+		if (watchSeconds > 0 && watcher == null && !closed) {
+			watcher = new ThreadFactoryBuilder()
+				.setDaemon(true)
+				.setNameFormat("hibernate-consul-watch")
+				.build()
+				.newThread(this::watch);
+			watcher.start();
+		}
+	}
+
+	private void fetch() {
 		logger.info("Retrieving hibernate configuration from consul");
-		final List<Value> values = kvClient.getValues(keyPath);
+		try {
+			update(decode(kvClient.getValues(keyPath)));
+		} catch (final RuntimeException e) {
+			final ImmutableMap<String, String> snapshot = readSnapshot();
+			if (snapshot == null) {
+				throw e;
+			}
+			logger.warn("Failed to retrieve hibernate configuration from consul. Using the snapshot in {}", snapshotFile, e);
+			properties = snapshot;
+		}
+
+		if (logger.isDebugEnabled()) {
+			properties.entrySet().stream().forEach(k -> logger.debug(String.format("%s:%s", k.getKey(), k.getValue())));
+		}
+	}
+
+	private void watch() {
+		BigInteger index = BigInteger.ZERO;
+		long backoffMillis = 0;
+		// Until stopped, which replaces or clears the watcher
+		while (watcher == Thread.currentThread()) {
+			try {
+				final ConsulResponse<List<Value>> response = kvClient.getConsulResponseWithValues(
+						keyPath,
+						QueryOptions.blockSeconds(watchSeconds, index).build());
+				if (response == null || response.getIndex() == null) {
+					throw new IllegalStateException("Consul returned no index for " + keyPath);
+				}
+
+				// The index may go backwards (e.g. after a consul restart), in which case watching restarts from scratch
+				final BigInteger next = response.getIndex();
+				index = next.compareTo(index) < 0 ? BigInteger.ZERO : next;
+				backoffMillis = 0;
+
+				final ImmutableMap<String, String> latest = decode(response.getResponse());
+				if (!latest.equals(properties)) {
+					logger.info("Hibernate configuration in consul changed. index={}", index);
+					update(latest);
+					changeListeners.forEach(Runnable::run);
+				}
+			} catch (final RuntimeException e) {
+				if (watcher != Thread.currentThread()) {
+					return;
+				}
+				backoffMillis = Math.min(MAX_BACKOFF_MILLIS, Math.max(1000, backoffMillis * 2));
+				logger.warn("Failed to watch hibernate configuration in consul. Retrying in {}ms", backoffMillis, e);
+				try {
+					Thread.sleep(backoffMillis);
+				} catch (final InterruptedException interrupted) {
+					return;
+				}
+			}
+		}
+	}
+
+	private void update(final ImmutableMap<String, String> latest) {
+		properties = latest;
+		writeSnapshot(latest);
+	}
 
-		final Map<String, String> hibernateProperties = new HashMap<>(values.size());
+	private static ImmutableMap<String, String> decode(final List<Value> values) {
+		if (values == null) {
+			// No key exists under the path
+			return ImmutableMap.of();
+		}
+
+		// Keys in nested folders may share a name once the path is stripped, in which case the last one wins
+		final Map<String, String> hibernateProperties = new LinkedHashMap<>(values.size());
 		for (final Value value : values) {
 			final Optional<String> v = value.getValue();
 
@@ -51,10 +217,46 @@ public class HibernatePropertyProviderConsul implements HibernatePropertyProvide
 				hibernateProperties.put(key, new String(Base64.getDecoder().decode(v.get())));
 			}
 		}
+		return ImmutableMap.copyOf(hibernateProperties);
+	}
+
+	private ImmutableMap<String, String> readSnapshot() {
+		if (snapshotFile == null || !Files.exists(snapshotFile)) {
+			return null;
+		}
 
-		if (logger.isDebugEnabled()) {
-			hibernateProperties.entrySet().stream().forEach(k -> logger.debug(String.format("%s:%s", k.getKey(), k.getValue())));
+		final Properties snapshot = new Properties();
+		try (InputStream in = Files.newInputStream(snapshotFile)) {
+			snapshot.load(in);
+		} catch (final IOException e) {
+			logger.warn("Failed to read snapshot of hibernate configuration from {}", snapshotFile, e);
+			return null;
+		}
+		return ImmutableMap.copyOf(Maps.fromProperties(snapshot));
+	}
+
+	// Written to a temporary file first so that a crash never leaves a partial snapshot behind
+	private void writeSnapshot(final ImmutableMap<String, String> latest) {
+		if (snapshotFile == null) {
+			return;
+		}
+
+		final Properties snapshot = new Properties();
+		snapshot.putAll(latest);
+		try {
+			final Path parent = snapshotFile.toAbsolutePath().getParent();
+			Files.createDirectories(parent);
+			final Path temporary = Files.createTempFile(parent, snapshotFile.getFileName().toString(), ".tmp");
+			try {
+				try (OutputStream out = Files.newOutputStream(temporary)) {
+					snapshot.store(out, "Hibernate configuration from consul " + keyPath);
+				}
+				Files.move(temporary, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(temporary);
+			}
+		} catch (final IOException e) {
+			logger.warn("Failed to write snapshot of hibernate configuration to {}", snapshotFile, e);
 		}
-		return hibernateProperties;
 	}
 }
@@ -0,0 +1,97 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import me.jasoncampos.inject.persist.hibernate.processor.EntityIndexProcessor;
+
+/**
+ * Provides the {@code @Entity} classes in the argument {@link #entityPackage} (recursively) from the index written at
+ * compile time by the {@link EntityIndexProcessor}. Only the indexed entity classes are loaded, so the cost is
+ * proportional to the number of entities rather than the number of classes in the package. <br />
+ * <br />
+ *
+ * Every {@value #INDEX_RESOURCE} resource on the classpath is read, so entities may be spread across several jars. If
+ * no index is present at all, this provider falls back to a {@link PackageScanEntityClassProvider}.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ * @see {@link HibernatePersistModule}
+ * @see {@link HibernateEntityClassProvider}
+ */
+public class IndexedEntityClassProvider implements HibernateEntityClassProvider {
+	private static final Logger logger = LoggerFactory.getLogger(IndexedEntityClassProvider.class);
+
+	/**
+	 * Classpath location of the entity index.
+	 */
+	public static final String INDEX_RESOURCE = "META-INF/guice-persist-hibernate/entities";
+
+	private final String entityPackage;
+
+	public IndexedEntityClassProvider(final String entityPackage) {
+		this.entityPackage = entityPackage;
+	}
+
+	@Override
+	public List<Class<? extends Object>> get() {
+		final ClassLoader classLoader = this.getClass().getClassLoader();
+		final Set<String> indexed = readIndex(classLoader);
+		if (indexed == null) {
+			logger.warn("No entity index found on the classpath. Scanning package {} for entities.", entityPackage);
+			return new PackageScanEntityClassProvider(entityPackage).get();
+		}
+
+		final String prefix = entityPackage + ".";
+		final List<Class<? extends Object>> entityClasses = new ArrayList<>();
+		for (final String className : indexed) {
+			if (className.startsWith(prefix)) {
+				try {
+					entityClasses.add(Class.forName(className, false, classLoader));
+				} catch (final ClassNotFoundException e) {
+					// Fail fast
+					throw new RuntimeException("Indexed entity class " + className + " could not be loaded.", e);
+				}
+			}
+		}
+		return entityClasses;
+	}
+
+	// Returns null if there is no index on the classpath
+	private static Set<String> readIndex(final ClassLoader classLoader) {
+		try {
+			final Enumeration<URL> resources = classLoader.getResources(INDEX_RESOURCE);
+			if (!resources.hasMoreElements()) {
+				return null;
+			}
+
+			final Set<String> classNames = new LinkedHashSet<>();
+			while (resources.hasMoreElements()) {
+				try (final BufferedReader reader = new BufferedReader(
+						new InputStreamReader(resources.nextElement().openStream(), StandardCharsets.UTF_8))) {
+					String line;
+					while ((line = reader.readLine()) != null) {
+						line = line.trim();
+						if (!line.isEmpty()) {
+							classNames.add(line);
+						}
+					}
+				}
+			}
+			return classNames;
+		} catch (final IOException e) {
+			// Fail fast
+			throw new RuntimeException("Failed to read hibernate entity index.", e);
+		}
+	}
+}
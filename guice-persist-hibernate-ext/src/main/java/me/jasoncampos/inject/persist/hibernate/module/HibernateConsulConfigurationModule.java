@@ -1,6 +1,9 @@
 package me.jasoncampos.inject.persist.hibernate.module;
 
+import java.nio.file.Path;
+
 import javax.inject.Inject;
+import javax.inject.Singleton;
 
 import com.google.inject.AbstractModule;
 import com.google.inject.Provides;
@@ -14,7 +17,11 @@ import me.jasoncampos.inject.persist.hibernate.HibernatePropertyProviderConsul;
 /**
  * Module used to bootstrap hibernate using configuration properties provided by Consul. The {@link #keyPath} must
  * specify the full path to the consul folder containing hibernate configuration properties. For example,
- * {@code "my/app/config/hibernate"}.
+ * {@code "my/app/config/hibernate"}. <br />
+ * <br />
+ *
+ * The properties are cached and kept up to date by watching the key path. If a snapshot file is given, startup falls
+ * back to the last properties written to it when consul cannot be reached.
  *
  * @author Jason Campos <jcampos8782@gmail.com>
  * @see {@link HibernatePersistModule}
@@ -22,9 +29,33 @@ import me.jasoncampos.inject.persist.hibernate.HibernatePropertyProviderConsul;
 public class HibernateConsulConfigurationModule extends AbstractModule {
 
 	private final String keyPath;
+	private final Path snapshotFile;
+	private final int watchSeconds;
 
 	public HibernateConsulConfigurationModule(final String keyPath) {
+		this(keyPath, null);
+	}
+
+	/**
+	 * @param keyPath
+	 * @param snapshotFile
+	 *            File holding the last properties read from consul
+	 */
+	public HibernateConsulConfigurationModule(final String keyPath, final Path snapshotFile) {
+		this(keyPath, snapshotFile, HibernatePropertyProviderConsul.DEFAULT_WATCH_SECONDS);
+	}
+
+	/**
+	 * @param keyPath
+	 * @param snapshotFile
+	 *            File holding the last properties read from consul, or null to keep no snapshot
+	 * @param watchSeconds
+	 *            Maximum duration of each consul blocking query. Zero to never refresh the cached properties.
+	 */
+	public HibernateConsulConfigurationModule(final String keyPath, final Path snapshotFile, final int watchSeconds) {
 		this.keyPath = keyPath;
+		this.snapshotFile = snapshotFile;
+		this.watchSeconds = watchSeconds;
 	}
 
 	@Override
@@ -35,6 +66,13 @@ public class HibernateConsulConfigurationModule extends AbstractModule {
 		bind(HibernatePropertyProvider.class).to(HibernatePropertyProviderConsul.class).asEagerSingleton();
 	}
 
+	@Provides
+	@Singleton
+	@Inject
+	private HibernatePropertyProviderConsul getHibernatePropertyProviderConsul(final KeyValueClient kvClient) {
+		return new HibernatePropertyProviderConsul(kvClient, keyPath, snapshotFile, watchSeconds);
+	}
+
 	@Provides
 	@Inject
 	private KeyValueClient getKeyValueClient(final Consul consul) {
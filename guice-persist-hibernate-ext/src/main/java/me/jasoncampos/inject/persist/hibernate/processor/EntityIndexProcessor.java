@@ -0,0 +1,118 @@
+package me.jasoncampos.inject.persist.hibernate.processor;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+import me.jasoncampos.inject.persist.hibernate.IndexedEntityClassProvider;
+
+/**
+ * Annotation processor which writes the binary names of all {@code @Entity} classes being compiled to
+ * {@value IndexedEntityClassProvider#INDEX_RESOURCE}, one per line. The index is read at runtime by
+ * {@link IndexedEntityClassProvider} in place of scanning the classpath. <br />
+ * <br />
+ *
+ * The processor is registered as a service, so it runs whenever this module is on the compiler's classpath. On
+ * incremental builds, entries from a previously written index are kept as long as their class still exists and is
+ * still annotated with {@code @Entity}.
+ *
+ * @author Jason Campos <jcampos8782@gmail.com>
+ */
+@SupportedAnnotationTypes(EntityIndexProcessor.ENTITY)
+public class EntityIndexProcessor extends AbstractProcessor {
+
+	static final String ENTITY = "javax.persistence.Entity";
+
+	private final Set<String> entities = new TreeSet<>();
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
+		if (roundEnv.processingOver()) {
+			writeIndex();
+			return false;
+		}
+
+		for (final TypeElement annotation : annotations) {
+			for (final Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+				if (element.getKind() == ElementKind.CLASS) {
+					entities.add(processingEnv.getElementUtils().getBinaryName((TypeElement) element).toString());
+				}
+			}
+		}
+		// Other processors may be interested in @Entity as well
+		return false;
+	}
+
+	private void writeIndex() {
+		readPreviousIndex();
+		if (entities.isEmpty()) {
+			return;
+		}
+
+		try {
+			final FileObject index = processingEnv.getFiler()
+					.createResource(StandardLocation.CLASS_OUTPUT, "", IndexedEntityClassProvider.INDEX_RESOURCE);
+			try (final Writer writer = index.openWriter()) {
+				for (final String entity : entities) {
+					writer.write(entity);
+					writer.write('\n');
+				}
+			}
+		} catch (final IOException e) {
+			processingEnv.getMessager().printMessage(Kind.ERROR, "Failed to write entity index: " + e);
+		}
+	}
+
+	// Keeps entities compiled by an earlier (incremental) build which still exist and are still entities
+	private void readPreviousIndex() {
+		try {
+			final FileObject previous = processingEnv.getFiler()
+					.getResource(StandardLocation.CLASS_OUTPUT, "", IndexedEntityClassProvider.INDEX_RESOURCE);
+			try (final BufferedReader reader = new BufferedReader(
+					new InputStreamReader(previous.openInputStream(), StandardCharsets.UTF_8))) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					line = line.trim();
+					if (!line.isEmpty() && isEntity(processingEnv.getElementUtils().getTypeElement(line.replace('$', '.')))) {
+						entities.add(line);
+					}
+				}
+			}
+		} catch (final IOException | IllegalArgumentException e) {
+			// No previous index
+		}
+	}
+
+	private static boolean isEntity(final TypeElement type) {
+		if (type == null) {
+			return false;
+		}
+		for (final AnnotationMirror annotation : type.getAnnotationMirrors()) {
+			if (((TypeElement) annotation.getAnnotationType().asElement()).getQualifiedName().contentEquals(ENTITY)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
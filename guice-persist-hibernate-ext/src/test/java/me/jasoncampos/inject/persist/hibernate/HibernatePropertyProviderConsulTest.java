@@ -1,27 +1,48 @@
 package me.jasoncampos.inject.persist.hibernate;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.math.BigInteger;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Base64;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
 import com.google.common.base.Optional;
+import com.google.common.util.concurrent.Uninterruptibles;
 import com.orbitz.consul.KeyValueClient;
+import com.orbitz.consul.model.ConsulResponse;
 import com.orbitz.consul.model.kv.Value;
+import com.orbitz.consul.option.QueryOptions;
 
 @RunWith(MockitoJUnitRunner.class)
 public class HibernatePropertyProviderConsulTest {
 
 	private static final String keyPath = "/path/to/keys/";
 
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
 	@Mock
 	private KeyValueClient kvClient;
 	private List<Value> values;
@@ -35,7 +56,12 @@ public class HibernatePropertyProviderConsulTest {
 		values.add(createValue("key3", "value3"));
 		when(kvClient.getValues(keyPath)).thenReturn(values);
 
-		provider = new HibernatePropertyProviderConsul(kvClient, keyPath);
+		provider = new HibernatePropertyProviderConsul(kvClient, keyPath, null, 0);
+	}
+
+	@After
+	public void afterEach() {
+		provider.close();
 	}
 
 	@Test
@@ -49,6 +75,99 @@ public class HibernatePropertyProviderConsulTest {
 		assertEquals("value3", provider.get().get("key3"));
 	}
 
+	@Test
+	public void itKeepsTheLastOfKeysWithTheSameName() {
+		values.add(createValue("nested/key2", "nested"));
+		assertEquals("nested", provider.get().get("key2"));
+	}
+
+	@Test
+	public void itCachesTheProperties() {
+		final HibernatePropertyProviderConsul cached = new HibernatePropertyProviderConsul(kvClient, keyPath, null, 0);
+		cached.get();
+		assertEquals("value2", cached.get().get("key2"));
+		verify(kvClient, times(1)).getValues(keyPath);
+	}
+
+	@Test
+	public void itStartsFromTheSnapshotWhenConsulIsUnreachable() {
+		final Path snapshot = folder.getRoot().toPath().resolve("hibernate.properties");
+		new HibernatePropertyProviderConsul(kvClient, keyPath, snapshot, 0).get();
+
+		final KeyValueClient unreachable = mock(KeyValueClient.class);
+		when(unreachable.getValues(keyPath)).thenThrow(new IllegalStateException("connection refused"));
+		final HibernatePropertyProviderConsul fromSnapshot = new HibernatePropertyProviderConsul(unreachable, keyPath, snapshot, 0);
+
+		assertEquals(2, fromSnapshot.get().size());
+		assertEquals("value3", fromSnapshot.get().get("key3"));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void itFailsWithoutASnapshotWhenConsulIsUnreachable() {
+		when(kvClient.getValues(keyPath)).thenThrow(new IllegalStateException("connection refused"));
+		new HibernatePropertyProviderConsul(kvClient, keyPath, folder.getRoot().toPath().resolve("missing"), 0).get();
+	}
+
+	@Test
+	public void itRefreshesThePropertiesWhenConsulChanges() throws InterruptedException {
+		final List<Value> changed = Collections.singletonList(createValue("key2", "changed"));
+		when(kvClient.getConsulResponseWithValues(eq(keyPath), any(QueryOptions.class)))
+			.thenReturn(new ConsulResponse<>(values, 0, true, BigInteger.ONE))
+			.thenAnswer(invocation -> {
+				// Blocks until the watch times out
+				Uninterruptibles.sleepUninterruptibly(50, TimeUnit.MILLISECONDS);
+				return new ConsulResponse<>(changed, 0, true, BigInteger.TEN);
+			});
+
+		try (final HibernatePropertyProviderConsul watched = new HibernatePropertyProviderConsul(kvClient, keyPath, null, 1)) {
+			final CountDownLatch changes = new CountDownLatch(1);
+			watched.addChangeListener(changes::countDown);
+			assertEquals("value2", watched.get().get("key2"));
+			final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+			while (!"changed".equals(watched.get().get("key2")) && System.nanoTime() < deadline) {
+				Thread.sleep(10);
+			}
+			assertEquals(1, watched.get().size());
+			assertEquals("changed", watched.get().get("key2"));
+			assertTrue(changes.await(5, TimeUnit.SECONDS));
+		}
+	}
+
+	@Test
+	public void itStopsWatchingUntilThePropertiesAreRequestedAgain() throws InterruptedException {
+		final AtomicInteger queries = new AtomicInteger();
+		when(kvClient.getConsulResponseWithValues(eq(keyPath), any(QueryOptions.class))).thenAnswer(invocation -> {
+			queries.incrementAndGet();
+			// Blocks until the watch times out
+			Uninterruptibles.sleepUninterruptibly(10, TimeUnit.MILLISECONDS);
+			return new ConsulResponse<>(values, 0, true, BigInteger.ONE);
+		});
+
+		try (final HibernatePropertyProviderConsul watched = new HibernatePropertyProviderConsul(kvClient, keyPath, null, 1)) {
+			watched.get();
+			awaitQueries(queries, 1);
+
+			// e.g. the HibernatePersistService stops
+			watched.stop();
+			// Lets the query in flight return
+			Thread.sleep(50);
+			final int stopped = queries.get();
+			Thread.sleep(100);
+			assertEquals(stopped, queries.get());
+
+			watched.get();
+			awaitQueries(queries, stopped + 1);
+		}
+	}
+
+	private static void awaitQueries(final AtomicInteger queries, final int expected) throws InterruptedException {
+		final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (queries.get() < expected && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+		assertTrue(queries.get() >= expected);
+	}
+
 	private static Value createValue(final String key, final String value) {
 		final String encodedString = value != null ? new String(Base64.getEncoder().encode(value.getBytes())) : null;
 		return new Value() {
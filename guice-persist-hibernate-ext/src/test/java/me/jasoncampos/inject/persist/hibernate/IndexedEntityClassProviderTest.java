@@ -0,0 +1,25 @@
+package me.jasoncampos.inject.persist.hibernate;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class IndexedEntityClassProviderTest {
+
+	@Test
+	public void providesOnlyIndexedClasses() {
+		// The test sources are compiled with the EntityIndexProcessor, which indexes TestEntity
+		final IndexedEntityClassProvider provider = new IndexedEntityClassProvider("me.jasoncampos.inject.persist.hibernate");
+		final List<Class<?>> entities = provider.get();
+		assertEquals(1, entities.size());
+		assertEquals(TestEntity.class, entities.get(0));
+	}
+
+	@Test
+	public void filtersIndexedClassesByPackage() {
+		final IndexedEntityClassProvider provider = new IndexedEntityClassProvider("me.jasoncampos.inject.persist.hibernate.module");
+		assertEquals(0, provider.get().size());
+	}
+}